@@ -0,0 +1,108 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Serves the message bodies that were published as claim-check references, at
+ * {@code JENKINS_URL/mq-notifier-blobs/<sha256>}, to users who can read one of the jobs they were published for.
+ * A body that was not published for a job, or whose jobs no longer exist, is only served to administrators.
+ * The bodies are served with the content type they were encoded with.
+ */
+@Extension
+public class BlobAction implements RootAction {
+    /** The URL name of the action. */
+    public static final String URL_NAME = "mq-notifier-blobs";
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return null;
+    }
+
+    @Override
+    public String getUrlName() {
+        return URL_NAME;
+    }
+
+    /**
+     * Serves a stored message body.
+     *
+     * @param req the request, with the SHA-256 of the body as the rest of the path
+     * @param rsp the response
+     * @throws IOException if the body could not be sent
+     */
+    public void doDynamic(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins jenkins = Jenkins.getInstance();
+        jenkins.checkPermission(Jenkins.READ);
+        BlobStore store = MQConnection.getInstance().getBlobStore();
+        String digest = req.getRestOfPath().replaceFirst("^/", "");
+        File file = null;
+        BlobStore.Metadata metadata = null;
+        if (store != null) {
+            file = store.get(digest);
+            metadata = store.getMetadata(digest);
+        }
+        if (file == null || metadata == null || !canRead(jenkins, metadata)) {
+            // Not found rather than forbidden, so that bodies of hidden jobs cannot be probed for.
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        rsp.setContentType(metadata.getContentType());
+        rsp.setContentLengthLong(file.length());
+        Files.copy(file.toPath(), rsp.getOutputStream());
+    }
+
+    /**
+     * Checks if the current user may read a stored body.
+     *
+     * @param jenkins the Jenkins instance
+     * @param metadata what the body was stored with
+     * @return true if the user can read one of the jobs of the body, or is an administrator
+     */
+    private static boolean canRead(Jenkins jenkins, BlobStore.Metadata metadata) {
+        for (String job : metadata.getJobs()) {
+            Item item = jenkins.getItemByFullName(job);
+            if (item != null && item.hasPermission(Item.READ)) {
+                return true;
+            }
+        }
+        return jenkins.hasPermission(Jenkins.ADMINISTER);
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A local, content-addressed store of message bodies that are too large to publish, for claim-check messages.
+ * <p>
+ * A body is stored in a file named by its SHA-256, so the same body is only stored once.
+ * Next to it, a metadata file keeps the content type it was encoded with and the jobs it was published for,
+ * so that it is served as it was stored and only to users who can see one of the jobs.
+ * Storing a body that is already there renews it. Bodies are deleted by {@link #deleteOlderThan(long)}
+ * when they have not been stored for the retention time.
+ */
+final class BlobStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BlobStore.class);
+    private static final String SUFFIX = ".blob";
+    private static final String METADATA_SUFFIX = ".meta";
+    private static final Pattern DIGEST = Pattern.compile("[0-9a-f]{64}");
+    private static final String HEX = "0123456789abcdef";
+    private static final int NIBBLE_BITS = 4;
+    private static final int NIBBLE_MASK = 0xF;
+
+    private final File directory;
+
+    /**
+     * What a body was stored with.
+     */
+    static final class Metadata {
+        private final String contentType;
+        private final Set<String> jobs;
+
+        /**
+         * Constructor.
+         *
+         * @param contentType the content type of the body
+         * @param jobs the full names of the jobs the body was published for
+         */
+        private Metadata(String contentType, Set<String> jobs) {
+            this.contentType = contentType;
+            this.jobs = jobs;
+        }
+
+        /**
+         * Gets the content type the body was encoded with.
+         *
+         * @return the content type
+         */
+        String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * Gets the full names of the jobs the body was published for.
+         *
+         * @return the job names, empty if it was not published for a job
+         */
+        Set<String> getJobs() {
+            return jobs;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param directory the directory to keep the bodies in
+     */
+    BlobStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Gets the store directory.
+     *
+     * @return the directory
+     */
+    File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Stores a body.
+     *
+     * @param body the body
+     * @param contentType the content type the body is encoded with
+     * @param job the full name of the job the body is published for, or null
+     * @return the SHA-256 of the body, in hex, that it can be read back with
+     * @throws IOException if the body could not be stored
+     */
+    synchronized String put(byte[] body, String contentType, String job) throws IOException {
+        String digest = sha256(body);
+        File file = new File(directory, digest + SUFFIX);
+        Metadata metadata = getMetadata(digest);
+        if (file.isFile() && metadata != null) {
+            if (job != null && !metadata.getJobs().contains(job)) {
+                Set<String> jobs = new LinkedHashSet<>(metadata.getJobs());
+                jobs.add(job);
+                writeMetadata(digest, metadata.getContentType(), jobs);
+            }
+            if (!file.setLastModified(System.currentTimeMillis())) {
+                LOGGER.debug("Could not renew blob " + file);
+            }
+            return digest;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create blob directory " + directory);
+        }
+        // The metadata is written first, so a body is never served without it.
+        writeMetadata(digest, contentType,
+                job != null ? Collections.singleton(job) : Collections.<String>emptySet());
+        write(file, body);
+        return digest;
+    }
+
+    /**
+     * Writes the metadata of a body.
+     *
+     * @param digest the SHA-256 of the body, in hex
+     * @param contentType the content type of the body
+     * @param jobs the full names of the jobs the body was published for
+     * @throws IOException if the metadata could not be written
+     */
+    private void writeMetadata(String digest, String contentType, Set<String> jobs) throws IOException {
+        StringBuilder lines = new StringBuilder(contentType).append('\n');
+        for (String job : jobs) {
+            lines.append(job).append('\n');
+        }
+        write(new File(directory, digest + METADATA_SUFFIX), lines.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes a file atomically, replacing it if it exists.
+     *
+     * @param file the file
+     * @param content the content
+     * @throws IOException if the file could not be written
+     */
+    private void write(File file, byte[] content) throws IOException {
+        File temp = File.createTempFile(file.getName(), ".tmp", directory);
+        try {
+            Files.write(temp.toPath(), content);
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    /**
+     * Gets what a stored body was stored with.
+     *
+     * @param digest the SHA-256 of the body, in hex
+     * @return the metadata, or null if the digest is invalid or there is no metadata for it
+     */
+    Metadata getMetadata(String digest) {
+        if (digest == null || !DIGEST.matcher(digest).matches()) {
+            return null;
+        }
+        File file = new File(directory, digest + METADATA_SUFFIX);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            if (lines.isEmpty()) {
+                return null;
+            }
+            return new Metadata(lines.get(0), new LinkedHashSet<>(lines.subList(1, lines.size())));
+        } catch (IOException e) {
+            LOGGER.warn("Could not read blob metadata " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Gets the file of a stored body.
+     *
+     * @param digest the SHA-256 of the body, in hex
+     * @return the file, or null if the digest is invalid or the body is not stored
+     */
+    File get(String digest) {
+        if (digest == null || !DIGEST.matcher(digest).matches()) {
+            return null;
+        }
+        File file = new File(directory, digest + SUFFIX);
+        return file.isFile() ? file : null;
+    }
+
+    /**
+     * Deletes the bodies that have not been stored since the given time, with their metadata.
+     *
+     * @param retentionMillis how long to keep a body after it was last stored
+     * @return the number of deleted bodies
+     */
+    synchronized int deleteOlderThan(long retentionMillis) {
+        long limit = System.currentTimeMillis() - retentionMillis;
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        int deleted = 0;
+        if (files != null) {
+            for (File file : files) {
+                if (file.lastModified() < limit) {
+                    if (file.delete()) {
+                        String name = file.getName();
+                        File metadata = new File(directory,
+                                name.substring(0, name.length() - SUFFIX.length()) + METADATA_SUFFIX);
+                        if (metadata.exists() && !metadata.delete()) {
+                            LOGGER.warn("Could not delete blob metadata " + metadata);
+                        }
+                        deleted++;
+                    } else {
+                        LOGGER.warn("Could not delete blob " + file);
+                    }
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Hashes a body.
+     *
+     * @param body the body
+     * @return the SHA-256 of the body, in hex
+     */
+    static String sha256(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(HEX.charAt((b >> NIBBLE_BITS) & NIBBLE_MASK)).append(HEX.charAt(b & NIBBLE_MASK));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
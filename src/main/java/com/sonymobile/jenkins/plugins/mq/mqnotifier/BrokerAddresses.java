@@ -0,0 +1,222 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import com.rabbitmq.client.Address;
+import com.rabbitmq.client.AddressResolver;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * The addresses of the nodes of a broker cluster, in the order they should be tried.
+ * <p>
+ * The connection factory asks for the addresses on every connection attempt, also when a lost connection
+ * is recovered automatically, so a node that is down is skipped and the next one is tried. The addresses
+ * can be shuffled to spread connections over the cluster, and ordered by the latency measured to each node.
+ * Latency is measured with a TCP connect at most once per probe interval, and replaced by the time the
+ * whole connection handshake took whenever a connection is made.
+ */
+final class BrokerAddresses implements AddressResolver {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BrokerAddresses.class);
+    /** The latency of a node that could not be reached. */
+    static final long UNREACHABLE = Long.MAX_VALUE;
+    private static final int PROBE_TIMEOUT_MILLIS = 1000;
+    private static final long PROBE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final List<Address> addresses;
+    private final boolean shuffle;
+    private final boolean preferLowestLatency;
+    private final ToLongFunction<Address> probe;
+    private final LongSupplier clock;
+    /* The latest measured latency in nanoseconds of each address. */
+    private final Map<Address, Long> latencies = new ConcurrentHashMap<>();
+    private volatile long probedAt = 0;
+    private volatile boolean probed = false;
+
+    /**
+     * Constructor.
+     *
+     * @param addresses the addresses
+     * @param defaultPort the port of addresses without a port
+     * @param shuffle if the addresses are shuffled for every connection attempt
+     * @param preferLowestLatency if the addresses with the lowest latency are tried first
+     */
+    BrokerAddresses(List<Address> addresses, int defaultPort, boolean shuffle, boolean preferLowestLatency) {
+        this(addresses, shuffle, preferLowestLatency, address -> probeConnect(address, defaultPort),
+                System::currentTimeMillis);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param addresses the addresses
+     * @param shuffle if the addresses are shuffled for every connection attempt
+     * @param preferLowestLatency if the addresses with the lowest latency are tried first
+     * @param probe measures the latency of an address in nanoseconds, {@link #UNREACHABLE} if it cannot be reached
+     * @param clock the current time in milliseconds
+     */
+    BrokerAddresses(List<Address> addresses, boolean shuffle, boolean preferLowestLatency,
+                    ToLongFunction<Address> probe, LongSupplier clock) {
+        this.addresses = Collections.unmodifiableList(new ArrayList<>(addresses));
+        this.shuffle = shuffle;
+        this.preferLowestLatency = preferLowestLatency;
+        this.probe = probe;
+        this.clock = clock;
+    }
+
+    /**
+     * Parses addresses separated by commas, whitespace or line breaks, e.g. {@code node1:5672, node2}.
+     *
+     * @param text the addresses, may be null
+     * @return the addresses, empty if none
+     * @throws IllegalArgumentException if an address is invalid
+     */
+    static List<Address> parse(String text) {
+        List<Address> parsed = new ArrayList<>();
+        if (StringUtils.isBlank(text)) {
+            return parsed;
+        }
+        for (String entry : text.trim().split("[,\\s]+")) {
+            try {
+                parsed.add(Address.parseAddress(entry));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid port in address: " + entry, e);
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Gets the configured addresses.
+     *
+     * @return the addresses in the configured order
+     */
+    List<Address> getConfigured() {
+        return addresses;
+    }
+
+    @Override
+    public List<Address> getAddresses() {
+        List<Address> ordered = new ArrayList<>(addresses);
+        if (shuffle) {
+            Collections.shuffle(ordered);
+        }
+        if (preferLowestLatency) {
+            probeIfDue();
+            // The sort is stable, so nodes with the same latency keep their shuffled order.
+            ordered.sort(Comparator.comparingLong(address -> latencies.getOrDefault(address, UNREACHABLE)));
+        }
+        return ordered;
+    }
+
+    /**
+     * Records the time a connection to a node took, including the handshake.
+     *
+     * @param host the address the connection was made to
+     * @param port the port the connection was made to
+     * @param nanos the time it took
+     */
+    void connected(InetAddress host, int port, long nanos) {
+        for (Address address : addresses) {
+            if (address.getPort() > 0 && address.getPort() != port) {
+                continue;
+            }
+            try {
+                for (InetAddress resolved : InetAddress.getAllByName(address.getHost())) {
+                    if (resolved.equals(host)) {
+                        latencies.put(address, nanos);
+                        return;
+                    }
+                }
+            } catch (UnknownHostException e) {
+                LOGGER.debug("Cannot resolve broker address " + address, e);
+            }
+        }
+    }
+
+    /**
+     * Gets the latest measured latency of each address.
+     *
+     * @return the latency in milliseconds by address, -1 if not measured or unreachable
+     */
+    Map<String, Long> getLatencyMillis() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Address address : addresses) {
+            long nanos = latencies.getOrDefault(address, UNREACHABLE);
+            result.put(address.toString(), nanos == UNREACHABLE ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+        return result;
+    }
+
+    /**
+     * Measures the latency of every address if it was not measured during the probe interval.
+     */
+    private synchronized void probeIfDue() {
+        long now = clock.getAsLong();
+        if (probed && now - probedAt < PROBE_INTERVAL_MILLIS) {
+            return;
+        }
+        for (Address address : addresses) {
+            latencies.put(address, probe.applyAsLong(address));
+        }
+        probedAt = now;
+        probed = true;
+    }
+
+    /**
+     * Measures how long a TCP connect to an address takes.
+     *
+     * @param address the address
+     * @param defaultPort the port if the address has none
+     * @return the time in nanoseconds, or {@link #UNREACHABLE}
+     */
+    private static long probeConnect(Address address, int defaultPort) {
+        int port = address.getPort() > 0 ? address.getPort() : defaultPort;
+        long start = System.nanoTime();
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(address.getHost(), port), PROBE_TIMEOUT_MILLIS);
+            return System.nanoTime() - start;
+        } catch (IOException e) {
+            LOGGER.debug("Broker address " + address + " is not reachable", e);
+            return UNREACHABLE;
+        }
+    }
+}
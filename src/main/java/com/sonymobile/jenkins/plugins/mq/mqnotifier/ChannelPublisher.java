@@ -0,0 +1,789 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.MQConnection.ChannelCreationException;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.MQConnection.MessageDeliveryException;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.transports.TransportChannel;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.transports.TransportChannel.ExchangeUnavailableException;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.transports.TransportListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publishes messages from its own queue on its own channel.
+ * Messages with the same partition key are always handled by the same publisher,
+ * so messages of the same priority are published in order, while independent publishers work in parallel.
+ * The channel is opened on the transport of the connection, batching, confirms and resending are
+ * the same for every transport.
+ */
+final class ChannelPublisher implements TransportListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChannelPublisher.class);
+    private static final int CONNECTION_WAIT = 10000;
+    private static final int SENDMESSAGE_TIMEOUT = 100;
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final MQConnection mqConnection;
+    private final int index;
+    private final PriorityLanes messageQueue;
+    /* Messages to publish again, in order, before anything from the message queue. */
+    private final ConcurrentLinkedDeque<MessageData> resendQueue = new ConcurrentLinkedDeque<>();
+    /* Messages that overflowed the message queue, published after it. Created on first overflow. */
+    private volatile SpillQueue spillQueue;
+    /* Unconfirmed messages of the current channel instance, replaced whenever the channel is lost. */
+    private volatile ConcurrentNavigableMap<Long, MessageData> outstandingConfirms = new ConcurrentSkipListMap<>();
+    /* Set when the current channel is shut down, also if it is later recovered automatically. */
+    private volatile boolean channelLost = false;
+    private volatile Thread messageQueueThread;
+    private volatile boolean retired = false;
+
+    /* Guards inFlight, publishing waits on it while the confirm window is full. */
+    private final Object confirmWindowLock = new Object();
+    /* The number of messages published on the current channel that are waiting for a confirm. */
+    private int inFlight = 0;
+    /* The bytes of the message bodies in the confirm window. */
+    private long inFlightBytes = 0;
+
+    /* The latest queued message for each compaction key, so that it can supersede older unsent messages. */
+    private final ConcurrentHashMap<String, MessageData> latestByKey = new ConcurrentHashMap<>();
+
+    /* Exchanges already validated on the current channel, so that validation is done once and not per message. */
+    private final Set<String> validatedExchanges = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Constructor.
+     *
+     * @param mqConnection the connection that channels are created on
+     * @param index the index of this publisher in the pool
+     * @param capacity the capacity of the message queue, split between its priority lanes
+     */
+    ChannelPublisher(MQConnection mqConnection, int index, int capacity) {
+        this.mqConnection = mqConnection;
+        this.index = index;
+        this.messageQueue = new PriorityLanes(capacity);
+    }
+
+    /**
+     * Puts a message in the message queue, starting the publisher thread if needed.
+     * If the queue is full, the overflow policy of the connection decides what happens.
+     *
+     * @param messageData the message
+     * @return true if the message was queued, false if it was not and should be dropped
+     */
+    boolean offer(MessageData messageData) {
+        Thread thread = messageQueueThread;
+        if (retired || thread == null || !thread.isAlive()) {
+            if (!ensureStarted()) {
+                mqConnection.requeue(messageData);
+                return true;
+            }
+        }
+        boolean queued = offerOrOverflow(messageData);
+        if (retired) {
+            // Retired while the message was being queued, make sure it is not left behind.
+            handOverIfStopped();
+        }
+        return queued;
+    }
+
+    /**
+     * Puts a message in the message queue, or applies the overflow policy if the queue is full.
+     *
+     * @param messageData the message
+     * @return true if the message was queued or spilled, false if it should be dropped
+     */
+    private boolean offerOrOverflow(MessageData messageData) {
+        OverflowPolicy policy = mqConnection.getOverflowPolicy();
+        SpillQueue spill = spillQueue;
+        if (policy == OverflowPolicy.SPILL_TO_DISK && spill != null && !spill.isEmpty()) {
+            // Keep spilling until the spill queue has drained, so that messages stay in order.
+            return spill(messageData);
+        }
+        if (tryEnqueue(messageData)) {
+            return true;
+        }
+        switch (policy) {
+            case DROP_OLDEST:
+                while (!tryEnqueue(messageData)) {
+                    MessageData oldest = messageQueue.pollOldest(messageData);
+                    if (oldest == null) {
+                        // The byte budget is held by other publishers or by unconfirmed messages.
+                        return false;
+                    }
+                    forgetLatest(oldest);
+                    mqConnection.messageDropped(oldest, policy);
+                }
+                return true;
+            case BLOCK:
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mqConnection.getOverflowBlockMillis());
+                while (!tryEnqueue(messageData)) {
+                    if (retired || deadline - System.nanoTime() <= 0) {
+                        return false;
+                    }
+                    LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                }
+                return true;
+            case SPILL_TO_DISK:
+                return spill(messageData);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Puts a message in the message queue if it fits in both the queue and the byte budget.
+     *
+     * @param messageData the message
+     * @return true if the message was queued
+     */
+    private boolean tryEnqueue(MessageData messageData) {
+        if (!mqConnection.tryChargeBytes(messageData)) {
+            return false;
+        }
+        String key = messageData.getCompactionKey();
+        MessageData older = null;
+        if (key != null && mqConnection.isCompactSuperseded()) {
+            // Registered before it is queued, so the entry is always there when the consumer removes it.
+            older = latestByKey.put(key, messageData);
+        }
+        if (messageQueue.offer(messageData)) {
+            if (older != null) {
+                older.setSuperseded();
+            }
+            return true;
+        }
+        if (key != null) {
+            if (older != null) {
+                latestByKey.replace(key, messageData, older);
+            } else {
+                latestByKey.remove(key, messageData);
+            }
+        }
+        mqConnection.releaseBytes(messageData);
+        return false;
+    }
+
+    /**
+     * Forgets a message that is no longer queued as the latest message for its compaction key.
+     *
+     * @param messageData the message
+     */
+    private void forgetLatest(MessageData messageData) {
+        String key = messageData.getCompactionKey();
+        if (key != null) {
+            latestByKey.remove(key, messageData);
+        }
+    }
+
+    /**
+     * Removes messages that were superseded by a newer message with the same compaction key while they were queued.
+     * The newer message is published in its own place in the queue, so the order across keys is preserved.
+     *
+     * @param batch the messages taken from the queue
+     */
+    private void removeSuperseded(List<MessageData> batch) {
+        Iterator<MessageData> messages = batch.iterator();
+        while (messages.hasNext()) {
+            MessageData messageData = messages.next();
+            if (messageData.getCompactionKey() != null) {
+                forgetLatest(messageData);
+                if (messageData.isSuperseded()) {
+                    messages.remove();
+                    mqConnection.messageCompacted(messageData);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a message to the spill queue, creating it if needed.
+     * A spilled message does not count in the byte budget until it is read back.
+     *
+     * @param messageData the message
+     * @return true if the message was spilled
+     */
+    private boolean spill(MessageData messageData) {
+        SpillQueue spill = spillQueue;
+        if (spill == null) {
+            synchronized (this) {
+                File directory = mqConnection.getSpillDirectory();
+                if (spillQueue == null && directory != null) {
+                    spillQueue = new SpillQueue(directory, "publisher-" + index + "-");
+                }
+                spill = spillQueue;
+            }
+            if (spill == null) {
+                return false;
+            }
+        }
+        try {
+            spill.add(messageData);
+            mqConnection.releaseBytes(messageData);
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("Could not spill message to disk: ", e);
+            return false;
+        }
+    }
+
+    /**
+     * Starts the publisher thread if it is not running.
+     *
+     * @return false if this publisher is retired
+     */
+    private synchronized boolean ensureStarted() {
+        // If offer is called from multiple threads, make sure only one thread is started.
+        if (retired) {
+            return false;
+        }
+        if (messageQueueThread == null || !messageQueueThread.isAlive()) {
+            String destination = mqConnection.getName() != null ? mqConnection.getName() + " " : "";
+            messageQueueThread = new Thread(() -> sendMessages(), "MQ Notifier publisher " + destination + index);
+            messageQueueThread.start();
+            LOGGER.info("messageQueueThread recreated since it was null or not alive.");
+        }
+        return true;
+    }
+
+    /**
+     * Get the number of currently outstanding confirms.
+     *
+     * @return the number of currently outstanding confirms
+     */
+    int getSizeOutstandingConfirms() {
+        return outstandingConfirms.size();
+    }
+
+    /**
+     * Clear the outstanding confirms list.
+     */
+    void clearOutstandingConfirms() {
+        for (MessageData messageData : outstandingConfirms.values()) {
+            mqConnection.releaseBytes(messageData);
+        }
+        outstandingConfirms.clear();
+        resetConfirmWindow();
+    }
+
+    /**
+     * Get the number of messages published on the current channel that are waiting for a confirm.
+     *
+     * @return the number of messages in the confirm window
+     */
+    int getInFlightCount() {
+        synchronized (confirmWindowLock) {
+            return inFlight;
+        }
+    }
+
+    /**
+     * Get the bytes of the message bodies published on the current channel that are waiting for a confirm.
+     *
+     * @return the bytes in the confirm window
+     */
+    long getInFlightBytes() {
+        synchronized (confirmWindowLock) {
+            return inFlightBytes;
+        }
+    }
+
+    /**
+     * Get the number of messages waiting in the message queue.
+     *
+     * @return the number of queued messages
+     */
+    int getQueueSize() {
+        return messageQueue.size();
+    }
+
+    /**
+     * Get the number of messages waiting in one priority lane of the message queue.
+     *
+     * @param priority the priority of the lane
+     * @return the number of queued messages in the lane
+     */
+    int getQueueSize(MessagePriority priority) {
+        return messageQueue.size(priority);
+    }
+
+    /**
+     * Get the number of messages waiting to be published again after a channel loss or a nack.
+     *
+     * @return the number of messages to resend
+     */
+    int getResendSize() {
+        return resendQueue.size();
+    }
+
+    /**
+     * Get the number of messages that overflowed the message queue and are kept on disk.
+     *
+     * @return the number of spilled messages
+     */
+    int getSpillSize() {
+        SpillQueue spill = spillQueue;
+        return spill != null ? spill.size() : 0;
+    }
+
+    /**
+     * Forget all validated exchanges, e.g. when the configuration changes.
+     */
+    void invalidateExchanges() {
+        validatedExchanges.clear();
+    }
+
+    /**
+     * Wakes up a publisher waiting for room in the confirm window, e.g. when the window size changes.
+     */
+    void wakeUp() {
+        synchronized (confirmWindowLock) {
+            confirmWindowLock.notifyAll();
+        }
+    }
+
+    /**
+     * Stops this publisher when the pool is resized.
+     * Queued messages are handed back to the connection to be published by the new pool.
+     */
+    void retire() {
+        retired = true;
+        handOverIfStopped();
+    }
+
+    /**
+     * Hands over the queued messages of a retired publisher whose thread is not running.
+     * A running thread hands over its own messages when it stops.
+     */
+    private synchronized void handOverIfStopped() {
+        if (messageQueueThread == null || !messageQueueThread.isAlive()) {
+            List<MessageData> remaining = new ArrayList<>();
+            messageQueue.drainTo(remaining);
+            drainSpill(remaining, Integer.MAX_VALUE);
+            handOver(remaining);
+        }
+    }
+
+    /**
+     * Hands messages back to the connection to be published by the current pool.
+     *
+     * @param messages the messages to hand over
+     */
+    private void handOver(Iterable<MessageData> messages) {
+        for (MessageData messageData : messages) {
+            mqConnection.requeue(messageData);
+        }
+    }
+
+    /**
+     * Takes messages from the spill queue, if any, and counts them in the byte budget again.
+     *
+     * @param messages the list to add the messages to
+     * @param maxMessages the maximum number of messages to take
+     */
+    private void drainSpill(List<MessageData> messages, int maxMessages) {
+        SpillQueue spill = spillQueue;
+        if (spill != null && !spill.isEmpty()) {
+            int start = messages.size();
+            try {
+                spill.drainTo(messages, maxMessages);
+            } catch (IOException e) {
+                LOGGER.error("Could not read spilled messages, dropping " + spill.size() + " messages: ", e);
+                spill.close();
+            }
+            for (int i = start; i < messages.size(); i++) {
+                mqConnection.chargeBytes(messages.get(i));
+            }
+        }
+    }
+
+    /**
+     * Sends messages from the message queue.
+     */
+    private void sendMessages() {
+        TransportChannel channel = null;
+        List<MessageData> batch = new ArrayList<>();
+
+        while (!retired) {
+            try {
+                // What was left of the previous batch has already been put back in line.
+                batch.clear();
+                if (channelLost) {
+                    resendUnconfirmed();
+                }
+                if (channel == null || !channel.isOpen()) {
+                    validatedExchanges.clear();
+                    resetConfirmWindow();
+                    channel = mqConnection.openChannel(this);
+                }
+                if (fillBatch(batch)) {
+                    removeSuperseded(batch);
+                    publishBatch(batch, channel);
+                }
+            } catch (InterruptedException ie) {
+                LOGGER.info("sendMessages() poll() was interrupted: ", ie);
+            } catch (ChannelCreationException | MessageDeliveryException transientException) {
+                LOGGER.error(transientException.getMessage(), transientException.getCause());
+                try {
+                    Thread.sleep(CONNECTION_WAIT);
+                } catch (InterruptedException ie) {
+                    LOGGER.error("Thread.sleep() was interrupted", ie);
+                }
+            } catch (IOException | IllegalArgumentException ioe) {
+                LOGGER.error("error validating channel: ", ioe);
+            } catch (RuntimeException e) {
+                // The batch is published again later rather than lost with this thread.
+                LOGGER.error("Unexpected error publishing messages: ", e);
+                resendFirst(batch);
+                batch.clear();
+                try {
+                    Thread.sleep(CONNECTION_WAIT);
+                } catch (InterruptedException ie) {
+                    LOGGER.error("Thread.sleep() was interrupted", ie);
+                }
+            }
+        }
+        shutDown(channel);
+    }
+
+    /**
+     * Shuts down a retired publisher.
+     * Queued messages are handed over, and messages that are not confirmed in time are handed over
+     * to be published again.
+     *
+     * @param channel the channel of this publisher, may be null
+     */
+    private void shutDown(TransportChannel channel) {
+        try {
+            if (channel != null && channel.isOpen()) {
+                channel.flush();
+                channel.waitForConfirms(CONNECTION_WAIT);
+                channel.close();
+            }
+        } catch (InterruptedException | IOException | TimeoutException e) {
+            LOGGER.warn("Retired publisher did not receive all confirms: ", e);
+        }
+        resendUnconfirmed();
+        List<MessageData> remaining = new ArrayList<>(resendQueue);
+        resendQueue.clear();
+        messageQueue.drainTo(remaining);
+        drainSpill(remaining, Integer.MAX_VALUE);
+        handOver(remaining);
+    }
+
+    /**
+     * Puts the unconfirmed messages of a lost channel first in line to be published again, in the order
+     * they were published, and starts tracking confirms for the next channel instance from scratch.
+     * Confirms from the broker are at-least-once, so a resent message may be delivered twice.
+     */
+    private void resendUnconfirmed() {
+        channelLost = false;
+        ConcurrentNavigableMap<Long, MessageData> lost = outstandingConfirms;
+        outstandingConfirms = new ConcurrentSkipListMap<>();
+        resetConfirmWindow();
+        if (!lost.isEmpty()) {
+            LOGGER.info("Resending " + lost.size() + " unconfirmed messages after channel loss.");
+            resendFirst(lost.values());
+        }
+    }
+
+    /**
+     * Puts messages first in line to be published again, keeping their order.
+     *
+     * @param messages the messages in the order they should be published
+     */
+    private void resendFirst(Collection<MessageData> messages) {
+        List<MessageData> reversed = new ArrayList<>(messages);
+        for (int i = reversed.size() - 1; i >= 0; i--) {
+            resendQueue.addFirst(reversed.get(i));
+        }
+    }
+
+    /**
+     * Fills the batch with messages to resend, messages from the message queue and spilled messages.
+     * Spilled messages are newer than the queued ones, so they are taken after the queue is drained.
+     * Waits for the first message, then takes what is already queued, and keeps waiting for more
+     * messages until the batch is full or the linger time has passed.
+     *
+     * @param batch the list to add messages to
+     * @return true if any messages were added
+     * @throws InterruptedException if interrupted while waiting for messages
+     */
+    private boolean fillBatch(List<MessageData> batch) throws InterruptedException {
+        int size = mqConnection.getBatchSize();
+        while (batch.size() < size) {
+            MessageData resend = resendQueue.pollFirst();
+            if (resend == null) {
+                break;
+            }
+            batch.add(resend);
+        }
+        if (batch.size() < size) {
+            messageQueue.drainTo(batch, size - batch.size());
+        }
+        if (batch.size() < size) {
+            drainSpill(batch, size - batch.size());
+        }
+        if (batch.isEmpty()) {
+            MessageData first = messageQueue.poll(SENDMESSAGE_TIMEOUT, TimeUnit.MILLISECONDS);
+            if (first == null) {
+                return false;
+            }
+            batch.add(first);
+        }
+        if (batch.size() < size) {
+            messageQueue.drainTo(batch, size - batch.size());
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mqConnection.getBatchLingerMillis());
+            long remaining = deadline - System.nanoTime();
+            while (batch.size() < size && remaining > 0) {
+                MessageData next = messageQueue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    break;
+                }
+                batch.add(next);
+                messageQueue.drainTo(batch, size - batch.size());
+                remaining = deadline - System.nanoTime();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Publishes a batch of messages back-to-back on the channel and flushes it.
+     * The confirms for the whole batch are tracked asynchronously by this listener.
+     * If publishing fails, the messages not yet published are put first in line to be resent.
+     * A message whose exchange is refused for good is dropped.
+     *
+     * @param batch the messages to publish
+     * @param channel the channel to publish on
+     * @throws IOException if the exchange could not be validated or a message could not be delivered
+     */
+    private void publishBatch(List<MessageData> batch, TransportChannel channel) throws IOException {
+        for (int i = 0; i < batch.size(); i++) {
+            MessageData messageData = batch.get(i);
+            try {
+                validateExchange(channel, messageData.getExchange());
+                sendOnChannel(messageData, channel);
+            } catch (MessageDeliveryException e) {
+                resendFirst(batch.subList(i, batch.size()));
+                throw e;
+            } catch (ExchangeUnavailableException | IllegalArgumentException e) {
+                // The message itself can never be published, so it is dropped and the rest are resent.
+                mqConnection.messageUndeliverable(messageData, e);
+                resendFirst(batch.subList(i + 1, batch.size()));
+                throw e;
+            } catch (IOException e) {
+                // The channel or connection failed, the message is resent with the rest on a new channel.
+                resendFirst(batch.subList(i, batch.size()));
+                throw new MessageDeliveryException("Cannot validate exchange", e);
+            } catch (RuntimeException e) {
+                resendFirst(batch.subList(i, batch.size()));
+                throw new MessageDeliveryException("Cannot publish message", e);
+            }
+        }
+        try {
+            channel.flush();
+        } catch (IOException | RuntimeException e) {
+            throw new MessageDeliveryException("Cannot flush messages", e);
+        }
+    }
+
+    /**
+     * Validate the exchange.
+     * The result is cached for the current channel, so the broker is only asked once per exchange.
+     * If declaring of exchanges is enabled, a missing exchange is created as a durable topic exchange.
+     *
+     * @param channel a channel that must contain the given exchange
+     * @param exchange the exchange to validate
+     *
+     * @throws IllegalArgumentException if the exchange is null
+     * @throws ExchangeUnavailableException if messages can never be published to the exchange
+     * @throws IOException if the exchange could not be validated
+     */
+    private void validateExchange(TransportChannel channel, String exchange)
+            throws IOException, IllegalArgumentException {
+        if (exchange == null) {
+            throw new IllegalArgumentException("Invalid configuration, exchange must not be null.");
+        }
+        if (validatedExchanges.contains(exchange)) {
+            return;
+        }
+        channel.validateExchange(exchange, mqConnection.isDeclareExchange());
+        validatedExchanges.add(exchange);
+    }
+
+    @Override
+    public void confirmed(long sequenceNumber, boolean multiple) {
+        for (MessageData messageData : removeConfirmed(sequenceNumber, multiple)) {
+            mqConnection.messageConfirmed(messageData);
+        }
+    }
+
+    @Override
+    public void rejected(long sequenceNumber, boolean multiple) {
+        resendFirst(removeConfirmed(sequenceNumber, multiple));
+    }
+
+    /**
+     * Marks the channel as lost, so its unconfirmed messages are resent, and invalidates the validated
+     * exchange cache if the channel was closed because an exchange was not found.
+     *
+     * @param exchangeMissing true if an exchange was not found
+     */
+    @Override
+    public void lost(boolean exchangeMissing) {
+        channelLost = true;
+        if (exchangeMissing) {
+            validatedExchanges.clear();
+        }
+    }
+
+    @Override
+    public void recovered() {
+        validatedExchanges.clear();
+    }
+
+    /**
+     * Removes acked or nacked messages from the outstanding confirms of the current channel instance.
+     *
+     * @param sequenceNumber the sequence number of the confirm
+     * @param multiple if all messages up to and including the sequence number are confirmed
+     * @return the removed messages in the order they were published
+     */
+    private List<MessageData> removeConfirmed(long sequenceNumber, boolean multiple) {
+        List<MessageData> removed = new ArrayList<>();
+        if (multiple) {
+            Iterator<MessageData> confirmed = outstandingConfirms.headMap(sequenceNumber, true).values().iterator();
+            while (confirmed.hasNext()) {
+                removed.add(confirmed.next());
+                confirmed.remove();
+            }
+        } else {
+            MessageData message = outstandingConfirms.remove(sequenceNumber);
+            if (message != null) {
+                removed.add(message);
+            }
+        }
+        releaseConfirmWindow(removed);
+        return removed;
+    }
+
+    /**
+     * Waits until there is room in the confirm window for another message.
+     *
+     * @param channel the channel the message will be published on
+     * @param bytes the size of the message body
+     * @throws MessageDeliveryException if the channel is closed or the thread is interrupted
+     */
+    private void acquireConfirmWindow(TransportChannel channel, int bytes) throws MessageDeliveryException {
+        synchronized (confirmWindowLock) {
+            int max = mqConnection.getMaxInFlight();
+            while (max > 0 && inFlight >= max) {
+                if (!channel.isOpen()) {
+                    throw new MessageDeliveryException("Channel closed while waiting for confirms", null);
+                }
+                try {
+                    confirmWindowLock.wait(SENDMESSAGE_TIMEOUT);
+                } catch (InterruptedException e) {
+                    throw new MessageDeliveryException("Interrupted while waiting for confirms", e);
+                }
+                max = mqConnection.getMaxInFlight();
+            }
+            inFlight++;
+            inFlightBytes += bytes;
+        }
+    }
+
+    /**
+     * Releases confirmed messages from the confirm window and wakes up a waiting publisher.
+     *
+     * @param confirmed the confirmed messages
+     */
+    private void releaseConfirmWindow(List<MessageData> confirmed) {
+        if (!confirmed.isEmpty()) {
+            long bytes = 0;
+            for (MessageData messageData : confirmed) {
+                bytes += messageData.getBody().length;
+            }
+            synchronized (confirmWindowLock) {
+                inFlight = Math.max(0, inFlight - confirmed.size());
+                inFlightBytes = Math.max(0, inFlightBytes - bytes);
+                confirmWindowLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Empties the confirm window, confirms for a previous channel will never arrive.
+     */
+    private void resetConfirmWindow() {
+        synchronized (confirmWindowLock) {
+            inFlight = 0;
+            inFlightBytes = 0;
+            confirmWindowLock.notifyAll();
+        }
+    }
+
+    /**
+     * Sends a message.
+     * The caller is responsible for resending the message if this fails.
+     *
+     * @param messageData an object containing message data
+     * @param channel a channel to publish the message on
+     */
+    private void sendOnChannel(MessageData messageData, TransportChannel channel) throws MessageDeliveryException {
+        acquireConfirmWindow(channel, messageData.getBody().length);
+        long sequenceNumber = channel.getNextPublishSeqNo();
+        try {
+            outstandingConfirms.put(sequenceNumber, messageData);
+            channel.publish(
+                    messageData.getExchange(),
+                    messageData.getRoutingKey(),
+                    messageData.getProps(),
+                    messageData.getBody()
+            );
+        } catch (IOException | RuntimeException e) {
+            // The message may already have been confirmed by a transport that confirms as it publishes.
+            if (outstandingConfirms.remove(sequenceNumber) != null) {
+                releaseConfirmWindow(Collections.singletonList(messageData));
+            }
+            throw new MessageDeliveryException("Cannot publish message", e);
+        }
+    }
+}
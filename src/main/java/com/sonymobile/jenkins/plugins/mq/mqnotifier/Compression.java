@@ -0,0 +1,194 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * How message bodies are compressed. The content encoding of a compressed message is set to
+ * the name of the codec, as for HTTP, so that consumers know how to decompress it.
+ * <p>
+ * Deflaters and their output buffers are taken from a small pool and returned after use, so compressing
+ * a message does not allocate more than the compressed body, while the number of native zlib streams
+ * stays bounded however many threads publish. Deflaters that do not fit in the pool are ended right away.
+ */
+public enum Compression {
+    /** No compression. */
+    NONE(null, "No compression", 0, false),
+    /** gzip at the default level, the best ratio. */
+    GZIP("gzip", "gzip", Deflater.DEFAULT_COMPRESSION, true),
+    /** zlib deflate at the fastest level, the least CPU. */
+    DEFLATE("deflate", "deflate (fast)", Deflater.BEST_SPEED, false);
+
+    private static final int BUFFER_SIZE = 4096;
+    private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+    private static final byte[] GZIP_HEADER = {0x1f, (byte)0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte)0xff};
+    private static final int BYTE_BITS = 8;
+    private static final int BYTE_MASK = 0xFF;
+    private static final int INT_BYTES = 4;
+    /* The number of idle deflaters kept per codec. */
+    private static final int MAX_POOLED = 4;
+
+    private final String contentEncoding;
+    private final String displayName;
+    private final int level;
+    private final boolean gzip;
+    private final BlockingQueue<Buffer> pool = new ArrayBlockingQueue<>(MAX_POOLED);
+
+    /**
+     * A reusable deflater with its output buffer.
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+        private final byte[] chunk = new byte[BUFFER_SIZE];
+        private final Deflater deflater;
+
+        /**
+         * Constructor.
+         *
+         * @param level the deflate level
+         * @param gzip true for raw deflated data to wrap in gzip, false for zlib
+         */
+        private Buffer(int level, boolean gzip) {
+            super(BUFFER_SIZE);
+            // gzip has its own header and trailer around raw deflated data.
+            deflater = new Deflater(level, gzip);
+        }
+
+        /**
+         * Forgets the contents, and drops a buffer that grew large for one message.
+         */
+        private void clear() {
+            reset();
+            if (buf.length > MAX_RETAINED_SIZE) {
+                buf = new byte[BUFFER_SIZE];
+            }
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param contentEncoding the content encoding of a compressed message
+     * @param displayName the name shown in the configuration
+     * @param level the deflate level
+     * @param gzip true to wrap the deflated data in gzip, false for zlib
+     */
+    Compression(String contentEncoding, String displayName, int level, boolean gzip) {
+        this.contentEncoding = contentEncoding;
+        this.displayName = displayName;
+        this.level = level;
+        this.gzip = gzip;
+    }
+
+    /**
+     * Gets the content encoding of a compressed message.
+     *
+     * @return the content encoding, null for {@link #NONE}
+     */
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    /**
+     * Gets the name shown in the configuration.
+     *
+     * @return the display name
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Compresses a message body.
+     *
+     * @param body the body
+     * @return the compressed body, or the body itself for {@link #NONE}
+     */
+    byte[] compress(byte[] body) {
+        if (this == NONE) {
+            return body;
+        }
+        Buffer out = pool.poll();
+        if (out == null) {
+            out = new Buffer(level, gzip);
+        }
+        Deflater deflater = out.deflater;
+        try {
+            if (gzip) {
+                out.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+            }
+            deflater.setInput(body);
+            deflater.finish();
+            while (!deflater.finished()) {
+                int count = deflater.deflate(out.chunk);
+                out.write(out.chunk, 0, count);
+            }
+            if (gzip) {
+                CRC32 crc = new CRC32();
+                crc.update(body);
+                writeIntLittleEndian(out, (int)crc.getValue());
+                writeIntLittleEndian(out, body.length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.reset();
+            out.clear();
+            if (!pool.offer(out)) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Ends the idle deflaters of every codec, e.g. when the plugin is stopped.
+     * Deflaters in use are pooled again when they are done, and created again when needed.
+     */
+    static void releaseAll() {
+        for (Compression codec : values()) {
+            Buffer idle = codec.pool.poll();
+            while (idle != null) {
+                idle.deflater.end();
+                idle = codec.pool.poll();
+            }
+        }
+    }
+
+    /**
+     * Writes an int in little-endian byte order, as in the gzip trailer.
+     *
+     * @param out the output
+     * @param value the value
+     */
+    private static void writeIntLittleEndian(ByteArrayOutputStream out, int value) {
+        int remaining = value;
+        for (int i = 0; i < INT_BYTES; i++) {
+            out.write(remaining & BYTE_MASK);
+            remaining >>>= BYTE_BITS;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.providers.EventSnapshot;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.providers.EventType;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.providers.MQDataProvider;
+import net.sf.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs {@link MQDataProvider}s and publishes the resulting messages on a bounded pool of worker threads,
+ * so that slow providers do not hold up the Jenkins threads that report queue and build events.
+ * <p>
+ * The listener builds the base message on its own thread, with the state of the item or run when the event
+ * was reported. Providers that {@link MQDataProvider#requiresInline() require it}, which is all of them unless
+ * they opt out, also run there. The remaining providers get an {@link EventSnapshot} taken on the listener thread,
+ * and run later on a worker, which then publishes the message. A message that is logged to the build log is
+ * logged by the listener as it is before the remaining providers run, so the listener never waits for a worker.
+ * Events with the same partition key go to the same single-threaded worker, so they are published in the order
+ * they were reported. If the queue of a worker is full, the event is dropped right away.
+ * If the pool is disabled, everything runs on the listener thread as before.
+ */
+final class EnrichmentPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EnrichmentPool.class);
+    /** The default number of worker threads. */
+    static final int DEFAULT_THREADS = 2;
+    private static final int WORKER_QUEUE_SIZE = 10000;
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private static final EnrichmentPool INSTANCE = new EnrichmentPool();
+
+    /* One single-threaded executor per worker, empty if the pool is disabled. */
+    private volatile ExecutorService[] workers = new ExecutorService[0];
+    /* Events dropped because the queue of their worker was full. */
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * Use {@link #getInstance()}.
+     */
+    private EnrichmentPool() {
+    }
+
+    /**
+     * Gets the instance.
+     *
+     * @return the instance
+     */
+    static EnrichmentPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Sets the number of worker threads. Work already handed to the previous workers is finished by them.
+     *
+     * @param count the number of workers, 0 or less to run everything on the listener threads
+     */
+    synchronized void setThreads(int count) {
+        int size = Math.max(0, count);
+        ExecutorService[] old = workers;
+        if (old.length == size) {
+            return;
+        }
+        ExecutorService[] pool = new ExecutorService[size];
+        for (int i = 0; i < size; i++) {
+            String name = "MQ Notifier enrichment " + i;
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(WORKER_QUEUE_SIZE), runnable -> {
+                        Thread thread = new Thread(runnable, name);
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            pool[i] = executor;
+        }
+        workers = pool;
+        for (ExecutorService executor : old) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Gets the number of events dropped because the queue of their worker was full.
+     *
+     * @return the number of dropped events
+     */
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Runs the providers for an event and then publishes the message.
+     *
+     * @param eventType the event type, or null if no providers add data to it
+     * @param partitionKey the key that keeps events in order, e.g. the job name, may be null
+     * @param snapshot takes a snapshot of the item or run for the providers that run on a worker
+     * @param json the base message, built on the listener thread
+     * @param hook calls the provider method for the event
+     * @param log logs the message on the listener thread and returns it encoded, or null if it is not logged
+     * @param publish publishes the enriched message, with its encoding if that is still up to date
+     */
+    void enrich(EventType eventType, String partitionKey, Supplier<EventSnapshot> snapshot, JSONObject json,
+                BiConsumer<MQDataProvider, JSONObject> hook, Function<JSONObject, byte[]> log,
+                BiConsumer<JSONObject, byte[]> publish) {
+        List<MQDataProvider> providers = eventType != null
+                ? MQDataProvider.all(eventType) : Collections.<MQDataProvider>emptyList();
+        List<MQDataProvider> deferred = new ArrayList<>();
+        for (MQDataProvider provider : providers) {
+            if (provider.requiresInline()) {
+                call(provider, eventType, json, hook);
+            } else {
+                deferred.add(provider);
+            }
+        }
+        byte[] logged = log != null ? log.apply(json) : null;
+        EventSnapshot taken = deferred.isEmpty() ? null : snapshot.get();
+        Runnable rest = () -> {
+            try {
+                for (MQDataProvider provider : deferred) {
+                    call(provider, eventType, json, (p, j) -> p.provideDeferredData(taken, j));
+                }
+                // The logged encoding is out of date if the deferred providers have added to the message.
+                publish.accept(json, deferred.isEmpty() ? logged : null);
+            } catch (RuntimeException e) {
+                LOGGER.error("Could not enrich and publish message: ", e);
+            }
+        };
+        if (!submit(partitionKey, workers, rest)) {
+            droppedCount.incrementAndGet();
+            LOGGER.warn("Enrichment worker is full, dropping " + eventType + " message for " + partitionKey);
+        }
+    }
+
+    /**
+     * Hands work to the worker for a partition key, or runs it right away if the pool is disabled.
+     * If the worker is replaced while the work is handed to it, the work is handed to its replacement.
+     *
+     * @param partitionKey the key that keeps events in order, may be null
+     * @param current the current workers
+     * @param work the work
+     * @return false if the queue of the worker was full
+     */
+    private boolean submit(String partitionKey, ExecutorService[] current, Runnable work) {
+        ExecutorService[] pool = current;
+        while (true) {
+            if (pool.length == 0) {
+                work.run();
+                return true;
+            }
+            int index = 0;
+            if (partitionKey != null && pool.length > 1) {
+                index = Math.floorMod(partitionKey.hashCode(), pool.length);
+            }
+            ExecutorService worker = pool[index];
+            try {
+                worker.execute(work);
+                return true;
+            } catch (RejectedExecutionException e) {
+                ExecutorService[] replaced = workers;
+                if (!worker.isShutdown() || replaced == pool) {
+                    return false;
+                }
+                pool = replaced;
+            }
+        }
+    }
+
+    /**
+     * Calls a provider and records how long it took. The time budget is checked after the call returns:
+     * a call is never interrupted, so a provider that hangs holds up its worker for as long as it hangs.
+     * If the call went over the budget, the fields it added are removed, and the provider is suspended,
+     * so that it is skipped for this event type for a while.
+     *
+     * @param provider the provider
+     * @param eventType the event type
+     * @param json the message
+     * @param hook calls the provider method for the event
+     */
+    private static void call(MQDataProvider provider, EventType eventType, JSONObject json,
+                             BiConsumer<MQDataProvider, JSONObject> hook) {
+        ProviderTimings timings = ProviderTimings.getInstance();
+        ProviderTimings.Timing timing = timings.getTiming(provider.getClass().getName(), eventType);
+        long budget = timings.getBudgetNanos();
+        if (timing.skip(System.nanoTime())) {
+            return;
+        }
+        // The fields of a message keep the order they were added in, so added fields come after these.
+        int sizeBefore = json.size();
+        long start = System.nanoTime();
+        hook.accept(provider, json);
+        long now = System.nanoTime();
+        if (timing.record(now - start, now, budget, timings.getSuspendNanos())) {
+            List<Object> added = new ArrayList<>();
+            int index = 0;
+            for (Object key : json.keySet()) {
+                if (index++ >= sizeBefore) {
+                    added.add(key);
+                }
+            }
+            for (Object key : added) {
+                json.remove(key);
+            }
+            LOGGER.warn("Data provider " + timing.getProviderName() + " took "
+                    + TimeUnit.NANOSECONDS.toMillis(now - start) + " ms for " + eventType
+                    + ", over the budget of " + timings.getBudgetMillis() + " ms. Its data is dropped and it is"
+                    + " suspended for " + TimeUnit.NANOSECONDS.toMillis(timings.getSuspendNanos()) + " ms.");
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.transports.NdjsonSegmentWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes every queued message to local NDJSON segments, independently of the transport.
+ * <p>
+ * Messages are handed over through a lock-free ring buffer of their own, sharing the encoded body with
+ * the message queue, and are written by a single thread in batches. When the ring buffer is full the
+ * message is dropped from the archive only, so a slow disk never holds back publishing.
+ */
+final class EventArchive {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventArchive.class);
+    /** The default number of messages waiting to be written. */
+    static final int DEFAULT_CAPACITY = 65536;
+    private static final int BATCH_SIZE = 1024;
+    private static final long POLL_MILLIS = 100;
+    private static final long STOP_WAIT_MILLIS = 10000;
+
+    private final NdjsonSegmentWriter writer;
+    private final MpscRingBuffer<MessageData> queue;
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final Thread thread;
+    private volatile boolean stopped = false;
+
+    /**
+     * Constructor, starts the writer thread.
+     *
+     * @param writer the writer of the segments
+     * @param capacity the number of messages that can wait to be written
+     */
+    EventArchive(NdjsonSegmentWriter writer, int capacity) {
+        this.writer = writer;
+        this.queue = new MpscRingBuffer<>(capacity);
+        this.thread = new Thread(this::writeMessages, "MQ Notifier archive");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Gets the directory the segments are written in.
+     *
+     * @return the directory
+     */
+    File getDirectory() {
+        return writer.getDirectory();
+    }
+
+    /**
+     * Gets the writer of the segments.
+     *
+     * @return the writer
+     */
+    NdjsonSegmentWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * Hands a message over to be written. Never blocks.
+     *
+     * @param messageData the message
+     */
+    void offer(MessageData messageData) {
+        if (stopped || !queue.offer(messageData)) {
+            droppedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Gets the number of messages written.
+     *
+     * @return the number of messages
+     */
+    long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    /**
+     * Gets the number of messages dropped because the archive could not keep up or failed to write.
+     *
+     * @return the number of messages
+     */
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Gets the number of messages waiting to be written.
+     *
+     * @return the number of messages
+     */
+    int getBacklog() {
+        return queue.size();
+    }
+
+    /**
+     * Stops the writer thread after it has written the waiting messages, and closes the segment.
+     */
+    void close() {
+        stopped = true;
+        try {
+            thread.join(STOP_WAIT_MILLIS);
+        } catch (InterruptedException e) {
+            LOGGER.warn("Interrupted while waiting for the archive to be written", e);
+            Thread.currentThread().interrupt();
+        }
+        writer.close();
+    }
+
+    /**
+     * Writes messages in batches, and flushes the segment whenever there is nothing more to write.
+     */
+    private void writeMessages() {
+        List<MessageData> batch = new ArrayList<>(BATCH_SIZE);
+        while (!stopped || !queue.isEmpty()) {
+            try {
+                MessageData first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, BATCH_SIZE - 1);
+                    write(batch);
+                    batch.clear();
+                }
+                if (queue.isEmpty()) {
+                    writer.flush();
+                }
+            } catch (InterruptedException e) {
+                LOGGER.info("Archive writer was interrupted: ", e);
+            } catch (IOException e) {
+                LOGGER.error("Could not write the archive: ", e);
+                writer.close();
+            }
+        }
+    }
+
+    /**
+     * Writes a batch of messages. Messages that could not be written are counted as dropped.
+     *
+     * @param batch the messages
+     * @throws IOException if a message could not be written
+     */
+    private void write(List<MessageData> batch) throws IOException {
+        for (int i = 0; i < batch.size(); i++) {
+            MessageData messageData = batch.get(i);
+            try {
+                writer.append(messageData.getExchange(), messageData.getRoutingKey(), messageData.getProps(),
+                        messageData.getBody());
+            } catch (IOException e) {
+                droppedCount.addAndGet(batch.size() - i);
+                throw e;
+            }
+            writtenCount.incrementAndGet();
+        }
+    }
+}
@@ -51,8 +51,7 @@ public class ItemListenerImpl extends ItemListener {
         LOGGER.info("All jobs have been loaded.");
         MQNotifierConfig config = MQNotifierConfig.getInstance();
         if (config != null && config.isNotifierEnabled()) {
-            MQConnection.getInstance().initialize(config.getUserName(), config.getUserPassword(),
-                    config.getServerUri(), config.getVirtualHost());
+            config.initializeConnection();
         }
         super.onLoaded();
     }
@@ -0,0 +1,357 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONNull;
+import net.sf.json.JSONObject;
+import net.sf.json.util.JSONUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Encodes JSON messages straight into UTF-8 bytes.
+ * <p>
+ * Unlike {@code json.toString().getBytes(UTF_8)}, no intermediate strings are created: values are written
+ * into a per-thread buffer that is reused between messages, and the names of the well-known fields are
+ * pre-encoded. The result is meant to be created once per message and used both for publishing and logging.
+ */
+public final class JsonEncoder {
+    private static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+    /* Larger buffers are not kept between messages, so an occasional huge message does not pin memory. */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+    private static final int ONE_BYTE_LIMIT = 0x80;
+    private static final int TWO_BYTE_LIMIT = 0x800;
+    private static final int CONTROL_CHAR_LIMIT = 0x20;
+    private static final int SIX_BITS = 0x3F;
+    private static final int LOW_NIBBLE = 0xF;
+    private static final int NIBBLE_SHIFT = 4;
+    private static final int SHIFT_ONE = 6;
+    private static final int SHIFT_TWO = 12;
+    private static final int SHIFT_THREE = 18;
+    private static final int MAX_UTF8_BYTES = 4;
+    private static final int RADIX = 10;
+    private static final int CONTINUATION = 0x80;
+    private static final int TWO_BYTE_LEAD = 0xC0;
+    private static final int THREE_BYTE_LEAD = 0xE0;
+    private static final int FOUR_BYTE_LEAD = 0xF0;
+    private static final int MAX_LONG_DIGITS = 20;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    /* The quoted names of the well-known fields, followed by a colon. */
+    private static final Map<String, byte[]> KNOWN_KEYS = new HashMap<>();
+
+    static {
+        for (String key : new String[] {Util.KEY_URL, Util.KEY_PROJECT_NAME, Util.KEY_BUILD_NR,
+                Util.KEY_BUILD_DURATION, Util.KEY_MASTER_FQDN, Util.KEY_STATE, Util.KEY_DEQUEUE_REASON,
+                Util.KEY_DEQUEUE_TIME_SPENT, Util.KEY_DEQUEUE_ALLOCATED_LABEL, Util.KEY_STATUS, }) {
+            KNOWN_KEYS.put(key, ("\"" + key + "\":").getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    private static final ThreadLocal<JsonEncoder> ENCODER = ThreadLocal.withInitial(JsonEncoder::new);
+
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private int count = 0;
+
+    /**
+     * Use {@link #encode(JSONObject)}.
+     */
+    private JsonEncoder() {
+    }
+
+    /**
+     * Encodes a JSON object as compact UTF-8 JSON.
+     *
+     * @param json the JSON object
+     * @return the encoded bytes
+     */
+    public static byte[] encode(JSONObject json) {
+        JsonEncoder encoder = ENCODER.get();
+        try {
+            encoder.writeObject(json);
+            return Arrays.copyOf(encoder.buffer, encoder.count);
+        } finally {
+            encoder.count = 0;
+            if (encoder.buffer.length > MAX_RETAINED_BUFFER_SIZE) {
+                encoder.buffer = new byte[INITIAL_BUFFER_SIZE];
+            }
+        }
+    }
+
+    /**
+     * Writes a JSON object.
+     *
+     * @param json the object
+     */
+    private void writeObject(JSONObject json) {
+        if (json.isNullObject()) {
+            write(NULL);
+            return;
+        }
+        write('{');
+        boolean first = true;
+        for (Object entry : json.entrySet()) {
+            Map.Entry<?, ?> field = (Map.Entry<?, ?>)entry;
+            if (!first) {
+                write(',');
+            }
+            first = false;
+            String key = String.valueOf(field.getKey());
+            byte[] known = KNOWN_KEYS.get(key);
+            if (known != null) {
+                write(known);
+            } else {
+                writeString(key);
+                write(':');
+            }
+            writeValue(field.getValue());
+        }
+        write('}');
+    }
+
+    /**
+     * Writes a JSON array.
+     *
+     * @param array the array
+     */
+    private void writeArray(JSONArray array) {
+        write('[');
+        for (int i = 0; i < array.size(); i++) {
+            if (i > 0) {
+                write(',');
+            }
+            writeValue(array.get(i));
+        }
+        write(']');
+    }
+
+    /**
+     * Writes any value that a JSON object or array can hold.
+     *
+     * @param value the value
+     */
+    private void writeValue(Object value) {
+        if (value == null || value instanceof JSONNull) {
+            write(NULL);
+        } else if (value instanceof String) {
+            writeString((String)value);
+        } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            writeLong(((Number)value).longValue());
+        } else if (value instanceof Number) {
+            writeAscii(JSONUtils.numberToString((Number)value));
+        } else if (value instanceof Boolean) {
+            write((Boolean)value ? TRUE : FALSE);
+        } else if (value instanceof JSONObject) {
+            writeObject((JSONObject)value);
+        } else if (value instanceof JSONArray) {
+            writeArray((JSONArray)value);
+        } else {
+            // JSON functions and other values json-lib writes verbatim.
+            writeRaw(JSONUtils.valueToString(value));
+        }
+    }
+
+    /**
+     * Writes a quoted and escaped string.
+     *
+     * @param value the string
+     */
+    private void writeString(String value) {
+        write('"');
+        int length = value.length();
+        int i = 0;
+        while (i < length) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                    write('\\');
+                    write(c);
+                    break;
+                case '\b':
+                    write('\\');
+                    write('b');
+                    break;
+                case '\f':
+                    write('\\');
+                    write('f');
+                    break;
+                case '\n':
+                    write('\\');
+                    write('n');
+                    break;
+                case '\r':
+                    write('\\');
+                    write('r');
+                    break;
+                case '\t':
+                    write('\\');
+                    write('t');
+                    break;
+                default:
+                    if (c < CONTROL_CHAR_LIMIT) {
+                        write('\\');
+                        write('u');
+                        write('0');
+                        write('0');
+                        write(HEX[c >> NIBBLE_SHIFT]);
+                        write(HEX[c & LOW_NIBBLE]);
+                    } else {
+                        i = writeChar(value, i);
+                    }
+            }
+            i++;
+        }
+        write('"');
+    }
+
+    /**
+     * Writes a string that is already valid JSON.
+     *
+     * @param value the string
+     */
+    private void writeRaw(String value) {
+        int i = 0;
+        while (i < value.length()) {
+            i = writeChar(value, i) + 1;
+        }
+    }
+
+    /**
+     * Writes a string that only contains ASCII characters.
+     *
+     * @param value the string
+     */
+    private void writeAscii(String value) {
+        ensureCapacity(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            buffer[count++] = (byte)value.charAt(i);
+        }
+    }
+
+    /**
+     * Writes a character as UTF-8.
+     *
+     * @param value the string
+     * @param index the index of the character
+     * @return the index of the last character written, which is the next one for a surrogate pair
+     */
+    private int writeChar(String value, int index) {
+        char c = value.charAt(index);
+        ensureCapacity(MAX_UTF8_BYTES);
+        if (c < ONE_BYTE_LIMIT) {
+            buffer[count++] = (byte)c;
+        } else if (c < TWO_BYTE_LIMIT) {
+            buffer[count++] = (byte)(TWO_BYTE_LEAD | (c >> SHIFT_ONE));
+            buffer[count++] = (byte)(CONTINUATION | (c & SIX_BITS));
+        } else if (Character.isHighSurrogate(c) && index + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(index + 1))) {
+            int codePoint = Character.toCodePoint(c, value.charAt(index + 1));
+            buffer[count++] = (byte)(FOUR_BYTE_LEAD | (codePoint >> SHIFT_THREE));
+            buffer[count++] = (byte)(CONTINUATION | ((codePoint >> SHIFT_TWO) & SIX_BITS));
+            buffer[count++] = (byte)(CONTINUATION | ((codePoint >> SHIFT_ONE) & SIX_BITS));
+            buffer[count++] = (byte)(CONTINUATION | (codePoint & SIX_BITS));
+            return index + 1;
+        } else if (Character.isSurrogate(c)) {
+            // Unpaired surrogate, replaced just like String.getBytes does.
+            buffer[count++] = '?';
+        } else {
+            buffer[count++] = (byte)(THREE_BYTE_LEAD | (c >> SHIFT_TWO));
+            buffer[count++] = (byte)(CONTINUATION | ((c >> SHIFT_ONE) & SIX_BITS));
+            buffer[count++] = (byte)(CONTINUATION | (c & SIX_BITS));
+        }
+        return index;
+    }
+
+    /**
+     * Writes a long in decimal without creating a string.
+     *
+     * @param value the value
+     */
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            write(MIN_LONG);
+            return;
+        }
+        ensureCapacity(MAX_LONG_DIGITS);
+        long remaining = value;
+        if (remaining < 0) {
+            buffer[count++] = '-';
+            remaining = -remaining;
+        }
+        int start = count;
+        do {
+            buffer[count++] = (byte)('0' + (remaining % RADIX));
+            remaining /= RADIX;
+        } while (remaining > 0);
+        // The digits were written backwards.
+        int end = count - 1;
+        while (start < end) {
+            byte digit = buffer[start];
+            buffer[start++] = buffer[end];
+            buffer[end--] = digit;
+        }
+    }
+
+    /**
+     * Writes a single ASCII character.
+     *
+     * @param c the character
+     */
+    private void write(int c) {
+        ensureCapacity(1);
+        buffer[count++] = (byte)c;
+    }
+
+    /**
+     * Writes bytes.
+     *
+     * @param bytes the bytes
+     */
+    private void write(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    /**
+     * Grows the buffer if needed.
+     *
+     * @param extra the number of bytes about to be written
+     */
+    private void ensureCapacity(int extra) {
+        if (count + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + extra));
+        }
+    }
+}
@@ -24,30 +24,42 @@
 package com.sonymobile.jenkins.plugins.mq.mqnotifier;
 
 import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Address;
 import com.rabbitmq.client.AlreadyClosedException;
 import com.rabbitmq.client.Channel;
-import com.rabbitmq.client.ConfirmCallback;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConnectionFactory;
 import com.rabbitmq.client.ShutdownListener;
 import com.rabbitmq.client.ShutdownSignalException;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.encoders.JsonMessageEncoder;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.encoders.MQMessageEncoder;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.transports.MQTransport;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.transports.NdjsonSegmentWriter;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.transports.TransportChannel;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.transports.TransportListener;
 import hudson.util.Secret;
+import jenkins.util.Timer;
 import net.sf.json.JSONObject;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
-import java.nio.charset.StandardCharsets;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
-import java.util.Calendar;
-import java.util.concurrent.ConcurrentNavigableMap;
-import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Creates an MQ connection.
@@ -56,26 +68,95 @@ import java.util.concurrent.TimeoutException;
  */
 public final class MQConnection implements ShutdownListener {
     private static final Logger LOGGER = LoggerFactory.getLogger(MQConnection.class);
-    private static final int CONNECTION_WAIT = 10000;
     private static final int HEARTBEAT_INTERVAL = 30;
-    private static final int MESSAGE_QUEUE_SIZE = 100000;
-    private static final int SENDMESSAGE_TIMEOUT = 100;
+    private static final int JOURNAL_COMPACT_INTERVAL = 60;
+    private static final int BLOB_CLEANUP_INTERVAL = 3600;
+    /* Seconds to let retired publishers of a removed destination wait for their confirms. */
+    private static final int CLOSE_DELAY = 30;
+    /** The default maximum number of messages published back-to-back. */
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    /** The default maximum number of published messages waiting for a confirm. */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 10000;
+    /** The default number of publishers, each with its own channel and thread. */
+    public static final int DEFAULT_PUBLISHER_COUNT = 1;
+    /** The default number of messages that can be queued, shared by all publishers. */
+    public static final int DEFAULT_QUEUE_CAPACITY = 100000;
+    /** The default time to block the caller when the overflow policy is {@link OverflowPolicy#BLOCK}. */
+    public static final long DEFAULT_OVERFLOW_BLOCK_MILLIS = 1000;
+    /** The default maximum number of bytes of message bodies held in memory, shared by all publishers. */
+    public static final long DEFAULT_MAX_QUEUED_BYTES = 128L * 1024 * 1024;
+    /** The default size in bytes from which a message body is compressed. */
+    public static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
 
+    /* The name of an additional destination, null for the primary connection. */
+    private final String destinationName;
+    private final ConnectionFactory connectionFactory = new ConnectionFactory();
     private String userName;
     private Secret userPassword;
     private String serverUri;
     private String virtualHost;
+    /* The nodes of the broker cluster to connect to, the host of the server URI if empty. */
+    private volatile List<Address> brokerAddresses = Collections.emptyList();
+    private volatile boolean shuffleBrokerAddresses = true;
+    private volatile boolean preferLowestLatency = false;
+    private volatile BrokerAddresses addressResolver = null;
+    private volatile boolean declareExchange;
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+    private volatile long batchLingerMillis = 0;
+    private volatile int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private volatile int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+    private volatile long overflowBlockMillis = DEFAULT_OVERFLOW_BLOCK_MILLIS;
+    private volatile File spillDirectory = null;
+    /* The spill files left behind by a previous run, until they are replayed. */
+    private File[] staleSpillFiles = null;
+    private volatile long maxQueuedBytes = DEFAULT_MAX_QUEUED_BYTES;
+    /* Bytes of message bodies that are queued, waiting to be resent or waiting for a confirm. */
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private volatile boolean compactSuperseded = false;
+    private final AtomicLong compactedCount = new AtomicLong();
+    /* Incremented whenever the configuration of the envelope changes, so that it is rebuilt. */
+    private final AtomicLong envelopeGeneration = new AtomicLong();
+    private volatile MessageEnvelope envelope = null;
+    /* The priority lane of messages by the value of their state, other messages are of normal priority. */
+    private volatile Map<String, MessagePriority> statePriorities = Collections.emptyMap();
+    /* The number of dropped messages, indexed by the overflow policy that dropped them. */
+    private final AtomicLongArray droppedCounts = new AtomicLongArray(OverflowPolicy.values().length);
+    /* The number of messages dropped because they could not be published, e.g. to a missing exchange. */
+    private final AtomicLong undeliverableCount = new AtomicLong();
     private Connection connection = null;
 
-    private volatile LinkedBlockingQueue messageQueue = new LinkedBlockingQueue(MESSAGE_QUEUE_SIZE);
-    private volatile ConcurrentNavigableMap<Long, MessageData> outstandingConfirms = new ConcurrentSkipListMap<>();
-    private Thread messageQueueThread;
+    /* Journal of unconfirmed messages that survives a restart, null if disabled. */
+    private volatile MessageJournal journal = null;
+    private ScheduledFuture<?> journalCompaction = null;
 
+    /* Store of message bodies published as claim-check references, null if disabled. */
+    private volatile BlobStore blobStore = null;
+    private volatile int claimCheckThreshold = 0;
+    private ScheduledFuture<?> blobCleanup = null;
+
+    private volatile MQMessageEncoder messageEncoder = MQMessageEncoder.getDefault();
+    private volatile MQTransport transport = MQTransport.getDefault();
+    private volatile EventArchive archive = null;
+    /* The additional destinations that every message is also published to. */
+    private volatile MQConnection[] destinations = new MQConnection[0];
+    /* The exchange and routing key of an additional destination, the routing key of the message if null. */
+    private volatile String destinationExchange = null;
+    private volatile String destinationRoutingKey = null;
+    private volatile boolean closed = false;
+    private volatile Compression compression = Compression.NONE;
+    private volatile int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+    /* Bytes of the message bodies that were compressed, before and after compression. */
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+
+    /* The publishers, messages are partitioned between them by partition key. */
+    private volatile ChannelPublisher[] publishers = createPublishers(DEFAULT_PUBLISHER_COUNT, DEFAULT_QUEUE_CAPACITY);
 
     /**
      * Throw on exceptions when creating a channel
      */
-    private static class ChannelCreationException extends IOException {
+    static class ChannelCreationException extends IOException {
 
         public ChannelCreationException(String errorMessage) {
             super(errorMessage);
@@ -89,7 +170,7 @@ public final class MQConnection implements ShutdownListener {
     /**
      * Exception indicating an error delivering a message to MQ
      */
-    private static class MessageDeliveryException extends IOException {
+    static class MessageDeliveryException extends IOException {
         public MessageDeliveryException(String errorMessage, Throwable cause) {
             super(errorMessage, cause);
         }
@@ -98,14 +179,24 @@ public final class MQConnection implements ShutdownListener {
     /**
      * Lazy-loaded singleton using the initialization-on-demand holder pattern.
      */
-    private MQConnection() { }
+    private MQConnection() {
+        this(null);
+    }
+
+    /**
+     * Constructor for an additional destination.
+     *
+     * @param name the name of the destination, or null for the primary connection
+     */
+    MQConnection(String name) {
+        this.destinationName = name;
+    }
 
     /**
      * Is only executed on {@link #getInstance()} invocation.
      */
     private static class LazyRabbit {
         private static final MQConnection INSTANCE = new MQConnection();
-        private static final ConnectionFactory CF = new ConnectionFactory();
     }
 
     /**
@@ -118,64 +209,12 @@ public final class MQConnection implements ShutdownListener {
     }
 
     /**
-     * Stores data for a RabbitMQ message.
-     */
-    private static final class MessageData {
-        private String exchange;
-        private String routingKey;
-        private AMQP.BasicProperties props;
-        private byte[] body;
-
-        /**
-         * Constructor.
-         *
-         * @param exchange the exchange to publish the message to
-         * @param routingKey the routing key
-         * @param props other properties for the message - routing headers etc
-         * @param body the message body
-         */
-        private MessageData(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body) {
-            this.exchange = exchange;
-            this.routingKey = routingKey;
-            this.props = props;
-            this.body = body;
-        }
-
-        /**
-         * Gets the exchange name.
-         *
-         * @return the exchange name
-         */
-        private String getExchange() {
-            return exchange;
-        }
-
-        /**
-         * Gets the routing key.
-         *
-         * @return the routing key
-         */
-        private String getRoutingKey() {
-            return routingKey;
-        }
-
-        /**
-         * Gets the connection properties.
-         *
-         * @return the connection properties
-         */
-        private AMQP.BasicProperties getProps() {
-            return props;
-        }
-
-        /**
-         * Gets the message body.
-         *
-         * @return the message body
-         */
-        private byte[] getBody() {
-            return body;
-        }
+     * Gets the name of the destination.
+     *
+     * @return the name of an additional destination, or null for the primary connection
+     */
+    public String getName() {
+        return destinationName;
     }
 
     /**
@@ -184,14 +223,186 @@ public final class MQConnection implements ShutdownListener {
      * @return the number of currently outstanding confirms
      */
     public int getSizeOutstandingConfirms() {
-        return outstandingConfirms.size();
+        int size = 0;
+        for (ChannelPublisher publisher : publishers) {
+            size += publisher.getSizeOutstandingConfirms();
+        }
+        return size;
     }
 
     /**
      * Clear the outstanding confirms list, useful when testing.
      */
     public void clearOutstandingConfirms() {
-        outstandingConfirms.clear();
+        for (ChannelPublisher publisher : publishers) {
+            publisher.clearOutstandingConfirms();
+        }
+    }
+
+    /**
+     * Get the number of published messages that are waiting for a confirm, summed over all publishers.
+     *
+     * @return the number of messages in the confirm windows
+     */
+    public int getInFlightCount() {
+        int count = 0;
+        for (ChannelPublisher publisher : publishers) {
+            count += publisher.getInFlightCount();
+        }
+        return count;
+    }
+
+    /**
+     * Get the maximum number of messages that may wait for a confirm on one channel before publishing is paused.
+     *
+     * @return the size of the confirm window, 0 if unbounded
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Get the number of publishers, each with its own channel and thread.
+     *
+     * @return the number of publishers
+     */
+    public int getPublisherCount() {
+        return publishers.length;
+    }
+
+    /**
+     * Get the number of messages that can be queued, shared by all publishers.
+     *
+     * @return the queue capacity
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Get what is done with a message when the queue of its publisher is full.
+     *
+     * @return the overflow policy
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Get the number of messages dropped because the queue was full.
+     *
+     * @param policy the overflow policy that dropped the messages
+     * @return the number of dropped messages
+     */
+    public long getDroppedCount(OverflowPolicy policy) {
+        return droppedCounts.get(policy.ordinal());
+    }
+
+    /**
+     * Get the number of messages dropped because they could not be published, e.g. to a missing exchange.
+     *
+     * @return the number of undeliverable messages
+     */
+    public long getUndeliverableCount() {
+        return undeliverableCount.get();
+    }
+
+    /**
+     * Get the number of messages waiting in a priority lane, summed over all publishers.
+     *
+     * @param priority the priority of the lane
+     * @return the depth of the lane
+     */
+    public int getLaneDepth(MessagePriority priority) {
+        int depth = 0;
+        for (ChannelPublisher publisher : publishers) {
+            depth += publisher.getQueueSize(priority);
+        }
+        return depth;
+    }
+
+    /**
+     * Get the number of bytes of message bodies held in memory, from when they are queued until they are confirmed.
+     *
+     * @return the number of queued bytes
+     */
+    public long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    /**
+     * Get the bytes of the message bodies that are published and waiting for a confirm, summed over all publishers.
+     *
+     * @return the bytes in the confirm windows
+     */
+    public long getInFlightBytes() {
+        long bytes = 0;
+        for (ChannelPublisher publisher : publishers) {
+            bytes += publisher.getInFlightBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Get the maximum number of bytes of message bodies held in memory before the overflow policy applies.
+     *
+     * @return the byte budget, 0 if unbounded
+     */
+    public long getMaxQueuedBytes() {
+        return maxQueuedBytes;
+    }
+
+    /**
+     * Get the number of queued messages that were not published because a newer message superseded them.
+     *
+     * @return the number of compacted messages
+     */
+    public long getCompactedCount() {
+        return compactedCount.get();
+    }
+
+    /**
+     * Get the compression ratio of the compressed message bodies, uncompressed size by compressed size.
+     *
+     * @return the compression ratio, 1 if no message has been compressed
+     */
+    public double getCompressionRatio() {
+        long compressed = compressedBytes.get();
+        if (compressed == 0) {
+            return 1;
+        }
+        return (double)uncompressedBytes.get() / compressed;
+    }
+
+    /**
+     * Get the number of bytes of the message bodies that were compressed, before compression.
+     *
+     * @return the number of uncompressed bytes
+     */
+    public long getUncompressedBytes() {
+        return uncompressedBytes.get();
+    }
+
+    /**
+     * Get the number of bytes of the message bodies that were compressed, after compression.
+     *
+     * @return the number of compressed bytes
+     */
+    public long getCompressedBytes() {
+        return compressedBytes.get();
+    }
+
+    /**
+     * Get the number of messages that overflowed the queue and are kept on disk, summed over all publishers.
+     *
+     * @return the number of spilled messages
+     */
+    public int getSpillSize() {
+        int size = 0;
+        for (ChannelPublisher publisher : publishers) {
+            size += publisher.getSpillSize();
+        }
+        return size;
     }
 
     /**
@@ -203,100 +414,345 @@ public final class MQConnection implements ShutdownListener {
      * @param body the message body
      */
     public void addMessageToQueue(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body) {
-        // If addMessageToQueue is called from multiple threads, make sure only one thread is started.
-        synchronized (this) {
-            if (messageQueueThread == null || !messageQueueThread.isAlive()) {
-                messageQueueThread = new Thread(() -> sendMessages());
-                messageQueueThread.start();
-                LOGGER.info("messageQueueThread recreated since it was null or not alive.");
+        addMessageToQueue(exchange, routingKey, props, body, null);
+    }
+
+    /**
+     * Puts a message in the message queue of the publisher for the partition key.
+     * Messages with the same partition key are published in order.
+     *
+     * @param exchange the exchange to publish the message to
+     * @param routingKey the routing key
+     * @param props other properties for the message - routing headers etc
+     * @param body the message body
+     * @param partitionKey the partition key, the routing key is used if null
+     */
+    public void addMessageToQueue(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body,
+                                  String partitionKey) {
+        addMessageToQueue(exchange, routingKey, props, body, partitionKey, MessagePriority.NORMAL);
+    }
+
+    /**
+     * Puts a message in the given priority lane of the message queue of the publisher for the partition key.
+     * Messages with the same partition key and priority are published in order.
+     *
+     * @param exchange the exchange to publish the message to
+     * @param routingKey the routing key
+     * @param props other properties for the message - routing headers etc
+     * @param body the message body
+     * @param partitionKey the partition key, the routing key is used if null
+     * @param priority the priority lane
+     */
+    public void addMessageToQueue(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body,
+                                  String partitionKey, MessagePriority priority) {
+        addMessageToQueue(exchange, routingKey, props, body, partitionKey, priority, null);
+    }
+
+    /**
+     * Puts a message in the given priority lane of the message queue of the publisher for the partition key.
+     * If compaction is enabled, a queued message with the same compaction key that is not yet published
+     * is superseded by this one.
+     *
+     * @param exchange the exchange to publish the message to
+     * @param routingKey the routing key
+     * @param props other properties for the message - routing headers etc
+     * @param body the message body
+     * @param partitionKey the partition key, the routing key is used if null
+     * @param priority the priority lane
+     * @param compactionKey the key of the entity whose state the message describes, or null
+     */
+    public void addMessageToQueue(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body,
+                                  String partitionKey, MessagePriority priority, String compactionKey) {
+        MessageData messageData = new MessageData(exchange, routingKey, props, body, partitionKey, priority,
+                compactionKey);
+        MessageJournal currentJournal = journal;
+        if (currentJournal != null) {
+            try {
+                currentJournal.append(messageData);
+            } catch (IOException e) {
+                LOGGER.warn("Could not append message to the journal: ", e);
             }
         }
-        MessageData messageData = new MessageData(exchange, routingKey, props, body);
-        if (!messageQueue.offer(messageData)) {
-            LOGGER.error("addMessageToQueue() failed, internal RabbitMQ queue is full!");
+        EventArchive currentArchive = archive;
+        if (currentArchive != null) {
+            currentArchive.offer(messageData);
+        }
+        requeue(messageData);
+        // The encoded body and properties are shared, each destination only queues its own reference.
+        for (MQConnection destination : destinations) {
+            String destinationKey = destination.destinationRoutingKey;
+            destination.addMessageToQueue(destination.destinationExchange,
+                    destinationKey != null ? destinationKey : routingKey, props, body, partitionKey, priority,
+                    compactionKey);
         }
     }
 
     /**
-     * Publish json message on configured MQ server.
+     * Called when the broker has confirmed a message, or when a message is dropped,
+     * so it is not published again after a restart.
      *
-     * @param json the message in json format
+     * @param messageData the message
      */
-    public void publish(JSONObject json) {
-        MQNotifierConfig config = MQNotifierConfig.getInstance();
-        if (config != null && config.isNotifierEnabled()) {
-            AMQP.BasicProperties.Builder bob = new AMQP.BasicProperties.Builder();
-            int dm = 1;
-            if (config.getPersistentDelivery()) {
-                dm = 2;
+    void messageConfirmed(MessageData messageData) {
+        releaseBytes(messageData);
+        MessageJournal currentJournal = journal;
+        if (currentJournal != null) {
+            currentJournal.markDone(messageData);
+        }
+    }
+
+    /**
+     * Counts the body of a message in the queued bytes if it fits in the byte budget.
+     * A message that is already counted always fits, and so does any message when nothing else is queued.
+     *
+     * @param messageData the message
+     * @return true if the message is counted, false if the byte budget is exhausted
+     */
+    boolean tryChargeBytes(MessageData messageData) {
+        if (messageData.isCharged()) {
+            return true;
+        }
+        long size = messageData.getBody().length;
+        long max = maxQueuedBytes;
+        while (true) {
+            long current = queuedBytes.get();
+            if (max > 0 && current > 0 && current + size > max) {
+                return false;
+            }
+            if (queuedBytes.compareAndSet(current, current + size)) {
+                messageData.setCharged();
+                return true;
             }
-            bob.appId(config.getAppId());
-            bob.deliveryMode(dm);
-            bob.contentType(Util.CONTENT_TYPE);
-            bob.timestamp(Calendar.getInstance().getTime());
+        }
+    }
 
-            addMessageToQueue(config.getExchangeName(), config.getRoutingKey(),
-                    bob.build(), json.toString().getBytes(StandardCharsets.UTF_8));
+    /**
+     * Counts the body of a message in the queued bytes regardless of the byte budget,
+     * e.g. when it is read back from disk to be published.
+     *
+     * @param messageData the message
+     */
+    void chargeBytes(MessageData messageData) {
+        if (!messageData.isCharged()) {
+            queuedBytes.addAndGet(messageData.getBody().length);
+            messageData.setCharged();
         }
     }
 
     /**
-     * Sends messages from the message queue.
+     * Stops counting the body of a message in the queued bytes.
+     *
+     * @param messageData the message
      */
-    private void sendMessages() {
-        Channel channel = null;
+    void releaseBytes(MessageData messageData) {
+        if (messageData.takeCharged()) {
+            queuedBytes.addAndGet(-messageData.getBody().length);
+        }
+    }
 
-        while (true) {
-            try {
-                if (channel == null || !channel.isOpen()) {
-                    channel = createChannel();
-                    channel.confirmSelect();
-                    addMessageConfirmListener(channel);
-                }
-                MessageData messageData = (MessageData)messageQueue.poll(SENDMESSAGE_TIMEOUT,
-                                                                         TimeUnit.MILLISECONDS);
-                if (messageData != null) {
-                    validateExchange(channel, messageData.getExchange());
-                    getInstance().sendOnChannel(messageData, channel);
-                }
-            } catch (InterruptedException ie) {
-                LOGGER.info("sendMessages() poll() was interrupted: ", ie);
-            } catch (ChannelCreationException | MessageDeliveryException transientException) {
-                LOGGER.error(transientException.getMessage(), transientException.getCause());
-                try {
-                    Thread.sleep(CONNECTION_WAIT);
-                } catch (InterruptedException ie) {
-                    LOGGER.error("Thread.sleep() was interrupted", ie);
+    /**
+     * Called when a queued message is not published because a newer message superseded it.
+     *
+     * @param messageData the message
+     */
+    void messageCompacted(MessageData messageData) {
+        compactedCount.incrementAndGet();
+        messageConfirmed(messageData);
+    }
+
+    /**
+     * Called when a message is dropped because the queue was full.
+     *
+     * @param messageData the message
+     * @param policy the overflow policy that dropped the message
+     */
+    void messageDropped(MessageData messageData, OverflowPolicy policy) {
+        droppedCounts.incrementAndGet(policy.ordinal());
+        LOGGER.error("addMessageToQueue() failed, internal RabbitMQ queue is full! Overflow policy: " + policy);
+        messageConfirmed(messageData);
+    }
+
+    /**
+     * Called when a message is dropped because it cannot be published, e.g. because its exchange is missing.
+     * It is done with, so that it no longer counts in the byte budget and is not replayed from the journal.
+     *
+     * @param messageData the message
+     * @param cause why the message cannot be published
+     */
+    void messageUndeliverable(MessageData messageData, Exception cause) {
+        undeliverableCount.incrementAndGet();
+        LOGGER.warn("Dropping message to exchange " + messageData.getExchange() + ": " + cause.getMessage());
+        messageConfirmed(messageData);
+    }
+
+    /**
+     * Puts a message in the message queue of the publisher for its partition key.
+     * If it cannot be queued, it is dropped according to the overflow policy.
+     *
+     * @param messageData the message
+     */
+    void requeue(MessageData messageData) {
+        if (closed) {
+            messageDropped(messageData, overflowPolicy);
+            return;
+        }
+        ChannelPublisher[] current = publishers;
+        String key = messageData.getPartitionKey();
+        if (key == null) {
+            key = messageData.getRoutingKey();
+        }
+        int partition = 0;
+        if (key != null && current.length > 1) {
+            partition = Math.floorMod(key.hashCode(), current.length);
+        }
+        if (!current[partition].offer(messageData)) {
+            messageDropped(messageData, overflowPolicy);
+        }
+    }
+
+    /**
+     * Publish json message on configured MQ server.
+     *
+     * @param json the message in json format
+     */
+    public void publish(JSONObject json) {
+        publish(json, null);
+    }
+
+    /**
+     * Publish json message on configured MQ server.
+     * If compaction is enabled, the message supersedes unpublished messages with the same compaction key.
+     *
+     * @param json the message in json format
+     * @param compactionKey the key of the entity whose state the message describes, or null
+     */
+    public void publish(JSONObject json, String compactionKey) {
+        publish(json, null, compactionKey);
+    }
+
+    /**
+     * Publish json message on configured MQ server, using the message already encoded with {@link JsonEncoder},
+     * e.g. because it was logged, so that it is only serialized once. The body is only used if the selected
+     * {@link MQMessageEncoder} encodes JSON, otherwise the message is encoded with the selected encoder.
+     *
+     * @param json the message in json format
+     * @param body the JSON encoded message, or null to encode it here
+     * @param compactionKey the key of the entity whose state the message describes, or null
+     */
+    public void publish(JSONObject json, byte[] body, String compactionKey) {
+        MQMessageEncoder encoder = messageEncoder;
+        MessageEnvelope env = getEnvelope();
+        if (env.isEnabled()) {
+            MessagePriority priority = statePriorities.get(json.optString(Util.KEY_STATE, ""));
+            byte[] encoded = body != null && encoder instanceof JsonMessageEncoder ? body : encoder.encode(json);
+            int threshold = claimCheckThreshold;
+            if (threshold > 0 && encoded.length > threshold) {
+                encoded = claimCheck(json, encoded, encoder);
+            }
+            String contentEncoding = null;
+            Compression codec = compression;
+            if (codec != Compression.NONE && encoded.length >= compressionThreshold) {
+                byte[] compressed = codec.compress(encoded);
+                // Messages that do not get smaller, e.g. short ones, are sent as they are.
+                if (compressed.length < encoded.length) {
+                    uncompressedBytes.addAndGet(encoded.length);
+                    compressedBytes.addAndGet(compressed.length);
+                    encoded = compressed;
+                    contentEncoding = codec.getContentEncoding();
                 }
-            } catch (IOException | IllegalArgumentException ioe) {
-                LOGGER.error("error validating channel: ", ioe);
             }
+            addMessageToQueue(env.getExchange(), env.getRoutingKey(),
+                    env.getProperties(contentEncoding), encoded,
+                    json.optString(Util.KEY_PROJECT_NAME, null),
+                    priority != null ? priority : MessagePriority.NORMAL, compactionKey);
         }
     }
 
+    /**
+     * Stores a message body that is too large to publish and replaces it with a reference to it.
+     * The reference keeps the state and the job name of the message, so that consumers can still filter on them.
+     *
+     * @param json the message
+     * @param body the encoded message
+     * @param encoder the encoder to encode the reference with
+     * @return the encoded reference, or the body if it could not be stored
+     */
+    private byte[] claimCheck(JSONObject json, byte[] body, MQMessageEncoder encoder) {
+        BlobStore store = blobStore;
+        String rootUrl = Util.getRootUrl();
+        if (store == null || rootUrl == null) {
+            return body;
+        }
+        String digest;
+        try {
+            digest = store.put(body, encoder.getContentType(), json.optString(Util.KEY_PROJECT_NAME, null));
+        } catch (IOException e) {
+            LOGGER.warn("Could not store a large message body, publishing it as is: ", e);
+            return body;
+        }
+        JSONObject reference = new JSONObject();
+        reference.put(Util.KEY_URL, rootUrl + BlobAction.URL_NAME + "/" + digest);
+        reference.put(Util.KEY_DIGEST, "sha256:" + digest);
+        reference.put(Util.KEY_SIZE, body.length);
+        JSONObject claim = new JSONObject();
+        if (json.has(Util.KEY_STATE)) {
+            claim.put(Util.KEY_STATE, json.get(Util.KEY_STATE));
+        }
+        if (json.has(Util.KEY_PROJECT_NAME)) {
+            claim.put(Util.KEY_PROJECT_NAME, json.get(Util.KEY_PROJECT_NAME));
+        }
+        claim.put(Util.KEY_CLAIM_CHECK, reference);
+        return encoder.encode(claim);
+    }
 
     /**
-     * Validate the exchange.
+     * Gets the envelope of published messages, rebuilding it from the configuration if it has changed.
      *
-     * @param channel a channel that must contain the given exchange
-     * @param exchange the exchange to validate
+     * @return the envelope
+     */
+    private MessageEnvelope getEnvelope() {
+        long generation = envelopeGeneration.get();
+        MessageEnvelope env = envelope;
+        if (env == null || env.getGeneration() != generation) {
+            env = new MessageEnvelope(MQNotifierConfig.getInstance(), generation, messageEncoder.getContentType());
+            envelope = env;
+        }
+        return env;
+    }
+
+    /**
+     * Makes the next published message rebuild the envelope, called when the configuration has changed.
+     * The configuration must be changed before this is called.
+     */
+    void invalidateEnvelope() {
+        envelopeGeneration.incrementAndGet();
+    }
+
+    /**
+     * Opens a channel on the transport for a publisher.
      *
-     * @throws IllegalArgumentException if the exchange is null
-     * @throws IOException if the exchange exists, but is invalid for the channel
+     * @param listener the listener of the publisher
+     * @return the channel
+     * @throws ChannelCreationException if the channel could not be opened
      */
-    private void validateExchange(Channel channel, String exchange) throws IOException, IllegalArgumentException {
-        if (exchange == null) {
-            throw new IllegalArgumentException("Invalid configuration, exchange must not be null.");
+    TransportChannel openChannel(TransportListener listener) throws ChannelCreationException {
+        try {
+            return transport.openChannel(this, listener);
+        } catch (ChannelCreationException e) {
+            throw e;
+        } catch (IOException | ShutdownSignalException e) {
+            throw new ChannelCreationException("Cannot open channel on the " + transport.getName() + " transport", e);
         }
-        channel.exchangeDeclarePassive(exchange);
     }
 
     /**
      * Try to create a channel using a connection.
+     * Publishers on the AMQP transport create their channels on the same connection.
      *
      * @return a Channel
+     * @throws IOException if the channel could not be created
      */
-    private Channel createChannel() throws ChannelCreationException {
+    public synchronized Channel createChannel() throws IOException {
         try {
             connection = getConnection();
             if (connection != null) {
@@ -309,62 +765,35 @@ public final class MQConnection implements ShutdownListener {
         }
     }
 
-    /**
-     * Add an async listener for ack/nack events and remove accordingly.
-     *
-     * @param channel the channel to configure a confirm listener for
-     */
-    private void addMessageConfirmListener(Channel channel) {
-        ConfirmCallback cleanOutstandingConfirms = (sequenceNumber, multiple) -> {
-            if (multiple) {
-                ConcurrentNavigableMap<Long, MessageData> confirmed = this.outstandingConfirms.headMap(
-                        sequenceNumber, true
-                );
-                confirmed.clear();
-            } else {
-                this.outstandingConfirms.remove(sequenceNumber);
-            }
-        };
-
-        // Signature is addConfirmListener(successCallback, errorCallback)
-        channel.addConfirmListener(cleanOutstandingConfirms, (sequenceNumber, multiple) -> {
-            MessageData message = outstandingConfirms.get(sequenceNumber);
-            messageQueue.offer(message);
-            cleanOutstandingConfirms.handle(sequenceNumber, multiple);
-        });
-    }
-
     /**
      * Gets the connection factory that will enable a connection to the AMQP server.
      *
      * @return the connection factory
      */
     private ConnectionFactory getConnectionFactory() {
-        if (LazyRabbit.CF != null) {
-            try {
-                // Try to recover the topology along with the connection.
-                LazyRabbit.CF.setAutomaticRecoveryEnabled(true);
-                // set requested heartbeat interval, in seconds
-                LazyRabbit.CF.setRequestedHeartbeat(HEARTBEAT_INTERVAL);
-                LazyRabbit.CF.setUri(serverUri);
-                if (StringUtils.isNotEmpty(virtualHost)) {
-                    LazyRabbit.CF.setVirtualHost(virtualHost);
-                }
-            } catch (KeyManagementException e) {
-                LOGGER.error("KeyManagementException: ", e);
-            } catch (NoSuchAlgorithmException e) {
-                LOGGER.error("NoSuchAlgorithmException: ", e);
-            } catch (URISyntaxException e) {
-                LOGGER.error("URISyntaxException: ", e);
+        try {
+            // Try to recover the topology along with the connection.
+            connectionFactory.setAutomaticRecoveryEnabled(true);
+            // set requested heartbeat interval, in seconds
+            connectionFactory.setRequestedHeartbeat(HEARTBEAT_INTERVAL);
+            connectionFactory.setUri(serverUri);
+            if (StringUtils.isNotEmpty(virtualHost)) {
+                connectionFactory.setVirtualHost(virtualHost);
             }
-            if (StringUtils.isNotEmpty(userName)) {
-                LazyRabbit.CF.setUsername(userName);
-                if (StringUtils.isNotEmpty(Secret.toString(userPassword))) {
-                    LazyRabbit.CF.setPassword(Secret.toString(userPassword));
-                }
+        } catch (KeyManagementException e) {
+            LOGGER.error("KeyManagementException: ", e);
+        } catch (NoSuchAlgorithmException e) {
+            LOGGER.error("NoSuchAlgorithmException: ", e);
+        } catch (URISyntaxException e) {
+            LOGGER.error("URISyntaxException: ", e);
+        }
+        if (StringUtils.isNotEmpty(userName)) {
+            connectionFactory.setUsername(userName);
+            if (StringUtils.isNotEmpty(Secret.toString(userPassword))) {
+                connectionFactory.setPassword(Secret.toString(userPassword));
             }
         }
-        return LazyRabbit.CF;
+        return connectionFactory;
     }
 
     /**
@@ -375,7 +804,24 @@ public final class MQConnection implements ShutdownListener {
     public Connection getConnection() {
         if (connection == null) {
             try {
-                connection = getConnectionFactory().newConnection();
+                ConnectionFactory factory = getConnectionFactory();
+                List<Address> addresses = brokerAddresses;
+                if (addresses.isEmpty()) {
+                    connection = factory.newConnection();
+                } else {
+                    // The resolver is asked again on automatic recovery, so a node that is down is skipped.
+                    BrokerAddresses resolver = addressResolver;
+                    if (resolver == null) {
+                        resolver = new BrokerAddresses(addresses, factory.getPort(), shuffleBrokerAddresses,
+                                preferLowestLatency);
+                        addressResolver = resolver;
+                    }
+                    long start = System.nanoTime();
+                    connection = factory.newConnection(resolver);
+                    resolver.connected(connection.getAddress(), connection.getPort(),
+                            System.nanoTime() - start);
+                    LOGGER.info("Connected to broker node " + connection.getAddress() + ":" + connection.getPort());
+                }
                 connection.addShutdownListener(this);
             } catch (IOException e) {
                 LOGGER.warn("Connection refused", e);
@@ -400,33 +846,587 @@ public final class MQConnection implements ShutdownListener {
         serverUri = uri;
         virtualHost = vh;
         connection = null;
+        for (ChannelPublisher publisher : publishers) {
+            publisher.invalidateExchanges();
+        }
+    }
+
+    /**
+     * Sets the nodes of the broker cluster to connect to. The scheme, credentials and virtual host
+     * of the server URI are used for every node, and the next node is tried if one cannot be reached.
+     * Takes effect on the next connection.
+     *
+     * @param addresses the nodes, or empty to connect to the host of the server URI
+     * @param shuffle if the nodes are tried in random order, to spread connections over the cluster
+     * @param lowestLatencyFirst if the nodes with the lowest measured latency are tried first
+     */
+    public synchronized void setBrokerAddresses(List<Address> addresses, boolean shuffle,
+                                                boolean lowestLatencyFirst) {
+        List<Address> updated = addresses != null ? new ArrayList<>(addresses) : new ArrayList<>();
+        if (!updated.equals(brokerAddresses) || shuffle != shuffleBrokerAddresses
+                || lowestLatencyFirst != preferLowestLatency) {
+            brokerAddresses = Collections.unmodifiableList(updated);
+            shuffleBrokerAddresses = shuffle;
+            preferLowestLatency = lowestLatencyFirst;
+            addressResolver = null;
+        }
+    }
+
+    /**
+     * Gets the latest measured latency to each node of the broker cluster.
+     *
+     * @return the latency in milliseconds by node, -1 if not measured or unreachable
+     */
+    public Map<String, Long> getBrokerLatencyMillis() {
+        BrokerAddresses resolver = addressResolver;
+        if (resolver == null) {
+            return Collections.emptyMap();
+        }
+        return resolver.getLatencyMillis();
+    }
+
+    /**
+     * Sets the maximum number of messages to publish back-to-back.
+     *
+     * @param size the batch size, values below 1 are treated as 1
+     */
+    public void setBatchSize(int size) {
+        batchSize = Math.max(1, size);
+    }
+
+    /**
+     * Sets the time to wait for more messages before publishing a batch that is not full.
+     *
+     * @param lingerMillis the linger time in milliseconds, values below 0 are treated as 0
+     */
+    public void setBatchLingerMillis(long lingerMillis) {
+        batchLingerMillis = Math.max(0, lingerMillis);
+    }
+
+    /**
+     * Sets the maximum number of messages that may wait for a confirm before publishing is paused.
+     *
+     * @param max the size of the confirm window, 0 or less for an unbounded window
+     */
+    public void setMaxInFlight(int max) {
+        maxInFlight = Math.max(0, max);
+        for (ChannelPublisher publisher : publishers) {
+            publisher.wakeUp();
+        }
     }
 
     /**
-     * Sends a message.
-     * Keeps trying to get a connection indefinitely.
+     * Sets whether missing exchanges should be declared instead of only validated.
      *
-     * @param messageData an object containing message data
-     * @param channel a channel to publish the message on
+     * @param declare true if missing exchanges should be declared
      */
-    private void sendOnChannel(MessageData messageData, Channel channel) throws MessageDeliveryException {
+    public void setDeclareExchange(boolean declare) {
+        if (declareExchange != declare) {
+            declareExchange = declare;
+            for (ChannelPublisher publisher : publishers) {
+                publisher.invalidateExchanges();
+            }
+        }
+    }
+
+    /**
+     * Enables the journal of unconfirmed messages in the given directory, or disables it.
+     * When enabled, messages left in the journal by a previous run are published again.
+     *
+     * @param directory the journal directory, or null to disable the journal
+     */
+    public synchronized void setJournalDirectory(File directory) {
+        if (journal != null) {
+            if (journal.getDirectory().equals(directory)) {
+                return;
+            }
+            journalCompaction.cancel(false);
+            journal.close();
+            journal = null;
+        }
+        if (directory == null) {
+            return;
+        }
+        MessageJournal newJournal = new MessageJournal(directory, MessageJournal.SEGMENT_SIZE);
+        List<MessageData> replay;
         try {
-            outstandingConfirms.put(channel.getNextPublishSeqNo(), messageData);
-            channel.basicPublish(
-                    messageData.getExchange(),
-                    messageData.getRoutingKey(),
-                    messageData.getProps(),
-                    messageData.getBody()
-            );
+            replay = newJournal.open();
         } catch (IOException e) {
-            messageQueue.offer(messageData);
-            throw new MessageDeliveryException("Cannot publish message", e);
-        } catch (AlreadyClosedException e) {
-            messageQueue.offer(messageData);
-            throw new MessageDeliveryException("Connection is already closed", e);
+            LOGGER.error("Could not open the journal, continuing without it: ", e);
+            return;
+        }
+        journal = newJournal;
+        journalCompaction = Timer.get().scheduleWithFixedDelay(newJournal::compact,
+                JOURNAL_COMPACT_INTERVAL, JOURNAL_COMPACT_INTERVAL, TimeUnit.SECONDS);
+        for (MessageData messageData : replay) {
+            requeue(messageData);
+        }
+    }
+
+    /**
+     * Enables publishing message bodies over a size threshold as claim-check references, or disables it.
+     * The bodies are kept in a store in the given directory and served by {@link BlobAction}.
+     *
+     * The store is only cleaned up while claim checks are enabled. Bodies stored before they were disabled
+     * are still served until the next restart.
+     *
+     * @param directory the store directory, or null to disable claim checks
+     * @param threshold the size in bytes above which a body is stored, 0 or less to disable claim checks
+     * @param retentionMillis how long a stored body is kept
+     */
+    public synchronized void setClaimCheck(File directory, int threshold, long retentionMillis) {
+        if (blobCleanup != null) {
+            blobCleanup.cancel(false);
+            blobCleanup = null;
+        }
+        if (directory == null || threshold <= 0) {
+            claimCheckThreshold = 0;
+            return;
+        }
+        BlobStore store = blobStore;
+        if (store == null || !store.getDirectory().equals(directory)) {
+            store = new BlobStore(directory);
+            blobStore = store;
+        }
+        BlobStore cleaned = store;
+        blobCleanup = Timer.get().scheduleWithFixedDelay(() -> cleaned.deleteOlderThan(retentionMillis),
+                0, BLOB_CLEANUP_INTERVAL, TimeUnit.SECONDS);
+        claimCheckThreshold = threshold;
+    }
+
+    /**
+     * Sets the directory that every queued message is archived to as NDJSON, independently of the transport.
+     * Closed segments are compressed in the background.
+     *
+     * @param directory the archive directory, or null to disable the archive
+     * @param maxBytes the size to rotate a segment at, 0 to not rotate by size
+     * @param maxAgeMillis the age to rotate a segment at, 0 to not rotate by age
+     * @param compress if closed segments are gzip compressed
+     */
+    public synchronized void setArchive(File directory, long maxBytes, long maxAgeMillis, boolean compress) {
+        EventArchive current = archive;
+        if (current != null) {
+            NdjsonSegmentWriter writer = current.getWriter();
+            if (writer.getDirectory().equals(directory) && writer.getMaxBytes() == maxBytes
+                    && writer.getMaxAgeMillis() == maxAgeMillis && writer.isCompressing() == compress) {
+                return;
+            }
+            archive = null;
+            current.close();
+        }
+        if (directory != null) {
+            NdjsonSegmentWriter writer = new NdjsonSegmentWriter(directory, maxBytes, maxAgeMillis,
+                    compress ? Timer.get() : null);
+            if (compress) {
+                Timer.get().execute(writer::compressClosedSegments);
+            }
+            archive = new EventArchive(writer, EventArchive.DEFAULT_CAPACITY);
         }
     }
 
+    /**
+     * Gets the number of messages written to the archive.
+     *
+     * @return the number of messages, 0 if the archive is disabled
+     */
+    public long getArchivedCount() {
+        EventArchive current = archive;
+        return current != null ? current.getWrittenCount() : 0;
+    }
+
+    /**
+     * Gets the number of messages that were not archived because the archive could not keep up.
+     *
+     * @return the number of messages, 0 if the archive is disabled
+     */
+    public long getArchiveDroppedCount() {
+        EventArchive current = archive;
+        return current != null ? current.getDroppedCount() : 0;
+    }
+
+    /**
+     * Sets the additional destinations that every message is also published to.
+     * Destinations are matched by name, a destination that is kept keeps its queued messages,
+     * and a destination that is removed is closed. The batching and confirm settings of this connection
+     * are used for all destinations.
+     *
+     * @param configs the destinations
+     */
+    public synchronized void setDestinations(List<MQDestination> configs) {
+        Map<String, MQConnection> current = new LinkedHashMap<>();
+        for (MQConnection destination : destinations) {
+            current.put(destination.getName(), destination);
+        }
+        List<MQConnection> updated = new ArrayList<>();
+        if (configs != null) {
+            for (MQDestination config : configs) {
+                if (config == null || StringUtils.isBlank(config.getName())
+                        || StringUtils.isBlank(config.getExchangeName())) {
+                    LOGGER.warn("Ignoring destination without a name or exchange");
+                    continue;
+                }
+                MQConnection destination = current.remove(config.getName());
+                if (destination == null) {
+                    destination = new MQConnection(config.getName());
+                }
+                configureDestination(destination, config);
+                updated.add(destination);
+            }
+        }
+        destinations = updated.toArray(new MQConnection[0]);
+        for (MQConnection removed : current.values()) {
+            removed.close();
+        }
+    }
+
+    /**
+     * Applies the configuration of a destination, and the batching and confirm settings of this connection.
+     *
+     * @param destination the destination
+     * @param config the configuration of the destination
+     */
+    private void configureDestination(MQConnection destination, MQDestination config) {
+        if (!StringUtils.equals(destination.serverUri, config.getServerUri())
+                || !StringUtils.equals(destination.userName, config.getUserName())
+                || !StringUtils.equals(Secret.toString(destination.userPassword),
+                        Secret.toString(config.getUserPassword()))
+                || !StringUtils.equals(destination.virtualHost, config.getVirtualHost())) {
+            destination.closeConnection();
+            destination.initialize(config.getUserName(), config.getUserPassword(), config.getServerUri(),
+                    config.getVirtualHost());
+        }
+        destination.destinationExchange = config.getExchangeName();
+        destination.destinationRoutingKey = StringUtils.isBlank(config.getRoutingKey()) ? null
+                : config.getRoutingKey();
+        OverflowPolicy policy = config.getOverflowPolicy();
+        if (policy == null || policy == OverflowPolicy.BLOCK) {
+            // Blocking would hold back the caller, and with it every other destination.
+            policy = OverflowPolicy.DROP_OLDEST;
+        }
+        destination.setOverflowPolicy(policy);
+        destination.setQueueCapacity(config.getQueueCapacity() > 0 ? config.getQueueCapacity()
+                : DEFAULT_QUEUE_CAPACITY);
+        File spill = spillDirectory;
+        destination.setSpillDirectory(spill != null
+                ? new File(spill, "destination-" + config.getName().replaceAll("[^A-Za-z0-9_.-]", "_")) : null);
+        destination.setDeclareExchange(declareExchange);
+        destination.setBatchSize(batchSize);
+        destination.setBatchLingerMillis(batchLingerMillis);
+        destination.setMaxInFlight(maxInFlight);
+        destination.setMaxQueuedBytes(maxQueuedBytes);
+        destination.setCompactSuperseded(compactSuperseded);
+    }
+
+    /**
+     * Gets the additional destinations.
+     *
+     * @return the destinations, in the configured order
+     */
+    public List<MQConnection> getDestinations() {
+        List<MQConnection> list = new ArrayList<>();
+        Collections.addAll(list, destinations);
+        return list;
+    }
+
+    /**
+     * Gets an additional destination by name.
+     *
+     * @param name the name of the destination
+     * @return the destination, or null if there is no destination with the name
+     */
+    public MQConnection getDestination(String name) {
+        for (MQConnection destination : destinations) {
+            if (destination.getName().equals(name)) {
+                return destination;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Closes a removed destination. Messages that are published are confirmed first,
+     * messages still queued are dropped.
+     */
+    private synchronized void close() {
+        closed = true;
+        for (ChannelPublisher publisher : publishers) {
+            publisher.retire();
+        }
+        Timer.get().schedule(this::closeConnection, CLOSE_DELAY, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Closes the connection, if open.
+     */
+    private synchronized void closeConnection() {
+        try {
+            if (connection != null && connection.isOpen()) {
+                connection.close();
+            }
+        } catch (IOException | AlreadyClosedException e) {
+            LOGGER.warn("Could not close the connection of destination " + destinationName, e);
+        } finally {
+            connection = null;
+        }
+    }
+
+    /**
+     * Gets the store of message bodies published as claim-check references.
+     *
+     * @return the store, or null if no store directory has been set
+     */
+    BlobStore getBlobStore() {
+        return blobStore;
+    }
+
+    /**
+     * Sets the number of publishers, each publishing on its own channel from its own thread.
+     * Queued messages of the previous publishers are handed over to the new ones.
+     *
+     * @param count the number of publishers, values below 1 are treated as 1
+     */
+    public synchronized void setPublisherCount(int count) {
+        int size = Math.max(1, count);
+        if (publishers.length != size) {
+            replacePublishers(size, queueCapacity);
+        }
+    }
+
+    /**
+     * Sets the number of messages that can be queued, shared by all publishers.
+     * Queued messages of the previous publishers are handed over to the new ones.
+     *
+     * @param capacity the queue capacity, values below 1 are treated as 1
+     */
+    public synchronized void setQueueCapacity(int capacity) {
+        int size = Math.max(1, capacity);
+        if (queueCapacity != size) {
+            replacePublishers(publishers.length, size);
+        }
+    }
+
+    /**
+     * Sets what is done with a message when the queue of its publisher is full.
+     *
+     * @param policy the overflow policy, null for {@link OverflowPolicy#DROP_NEWEST}
+     */
+    public void setOverflowPolicy(OverflowPolicy policy) {
+        overflowPolicy = policy != null ? policy : OverflowPolicy.DROP_NEWEST;
+    }
+
+    /**
+     * Sets how long to block the caller when the overflow policy is {@link OverflowPolicy#BLOCK}.
+     *
+     * @param blockMillis the timeout in milliseconds, values below 0 are treated as 0
+     */
+    public void setOverflowBlockMillis(long blockMillis) {
+        overflowBlockMillis = Math.max(0, blockMillis);
+    }
+
+    /**
+     * Sets the maximum number of bytes of message bodies held in memory, shared by all publishers.
+     * Messages count from when they are queued until they are confirmed. When the budget is exhausted,
+     * the overflow policy applies just as when the queue is full.
+     *
+     * @param maxBytes the byte budget, 0 or less for an unbounded budget
+     */
+    public void setMaxQueuedBytes(long maxBytes) {
+        maxQueuedBytes = Math.max(0, maxBytes);
+    }
+
+    /**
+     * Sets whether queued messages are superseded by newer messages with the same compaction key,
+     * so that only the latest state of e.g. a build is published after a backlog.
+     *
+     * @param compact true if superseded messages should be compacted
+     */
+    public void setCompactSuperseded(boolean compact) {
+        compactSuperseded = compact;
+    }
+
+    /**
+     * Sets the encoder of published messages. The content type of the messages is set to match.
+     *
+     * @param encoder the encoder, null for {@link MQMessageEncoder#getDefault()}
+     */
+    public void setMessageEncoder(MQMessageEncoder encoder) {
+        messageEncoder = encoder != null ? encoder : MQMessageEncoder.getDefault();
+        invalidateEnvelope();
+    }
+
+    /**
+     * Sets the transport that messages are published on.
+     * The publishers are replaced, queued and unconfirmed messages are handed over to the new ones.
+     *
+     * @param newTransport the transport, or null for the AMQP transport
+     */
+    public synchronized void setTransport(MQTransport newTransport) {
+        MQTransport selected = newTransport != null ? newTransport : MQTransport.getDefault();
+        if (selected != transport) {
+            transport = selected;
+            replacePublishers(publishers.length, queueCapacity);
+        }
+    }
+
+    /**
+     * Gets the transport that messages are published on.
+     *
+     * @return the transport
+     */
+    public MQTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Gets the encoder of published messages.
+     *
+     * @return the encoder
+     */
+    public MQMessageEncoder getMessageEncoder() {
+        return messageEncoder;
+    }
+
+    /**
+     * Sets how message bodies are compressed.
+     *
+     * @param codec the compression, null for {@link Compression#NONE}
+     * @param threshold the size in bytes from which a message body is compressed
+     */
+    public void setCompression(Compression codec, int threshold) {
+        compressionThreshold = Math.max(0, threshold);
+        compression = codec != null ? codec : Compression.NONE;
+    }
+
+    /**
+     * Sets the priority lanes of messages by the value of their state.
+     * Messages with other states, or without a state, are of normal priority.
+     *
+     * @param priorities the priority for each state value
+     */
+    public void setStatePriorities(Map<String, MessagePriority> priorities) {
+        statePriorities = Collections.unmodifiableMap(new HashMap<>(priorities));
+    }
+
+    /**
+     * Sets the directory to spill messages to when the overflow policy is {@link OverflowPolicy#SPILL_TO_DISK}.
+     * Spill files left behind by a previous run are kept until {@link #replayStaleSpill()} queues them again.
+     *
+     * @param directory the spill directory, or null to drop messages instead of spilling them
+     */
+    public synchronized void setSpillDirectory(File directory) {
+        if (directory != null && !directory.equals(spillDirectory)) {
+            // Listed before anything is spilled to the directory, so only files of a previous run are replayed.
+            staleSpillFiles = SpillQueue.listStale(directory);
+        }
+        spillDirectory = directory;
+    }
+
+    /**
+     * Queues the messages in spill files left behind by a previous run again, and deletes the files.
+     * Call this after the journal is configured: messages that were also written to the journal are left
+     * to the journal, which has queued them again, but only if the journal is enabled.
+     */
+    public synchronized void replayStaleSpill() {
+        File[] stale = staleSpillFiles;
+        staleSpillFiles = null;
+        if (stale == null || stale.length == 0) {
+            return;
+        }
+        boolean journaled = journal != null;
+        int replayed = SpillQueue.replayStale(stale, messageData -> {
+            if (messageData.takeJournalPosition() < 0 || !journaled) {
+                requeue(messageData);
+            }
+        });
+        if (replayed > 0) {
+            LOGGER.info("Read " + replayed + " messages spilled by a previous run from " + stale[0].getParentFile());
+        }
+    }
+
+    /**
+     * Replaces the pool of publishers and retires the old publishers, which hand over their messages.
+     *
+     * @param count the number of publishers
+     * @param capacity the queue capacity shared by the publishers
+     */
+    private void replacePublishers(int count, int capacity) {
+        ChannelPublisher[] old = publishers;
+        queueCapacity = capacity;
+        publishers = createPublishers(count, capacity);
+        for (ChannelPublisher publisher : old) {
+            publisher.retire();
+        }
+    }
+
+    /**
+     * Creates a pool of publishers sharing the message queue capacity.
+     *
+     * @param count the number of publishers
+     * @param capacity the queue capacity shared by the publishers
+     * @return the publishers
+     */
+    private ChannelPublisher[] createPublishers(int count, int capacity) {
+        ChannelPublisher[] pool = new ChannelPublisher[count];
+        for (int i = 0; i < count; i++) {
+            pool[i] = new ChannelPublisher(this, i, Math.max(1, capacity / count));
+        }
+        return pool;
+    }
+
+    /**
+     * Gets the maximum number of messages to publish back-to-back.
+     *
+     * @return the batch size
+     */
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Gets the time to wait for more messages before publishing a batch that is not full.
+     *
+     * @return the linger time in milliseconds
+     */
+    long getBatchLingerMillis() {
+        return batchLingerMillis;
+    }
+
+    /**
+     * Gets how long to block the caller when the overflow policy is {@link OverflowPolicy#BLOCK}.
+     *
+     * @return the timeout in milliseconds
+     */
+    long getOverflowBlockMillis() {
+        return overflowBlockMillis;
+    }
+
+    /**
+     * Gets the directory to spill messages to.
+     *
+     * @return the spill directory, or null if not set
+     */
+    File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * Gets whether queued messages are superseded by newer messages with the same compaction key.
+     *
+     * @return true if superseded messages are compacted
+     */
+    boolean isCompactSuperseded() {
+        return compactSuperseded;
+    }
+
+    /**
+     * Gets whether missing exchanges should be declared.
+     *
+     * @return true if missing exchanges should be declared
+     */
+    boolean isDeclareExchange() {
+        return declareExchange;
+    }
+
     @Override
     public void shutdownCompleted(ShutdownSignalException cause) {
         if (cause.isHardError()) {
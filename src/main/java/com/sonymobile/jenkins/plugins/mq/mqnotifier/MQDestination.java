@@ -0,0 +1,188 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import hudson.Extension;
+import hudson.model.Describable;
+import hudson.model.Descriptor;
+import hudson.util.ListBoxModel;
+import hudson.util.Secret;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * An additional broker and exchange that every message is also published to.
+ * Each destination has its own connection, message queue, overflow policy and publishers,
+ * so a slow or unreachable destination does not hold back the others.
+ */
+public final class MQDestination implements Describable<MQDestination> {
+    private final String name;
+    private final String serverUri;
+    private final String userName;
+    private final Secret userPassword;
+    private final String virtualHost;
+    private final String exchangeName;
+    private final String routingKey;
+    private final OverflowPolicy overflowPolicy;
+    private final int queueCapacity;
+
+    /**
+     * Creates an instance with specified parameters.
+     *
+     * @param name              the name of the destination, unique among the destinations
+     * @param serverUri         the server uri
+     * @param userName          the user name
+     * @param userPassword      the user password
+     * @param virtualHost       the name of the virtual host
+     * @param exchangeName      the name of the exchange
+     * @param routingKey        the routing key, or blank for the routing key of the message
+     * @param overflowPolicy    what to do when the message queue of the destination is full
+     * @param queueCapacity     the capacity of the message queue of the destination
+     */
+    @DataBoundConstructor
+    public MQDestination(String name, String serverUri, String userName, Secret userPassword, String virtualHost,
+                         String exchangeName, String routingKey, OverflowPolicy overflowPolicy, int queueCapacity) {
+        this.name = name;
+        this.serverUri = serverUri;
+        this.userName = userName;
+        this.userPassword = userPassword;
+        this.virtualHost = virtualHost;
+        this.exchangeName = exchangeName;
+        this.routingKey = routingKey;
+        this.overflowPolicy = overflowPolicy;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Gets the name of the destination.
+     *
+     * @return the name.
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Gets the URI of the server.
+     *
+     * @return the URI.
+     */
+    public String getServerUri() {
+        return this.serverUri;
+    }
+
+    /**
+     * Gets the user name.
+     *
+     * @return the user name.
+     */
+    public String getUserName() {
+        return this.userName;
+    }
+
+    /**
+     * Gets the user password.
+     *
+     * @return the user password.
+     */
+    public Secret getUserPassword() {
+        return this.userPassword;
+    }
+
+    /**
+     * Gets the virtual host.
+     *
+     * @return the virtual host.
+     */
+    public String getVirtualHost() {
+        return this.virtualHost;
+    }
+
+    /**
+     * Gets the name of the exchange.
+     *
+     * @return the exchange name.
+     */
+    public String getExchangeName() {
+        return this.exchangeName;
+    }
+
+    /**
+     * Gets the routing key.
+     *
+     * @return the routing key, blank for the routing key of the message.
+     */
+    public String getRoutingKey() {
+        return this.routingKey;
+    }
+
+    /**
+     * Gets what to do when the message queue of the destination is full.
+     *
+     * @return the overflow policy.
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return this.overflowPolicy;
+    }
+
+    /**
+     * Gets the capacity of the message queue of the destination.
+     *
+     * @return the number of messages.
+     */
+    public int getQueueCapacity() {
+        return this.queueCapacity;
+    }
+
+    @Override
+    public Descriptor<MQDestination> getDescriptor() {
+        return Jenkins.getInstance().getDescriptorOrDie(getClass());
+    }
+
+    /**
+     * Implementation of the Descriptor interface.
+     */
+    @Extension
+    public static final class DescriptorImpl extends Descriptor<MQDestination> {
+        @Override
+        public String getDisplayName() {
+            return "Destination";
+        }
+
+        /**
+         * Fills the overflow policy list. Blocking is left out, a destination must never hold back the others.
+         *
+         * @return the overflow policies.
+         */
+        public ListBoxModel doFillOverflowPolicyItems() {
+            ListBoxModel items = new ListBoxModel();
+            for (OverflowPolicy policy : OverflowPolicy.values()) {
+                if (policy != OverflowPolicy.BLOCK) {
+                    items.add(policy.getDisplayName(), policy.name());
+                }
+            }
+            return items;
+        }
+    }
+}
@@ -25,11 +25,18 @@ package com.sonymobile.jenkins.plugins.mq.mqnotifier;
 
 import com.rabbitmq.client.ConnectionFactory;
 import com.rabbitmq.client.PossibleAuthenticationFailureException;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.encoders.JsonMessageEncoder;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.encoders.MQMessageEncoder;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.providers.ParameterProvider;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.transports.AmqpTransport;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.transports.FileTransport;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.transports.MQTransport;
 import hudson.Extension;
 import hudson.Plugin;
 import hudson.model.Describable;
 import hudson.model.Descriptor;
 import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
 import hudson.util.Secret;
 import jenkins.model.Jenkins;
 import net.sf.json.JSONObject;
@@ -43,8 +50,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.servlet.ServletException;
+import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Adds the MQ notifier plugin configuration to the system config page.
@@ -58,6 +73,24 @@ public final class MQNotifierConfig extends Plugin implements Describable<MQNoti
     private static final String SERVER_URI = "serverUri";
     private static final String USERNAME = "userName";
     private static final String PASSWORD = "userPassword";
+    private static final String JOURNAL_DIRECTORY = "mq-notifier-journal";
+    private static final String SPILL_DIRECTORY = "mq-notifier-spill";
+    private static final long BYTES_PER_MEGABYTE = 1024L * 1024;
+    private static final String BLOB_DIRECTORY = "mq-notifier-blobs";
+    private static final int BYTES_PER_KILOBYTE = 1024;
+    private static final int DEFAULT_BLOB_RETENTION_HOURS = 24;
+    /* The percentile of data provider call times shown in the status. */
+    private static final double PERCENTILE = 95;
+    private static final String TRANSPORT_DIRECTORY = "mq-notifier-events";
+    private static final String ARCHIVE_DIRECTORY = "mq-notifier-archive";
+    private static final long DEFAULT_ARCHIVE_FILE_SIZE_MB = 100;
+    private static final long DEFAULT_ARCHIVE_ROTATE_MINUTES = 60;
+    /** The default priority lanes by state, build events before queue events. */
+    public static final String DEFAULT_STATE_PRIORITIES = Util.VALUE_STARTED + "=HIGH\n"
+            + Util.VALUE_COMPLETED + "=HIGH\n"
+            + Util.VALUE_DELETED + "=HIGH\n"
+            + Util.VALUE_ADDED_TO_QUEUE + "=LOW\n"
+            + Util.VALUE_REMOVED_FROM_QUEUE + "=LOW";
 
     /* The status whether the plugin is enabled */
     private boolean enableNotifier;
@@ -84,6 +117,74 @@ public final class MQNotifierConfig extends Plugin implements Describable<MQNoti
     private boolean persistentDelivery;
     /* Application id that can be read by the consumer (optional). */
     private String appId;
+    /* Declare the exchange if it is missing, instead of only validating that it exists. */
+    private boolean declareExchange;
+    /* The maximum number of messages that are published back-to-back before waiting for more. */
+    private int batchSize;
+    /* The time in milliseconds to wait for more messages before publishing a batch that is not full. */
+    private long batchLingerMillis;
+    /* The maximum number of published messages waiting for a confirm before publishing is paused. */
+    private int maxInFlight;
+    /* The number of publishers, each publishing on its own channel from its own thread. */
+    private int publisherCount;
+    /* Keep unconfirmed messages in a journal on disk, so they are published again after a restart. */
+    private boolean enableJournal;
+    /* The number of messages that can be queued before the overflow policy applies. */
+    private int queueCapacity;
+    /* The number of megabytes of message bodies that can be held in memory before the overflow policy applies. */
+    private long queueMemoryLimitMb;
+    /* What to do with a message when the queue is full. */
+    private OverflowPolicy overflowPolicy;
+    /* The time in milliseconds to block the caller when the overflow policy is to block. */
+    private long overflowBlockMillis;
+    /* Only publish the latest state of a build or queue item when older messages about it are still queued. */
+    private boolean enableCompaction;
+    /* The priority lane of messages by state, one STATE=PRIORITY per line. */
+    private String statePriorities;
+    /* The number of threads that run the data providers and publish, 0 to do it on the Jenkins threads. */
+    private int enrichmentThreads;
+    /* The time in milliseconds after which a data provider is suspended, checked after each call, 0 for no limit. */
+    private long providerBudgetMillis;
+    /* The maximum length of a build parameter value in a message, 0 for no limit. */
+    private int parameterMaxValueLength;
+    /* The maximum length of all build parameters of a message together, 0 for no limit. */
+    private int parameterMaxTotalLength;
+    /* Replace a build parameter value that is too long with its hash instead of truncating it. */
+    private boolean hashOversizedParameters;
+    /* The names of the build parameters to include in messages, all if blank. */
+    private String includedParameters;
+    /* The names of the build parameters to leave out of messages. */
+    private String excludedParameters;
+    /* The size in kilobytes above which a message body is published as a claim-check reference, 0 to disable. */
+    private int claimCheckThresholdKb;
+    /* The number of hours a message body published as a claim-check reference is kept. */
+    private int blobRetentionHours;
+    /* How message bodies are compressed. */
+    private Compression compression;
+    /* The size in bytes from which a message body is compressed. */
+    private int compressionThreshold;
+    /* The name of the encoder of published messages. */
+    private String messageEncoder;
+    /* The name of the transport that messages are published on. */
+    private String transport;
+    /* The size in megabytes to rotate the files of the file transport at. */
+    private long transportFileSizeMb;
+    /* Write every event to local NDJSON files, apart from publishing it. */
+    private boolean enableArchive;
+    /* The size in megabytes to rotate archive files at, 0 to not rotate by size. */
+    private long archiveFileSizeMb;
+    /* The number of minutes to rotate archive files after, 0 to not rotate by time. */
+    private long archiveRotateMinutes;
+    /* Gzip compress rotated archive files. */
+    private boolean compressArchive;
+    /* The additional brokers and exchanges that every message is also published to. */
+    private List<MQDestination> destinations;
+    /* The nodes of the broker cluster, host[:port] separated by commas or line breaks. */
+    private String brokerAddresses;
+    /* Try the nodes of the broker cluster in random order. */
+    private boolean shuffleBrokerAddresses;
+    /* Try the nodes of the broker cluster with the lowest measured latency first. */
+    private boolean preferLowestLatency;
 
     /**
      * Creates an instance with specified parameters.
@@ -120,7 +221,19 @@ public final class MQNotifierConfig extends Plugin implements Describable<MQNoti
         super.start();
         LOGGER.info("Starting MQNotifier Plugin");
         load();
-        MQConnection.getInstance().initialize(userName, userPassword, serverUri, virtualHost);
+        initializeConnection();
+    }
+
+    @Override
+    public void stop() throws Exception {
+        EnrichmentPool.getInstance().setThreads(0);
+        MQConnection.getInstance().setJournalDirectory(null);
+        MQConnection.getInstance().setClaimCheck(null, 0, 0);
+        MQConnection.getInstance().setArchive(null, 0, 0, false);
+        MQConnection.getInstance().setDestinations(null);
+        MQConnection.getInstance().setCompression(Compression.NONE, 0);
+        Compression.releaseAll();
+        super.stop();
     }
 
     /**
@@ -130,6 +243,27 @@ public final class MQNotifierConfig extends Plugin implements Describable<MQNoti
         this.enableNotifier = false;        // default value
         this.persistentDelivery = true;     // default value
         this.enableVerboseLogging = true;   // default value
+        this.batchSize = MQConnection.DEFAULT_BATCH_SIZE;  // default value
+        this.batchLingerMillis = 0;         // default value
+        this.maxInFlight = MQConnection.DEFAULT_MAX_IN_FLIGHT;  // default value
+        this.publisherCount = MQConnection.DEFAULT_PUBLISHER_COUNT;  // default value
+        this.queueCapacity = MQConnection.DEFAULT_QUEUE_CAPACITY;  // default value
+        this.queueMemoryLimitMb = MQConnection.DEFAULT_MAX_QUEUED_BYTES / BYTES_PER_MEGABYTE;  // default value
+        this.overflowPolicy = OverflowPolicy.DROP_NEWEST;  // default value
+        this.overflowBlockMillis = MQConnection.DEFAULT_OVERFLOW_BLOCK_MILLIS;  // default value
+        this.statePriorities = DEFAULT_STATE_PRIORITIES;  // default value
+        this.enrichmentThreads = EnrichmentPool.DEFAULT_THREADS;  // default value
+        this.blobRetentionHours = DEFAULT_BLOB_RETENTION_HOURS;  // default value
+        this.compression = Compression.NONE;  // default value
+        this.compressionThreshold = MQConnection.DEFAULT_COMPRESSION_THRESHOLD;  // default value
+        this.messageEncoder = JsonMessageEncoder.NAME;  // default value
+        this.transport = AmqpTransport.NAME;  // default value
+        this.transportFileSizeMb = FileTransport.DEFAULT_MAX_FILE_BYTES / BYTES_PER_MEGABYTE;  // default value
+        this.archiveFileSizeMb = DEFAULT_ARCHIVE_FILE_SIZE_MB;  // default value
+        this.archiveRotateMinutes = DEFAULT_ARCHIVE_ROTATE_MINUTES;  // default value
+        this.compressArchive = true;        // default value
+        this.destinations = new ArrayList<>();  // default value
+        this.shuffleBrokerAddresses = true; // default value
     }
 
     @Override
@@ -137,7 +271,106 @@ public final class MQNotifierConfig extends Plugin implements Describable<MQNoti
             Descriptor.FormException {
         req.bindJSON(this, formData);
         save();
-        MQConnection.getInstance().initialize(userName, userPassword, serverUri, virtualHost);
+        initializeConnection();
+    }
+
+    /**
+     * Initializes the MQ connection with the current configuration.
+     */
+    void initializeConnection() {
+        MQConnection conn = MQConnection.getInstance();
+        try {
+            conn.setBrokerAddresses(BrokerAddresses.parse(brokerAddresses), shuffleBrokerAddresses,
+                    preferLowestLatency);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Invalid broker addresses, connecting to the server URI only: " + e.getMessage());
+            conn.setBrokerAddresses(null, shuffleBrokerAddresses, preferLowestLatency);
+        }
+        conn.initialize(userName, userPassword, serverUri, virtualHost);
+        conn.invalidateEnvelope();
+        Util.refreshRootUrl();
+        conn.setDeclareExchange(declareExchange);
+        conn.setBatchSize(batchSize);
+        conn.setBatchLingerMillis(batchLingerMillis);
+        conn.setMaxInFlight(maxInFlight);
+        conn.setQueueCapacity(queueCapacity);
+        conn.setPublisherCount(publisherCount);
+        conn.setMaxQueuedBytes(queueMemoryLimitMb * BYTES_PER_MEGABYTE);
+        conn.setOverflowPolicy(overflowPolicy);
+        conn.setOverflowBlockMillis(overflowBlockMillis);
+        conn.setCompactSuperseded(enableCompaction);
+        conn.setMessageEncoder(MQMessageEncoder.find(messageEncoder));
+        conn.setCompression(compression, compressionThreshold);
+        EnrichmentPool.getInstance().setThreads(enrichmentThreads);
+        ProviderTimings.getInstance().setBudgetMillis(providerBudgetMillis);
+        ParameterProvider.setLimits(parameterMaxValueLength, parameterMaxTotalLength, hashOversizedParameters,
+                includedParameters, excludedParameters);
+        try {
+            conn.setStatePriorities(parseStatePriorities(statePriorities));
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Invalid state priorities, all messages are of normal priority: " + e.getMessage());
+            conn.setStatePriorities(new HashMap<>());
+        }
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins != null) {
+            conn.setSpillDirectory(new File(jenkins.getRootDir(), SPILL_DIRECTORY));
+            conn.setClaimCheck(new File(jenkins.getRootDir(), BLOB_DIRECTORY),
+                    claimCheckThresholdKb * BYTES_PER_KILOBYTE, TimeUnit.HOURS.toMillis(blobRetentionHours));
+        }
+        MQTransport selected = MQTransport.find(transport);
+        if (selected instanceof FileTransport && jenkins != null) {
+            ((FileTransport)selected).setDirectory(new File(jenkins.getRootDir(), TRANSPORT_DIRECTORY),
+                    transportFileSizeMb * BYTES_PER_MEGABYTE);
+        }
+        conn.setTransport(selected);
+        conn.setDestinations(destinations);
+        if (enableArchive && jenkins != null) {
+            conn.setArchive(new File(jenkins.getRootDir(), ARCHIVE_DIRECTORY), archiveFileSizeMb * BYTES_PER_MEGABYTE,
+                    TimeUnit.MINUTES.toMillis(archiveRotateMinutes), compressArchive);
+        } else {
+            conn.setArchive(null, 0, 0, false);
+        }
+        if (enableJournal && jenkins != null) {
+            conn.setJournalDirectory(new File(jenkins.getRootDir(), JOURNAL_DIRECTORY));
+        } else {
+            conn.setJournalDirectory(null);
+        }
+        // After the journal, so that spilled messages are only left to the journal if it is enabled.
+        conn.replayStaleSpill();
+    }
+
+    /**
+     * Gets the current state of the notifier, shown read-only at the end of the configuration page.
+     *
+     * @return the values by name, in the order they are shown.
+     */
+    public Map<String, String> getStatus() {
+        Map<String, String> status = new LinkedHashMap<>();
+        for (ProviderTimings.Timing timing : ProviderTimings.getInstance().getTimings()) {
+            long count = timing.getCount();
+            status.put("Data provider " + timing.getProviderName() + ", " + timing.getEventType(), String.format(
+                    Locale.ROOT, "%d calls, %.1f ms average, %d us 95th percentile, %.1f ms max, "
+                            + "%d over budget, %d skipped", count,
+                    count > 0 ? timing.getTotalNanos() / (double)count / TimeUnit.MILLISECONDS.toNanos(1) : 0.0,
+                    timing.getPercentileMicros(PERCENTILE),
+                    timing.getMaxNanos() / (double)TimeUnit.MILLISECONDS.toNanos(1),
+                    timing.getOverBudgetCount(), timing.getSkippedCount()));
+        }
+        MQConnection conn = MQConnection.getInstance();
+        for (MessagePriority priority : MessagePriority.values()) {
+            status.put("Messages waiting, " + priority.name().toLowerCase(Locale.ROOT) + " priority",
+                    String.valueOf(conn.getLaneDepth(priority)));
+        }
+        status.put("Compression ratio", String.format(Locale.ROOT, "%.2f", conn.getCompressionRatio()));
+        for (Map.Entry<String, Long> latency : conn.getBrokerLatencyMillis().entrySet()) {
+            status.put("Broker latency, " + latency.getKey(),
+                    latency.getValue() < 0 ? "Not measured or unreachable" : latency.getValue() + " ms");
+        }
+        for (OverflowPolicy policy : OverflowPolicy.values()) {
+            status.put("Messages dropped, " + policy.getDisplayName().toLowerCase(Locale.ROOT),
+                    String.valueOf(conn.getDroppedCount(policy)));
+        }
+        return status;
     }
 
     /**
@@ -156,6 +389,7 @@ public final class MQNotifierConfig extends Plugin implements Describable<MQNoti
      */
     public void setEnableNotifier(boolean enableNotifier) {
         this.enableNotifier = enableNotifier;
+        MQConnection.getInstance().invalidateEnvelope();
     }
 
     /**
@@ -264,6 +498,7 @@ public final class MQNotifierConfig extends Plugin implements Describable<MQNoti
      */
     public void setExchangeName(String exchangeName) {
         this.exchangeName = exchangeName;
+        MQConnection.getInstance().invalidateEnvelope();
     }
 
     /**
@@ -300,6 +535,7 @@ public final class MQNotifierConfig extends Plugin implements Describable<MQNoti
      */
     public void setRoutingKey(String routingKey) {
         this.routingKey = routingKey;
+        MQConnection.getInstance().invalidateEnvelope();
     }
 
     /**
@@ -318,6 +554,7 @@ public final class MQNotifierConfig extends Plugin implements Describable<MQNoti
      */
     public void setPersistentDelivery(boolean pd) {
         this.persistentDelivery = pd;
+        MQConnection.getInstance().invalidateEnvelope();
     }
 
     /**
@@ -336,8 +573,656 @@ public final class MQNotifierConfig extends Plugin implements Describable<MQNoti
      */
     public void setAppId(String appId) {
         this.appId = appId;
+        MQConnection.getInstance().invalidateEnvelope();
+    }
+
+
+    /**
+     * Returns true if missing exchanges should be declared.
+     *
+     * @return if missing exchanges should be declared.
+     */
+    public boolean isDeclareExchange() {
+        return this.declareExchange;
+    }
+
+    /**
+     * Sets whether missing exchanges should be declared.
+     *
+     * @param declareExchange if missing exchanges should be declared.
+     */
+    public void setDeclareExchange(boolean declareExchange) {
+        this.declareExchange = declareExchange;
+    }
+
+    /**
+     * Gets the maximum number of messages to publish back-to-back.
+     *
+     * @return the batch size.
+     */
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
+    /**
+     * Sets the maximum number of messages to publish back-to-back.
+     *
+     * @param batchSize the batch size.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Gets the time to wait for more messages before publishing a batch that is not full.
+     *
+     * @return the linger time in milliseconds.
+     */
+    public long getBatchLingerMillis() {
+        return this.batchLingerMillis;
+    }
+
+    /**
+     * Sets the time to wait for more messages before publishing a batch that is not full.
+     *
+     * @param batchLingerMillis the linger time in milliseconds.
+     */
+    public void setBatchLingerMillis(long batchLingerMillis) {
+        this.batchLingerMillis = batchLingerMillis;
+    }
+
+    /**
+     * Gets the maximum number of published messages waiting for a confirm.
+     *
+     * @return the size of the confirm window, 0 if unbounded.
+     */
+    public int getMaxInFlight() {
+        return this.maxInFlight;
+    }
+
+    /**
+     * Sets the maximum number of published messages waiting for a confirm.
+     *
+     * @param maxInFlight the size of the confirm window, 0 if unbounded.
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Gets the number of publishers.
+     *
+     * @return the number of publishers.
+     */
+    public int getPublisherCount() {
+        return this.publisherCount;
+    }
+
+    /**
+     * Sets the number of publishers.
+     *
+     * @param publisherCount the number of publishers.
+     */
+    public void setPublisherCount(int publisherCount) {
+        this.publisherCount = publisherCount;
+    }
+
+    /**
+     * Gets whether unconfirmed messages are kept in a journal on disk.
+     *
+     * @return true if the journal is enabled.
+     */
+    public boolean isJournalEnabled() {
+        return this.enableJournal;
+    }
+
+    /**
+     * Sets whether unconfirmed messages are kept in a journal on disk.
+     *
+     * @param enableJournal true if the journal is enabled.
+     */
+    public void setEnableJournal(boolean enableJournal) {
+        this.enableJournal = enableJournal;
+    }
+
+    /**
+     * Gets the number of messages that can be queued.
+     *
+     * @return the queue capacity.
+     */
+    public int getQueueCapacity() {
+        return this.queueCapacity;
+    }
+
+    /**
+     * Sets the number of messages that can be queued.
+     *
+     * @param queueCapacity the queue capacity.
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Gets the number of megabytes of message bodies that can be held in memory.
+     *
+     * @return the memory limit in megabytes, 0 if unlimited.
+     */
+    public long getQueueMemoryLimitMb() {
+        return this.queueMemoryLimitMb;
+    }
+
+    /**
+     * Sets the number of megabytes of message bodies that can be held in memory.
+     *
+     * @param queueMemoryLimitMb the memory limit in megabytes, 0 if unlimited.
+     */
+    public void setQueueMemoryLimitMb(long queueMemoryLimitMb) {
+        this.queueMemoryLimitMb = queueMemoryLimitMb;
+    }
+
+    /**
+     * Gets what to do with a message when the queue is full.
+     *
+     * @return the overflow policy.
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return this.overflowPolicy;
+    }
+
+    /**
+     * Sets what to do with a message when the queue is full.
+     *
+     * @param overflowPolicy the overflow policy.
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Gets the time to block the caller when the queue is full.
+     *
+     * @return the block timeout in milliseconds.
+     */
+    public long getOverflowBlockMillis() {
+        return this.overflowBlockMillis;
+    }
+
+    /**
+     * Sets the time to block the caller when the queue is full.
+     *
+     * @param overflowBlockMillis the block timeout in milliseconds.
+     */
+    public void setOverflowBlockMillis(long overflowBlockMillis) {
+        this.overflowBlockMillis = overflowBlockMillis;
+    }
+
+    /**
+     * Gets whether superseded messages are compacted while queued.
+     *
+     * @return true if compaction is enabled.
+     */
+    public boolean isCompactionEnabled() {
+        return this.enableCompaction;
+    }
+
+    /**
+     * Sets whether superseded messages are compacted while queued.
+     *
+     * @param enableCompaction true if compaction is enabled.
+     */
+    public void setEnableCompaction(boolean enableCompaction) {
+        this.enableCompaction = enableCompaction;
+    }
+
+    /**
+     * Gets the priority lanes of messages by state.
+     *
+     * @return the state priorities, one STATE=PRIORITY per line.
+     */
+    public String getStatePriorities() {
+        return this.statePriorities;
+    }
+
+    /**
+     * Sets the priority lanes of messages by state.
+     *
+     * @param statePriorities the state priorities, one STATE=PRIORITY per line.
+     */
+    public void setStatePriorities(String statePriorities) {
+        this.statePriorities = statePriorities;
+    }
+
+    /**
+     * Gets the number of threads that run the data providers and publish messages.
+     *
+     * @return the number of threads, 0 if this is done on the Jenkins threads.
+     */
+    public int getEnrichmentThreads() {
+        return this.enrichmentThreads;
+    }
+
+    /**
+     * Sets the number of threads that run the data providers and publish messages.
+     *
+     * @param enrichmentThreads the number of threads, 0 to do this on the Jenkins threads.
+     */
+    public void setEnrichmentThreads(int enrichmentThreads) {
+        this.enrichmentThreads = enrichmentThreads;
+    }
+
+    /**
+     * Gets the time a data provider may take for an event before it is suspended.
+     * It is checked after each call, a call is not interrupted.
+     *
+     * @return the budget in milliseconds, 0 for no limit.
+     */
+    public long getProviderBudgetMillis() {
+        return this.providerBudgetMillis;
+    }
+
+    /**
+     * Sets the time a data provider may take for an event before it is suspended.
+     * It is checked after each call, a call is not interrupted.
+     *
+     * @param providerBudgetMillis the budget in milliseconds, 0 for no limit.
+     */
+    public void setProviderBudgetMillis(long providerBudgetMillis) {
+        this.providerBudgetMillis = providerBudgetMillis;
+    }
+
+    /**
+     * Gets the maximum length of a build parameter value in a message.
+     *
+     * @return the maximum length, 0 for no limit.
+     */
+    public int getParameterMaxValueLength() {
+        return this.parameterMaxValueLength;
+    }
+
+    /**
+     * Sets the maximum length of a build parameter value in a message.
+     *
+     * @param parameterMaxValueLength the maximum length, 0 for no limit.
+     */
+    public void setParameterMaxValueLength(int parameterMaxValueLength) {
+        this.parameterMaxValueLength = parameterMaxValueLength;
+    }
+
+    /**
+     * Gets the maximum length of all build parameters of a message together.
+     *
+     * @return the maximum length, 0 for no limit.
+     */
+    public int getParameterMaxTotalLength() {
+        return this.parameterMaxTotalLength;
     }
 
+    /**
+     * Sets the maximum length of all build parameters of a message together.
+     *
+     * @param parameterMaxTotalLength the maximum length, 0 for no limit.
+     */
+    public void setParameterMaxTotalLength(int parameterMaxTotalLength) {
+        this.parameterMaxTotalLength = parameterMaxTotalLength;
+    }
+
+    /**
+     * Gets whether a build parameter value that is too long is replaced with its hash instead of truncated.
+     *
+     * @return true if oversized values are hashed.
+     */
+    public boolean isHashOversizedParameters() {
+        return this.hashOversizedParameters;
+    }
+
+    /**
+     * Sets whether a build parameter value that is too long is replaced with its hash instead of truncated.
+     *
+     * @param hashOversizedParameters true if oversized values are hashed.
+     */
+    public void setHashOversizedParameters(boolean hashOversizedParameters) {
+        this.hashOversizedParameters = hashOversizedParameters;
+    }
+
+    /**
+     * Gets the names of the build parameters to include in messages.
+     *
+     * @return the names, separated by commas or new lines, all parameters if blank.
+     */
+    public String getIncludedParameters() {
+        return this.includedParameters;
+    }
+
+    /**
+     * Sets the names of the build parameters to include in messages.
+     *
+     * @param includedParameters the names, separated by commas or new lines, all parameters if blank.
+     */
+    public void setIncludedParameters(String includedParameters) {
+        this.includedParameters = includedParameters;
+    }
+
+    /**
+     * Gets the names of the build parameters to leave out of messages.
+     *
+     * @return the names, separated by commas or new lines.
+     */
+    public String getExcludedParameters() {
+        return this.excludedParameters;
+    }
+
+    /**
+     * Sets the names of the build parameters to leave out of messages.
+     *
+     * @param excludedParameters the names, separated by commas or new lines.
+     */
+    public void setExcludedParameters(String excludedParameters) {
+        this.excludedParameters = excludedParameters;
+    }
+
+    /**
+     * Gets the size above which a message body is published as a claim-check reference.
+     *
+     * @return the size in kilobytes, 0 if disabled.
+     */
+    public int getClaimCheckThresholdKb() {
+        return this.claimCheckThresholdKb;
+    }
+
+    /**
+     * Sets the size above which a message body is published as a claim-check reference.
+     *
+     * @param claimCheckThresholdKb the size in kilobytes, 0 to disable.
+     */
+    public void setClaimCheckThresholdKb(int claimCheckThresholdKb) {
+        this.claimCheckThresholdKb = claimCheckThresholdKb;
+    }
+
+    /**
+     * Gets how long a message body published as a claim-check reference is kept.
+     *
+     * @return the retention in hours.
+     */
+    public int getBlobRetentionHours() {
+        return this.blobRetentionHours;
+    }
+
+    /**
+     * Sets how long a message body published as a claim-check reference is kept.
+     *
+     * @param blobRetentionHours the retention in hours.
+     */
+    public void setBlobRetentionHours(int blobRetentionHours) {
+        this.blobRetentionHours = blobRetentionHours;
+    }
+
+    /**
+     * Gets how message bodies are compressed.
+     *
+     * @return the compression.
+     */
+    public Compression getCompression() {
+        return this.compression;
+    }
+
+    /**
+     * Sets how message bodies are compressed.
+     *
+     * @param compression the compression.
+     */
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Gets the size from which a message body is compressed.
+     *
+     * @return the size in bytes.
+     */
+    public int getCompressionThreshold() {
+        return this.compressionThreshold;
+    }
+
+    /**
+     * Sets the size from which a message body is compressed.
+     *
+     * @param compressionThreshold the size in bytes.
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * Gets the name of the encoder of published messages.
+     *
+     * @return the encoder name.
+     */
+    public String getMessageEncoder() {
+        return this.messageEncoder;
+    }
+
+    /**
+     * Sets the name of the encoder of published messages.
+     *
+     * @param messageEncoder the encoder name.
+     */
+    public void setMessageEncoder(String messageEncoder) {
+        this.messageEncoder = messageEncoder;
+    }
+
+    /**
+     * Gets the name of the transport that messages are published on.
+     *
+     * @return the transport name.
+     */
+    public String getTransport() {
+        return this.transport;
+    }
+
+    /**
+     * Sets the name of the transport that messages are published on.
+     *
+     * @param transport the transport name.
+     */
+    public void setTransport(String transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * Gets the size to rotate the files of the file transport at.
+     *
+     * @return the size in megabytes.
+     */
+    public long getTransportFileSizeMb() {
+        return this.transportFileSizeMb;
+    }
+
+    /**
+     * Sets the size to rotate the files of the file transport at.
+     *
+     * @param transportFileSizeMb the size in megabytes, 0 to never rotate.
+     */
+    public void setTransportFileSizeMb(long transportFileSizeMb) {
+        this.transportFileSizeMb = transportFileSizeMb;
+    }
+
+    /**
+     * Gets whether every event is written to local NDJSON files.
+     *
+     * @return true if the archive is enabled.
+     */
+    public boolean isArchiveEnabled() {
+        return this.enableArchive;
+    }
+
+    /**
+     * Sets whether every event is written to local NDJSON files.
+     *
+     * @param enableArchive true if the archive is enabled.
+     */
+    public void setEnableArchive(boolean enableArchive) {
+        this.enableArchive = enableArchive;
+    }
+
+    /**
+     * Gets the size to rotate archive files at.
+     *
+     * @return the size in megabytes.
+     */
+    public long getArchiveFileSizeMb() {
+        return this.archiveFileSizeMb;
+    }
+
+    /**
+     * Sets the size to rotate archive files at.
+     *
+     * @param archiveFileSizeMb the size in megabytes, 0 to not rotate by size.
+     */
+    public void setArchiveFileSizeMb(long archiveFileSizeMb) {
+        this.archiveFileSizeMb = archiveFileSizeMb;
+    }
+
+    /**
+     * Gets the time to rotate archive files after.
+     *
+     * @return the time in minutes.
+     */
+    public long getArchiveRotateMinutes() {
+        return this.archiveRotateMinutes;
+    }
+
+    /**
+     * Sets the time to rotate archive files after.
+     *
+     * @param archiveRotateMinutes the time in minutes, 0 to not rotate by time.
+     */
+    public void setArchiveRotateMinutes(long archiveRotateMinutes) {
+        this.archiveRotateMinutes = archiveRotateMinutes;
+    }
+
+    /**
+     * Gets whether rotated archive files are compressed.
+     *
+     * @return true if rotated archive files are compressed.
+     */
+    public boolean isCompressArchive() {
+        return this.compressArchive;
+    }
+
+    /**
+     * Sets whether rotated archive files are compressed.
+     *
+     * @param compressArchive true if rotated archive files are compressed.
+     */
+    public void setCompressArchive(boolean compressArchive) {
+        this.compressArchive = compressArchive;
+    }
+
+    /**
+     * Gets the additional brokers and exchanges that every message is also published to.
+     *
+     * @return the destinations.
+     */
+    public List<MQDestination> getDestinations() {
+        if (this.destinations == null) {
+            return new ArrayList<>();
+        }
+        return this.destinations;
+    }
+
+    /**
+     * Sets the additional brokers and exchanges that every message is also published to.
+     *
+     * @param destinations the destinations.
+     */
+    public void setDestinations(List<MQDestination> destinations) {
+        this.destinations = destinations;
+    }
+
+    /**
+     * Gets the nodes of the broker cluster.
+     *
+     * @return the nodes, host[:port] separated by commas or line breaks.
+     */
+    public String getBrokerAddresses() {
+        return this.brokerAddresses;
+    }
+
+    /**
+     * Sets the nodes of the broker cluster.
+     *
+     * @param brokerAddresses the nodes, host[:port] separated by commas or line breaks, blank for the server URI.
+     */
+    public void setBrokerAddresses(String brokerAddresses) {
+        this.brokerAddresses = brokerAddresses;
+    }
+
+    /**
+     * Gets whether the nodes of the broker cluster are tried in random order.
+     *
+     * @return true if the nodes are shuffled.
+     */
+    public boolean isShuffleBrokerAddresses() {
+        return this.shuffleBrokerAddresses;
+    }
+
+    /**
+     * Sets whether the nodes of the broker cluster are tried in random order.
+     *
+     * @param shuffleBrokerAddresses true if the nodes are shuffled.
+     */
+    public void setShuffleBrokerAddresses(boolean shuffleBrokerAddresses) {
+        this.shuffleBrokerAddresses = shuffleBrokerAddresses;
+    }
+
+    /**
+     * Gets whether the nodes of the broker cluster with the lowest latency are tried first.
+     *
+     * @return true if the lowest latency is preferred.
+     */
+    public boolean isPreferLowestLatency() {
+        return this.preferLowestLatency;
+    }
+
+    /**
+     * Sets whether the nodes of the broker cluster with the lowest latency are tried first.
+     *
+     * @param preferLowestLatency true if the lowest latency is preferred.
+     */
+    public void setPreferLowestLatency(boolean preferLowestLatency) {
+        this.preferLowestLatency = preferLowestLatency;
+    }
+
+    /**
+     * Parses state priorities, one STATE=PRIORITY per line or separated by commas.
+     *
+     * @param text the state priorities, may be null
+     * @return the priority for each state
+     * @throws IllegalArgumentException if an entry is invalid
+     */
+    static Map<String, MessagePriority> parseStatePriorities(String text) {
+        Map<String, MessagePriority> priorities = new HashMap<>();
+        if (StringUtils.isBlank(text)) {
+            return priorities;
+        }
+        for (String entry : text.split("[,\\r\\n]+")) {
+            if (StringUtils.isBlank(entry)) {
+                continue;
+            }
+            String[] parts = entry.split("=", 2);
+            if (parts.length != 2 || StringUtils.isBlank(parts[0])) {
+                throw new IllegalArgumentException("Expected STATE=PRIORITY, got: " + entry.trim());
+            }
+            String priority = parts[1].trim().toUpperCase(Locale.ENGLISH);
+            try {
+                priorities.put(parts[0].trim(), MessagePriority.valueOf(priority));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown priority: " + parts[1].trim(), e);
+            }
+        }
+        return priorities;
+    }
 
     /**
      * Returns the descriptor instance.
@@ -359,6 +1244,88 @@ public final class MQNotifierConfig extends Plugin implements Describable<MQNoti
             return "MQ Notifier Plugin";
         }
 
+        /**
+         * Validates the state priorities.
+         *
+         * @param value the state priorities.
+         * @return FormValidation object that indicates ok or error.
+         */
+        public FormValidation doCheckStatePriorities(@QueryParameter final String value) {
+            try {
+                parseStatePriorities(value);
+                return FormValidation.ok();
+            } catch (IllegalArgumentException e) {
+                return FormValidation.error(e.getMessage());
+            }
+        }
+
+        /**
+         * Validates the broker addresses.
+         *
+         * @param value the broker addresses.
+         * @return FormValidation object that indicates ok or error.
+         */
+        public FormValidation doCheckBrokerAddresses(@QueryParameter final String value) {
+            try {
+                BrokerAddresses.parse(value);
+                return FormValidation.ok();
+            } catch (IllegalArgumentException e) {
+                return FormValidation.error(e.getMessage());
+            }
+        }
+
+        /**
+         * Fills the overflow policy list.
+         *
+         * @return the overflow policies.
+         */
+        public ListBoxModel doFillOverflowPolicyItems() {
+            ListBoxModel items = new ListBoxModel();
+            for (OverflowPolicy policy : OverflowPolicy.values()) {
+                items.add(policy.getDisplayName(), policy.name());
+            }
+            return items;
+        }
+
+        /**
+         * Fills the message encoder list.
+         *
+         * @return the message encoders.
+         */
+        public ListBoxModel doFillMessageEncoderItems() {
+            ListBoxModel items = new ListBoxModel();
+            for (MQMessageEncoder encoder : MQMessageEncoder.all()) {
+                items.add(encoder.getDisplayName(), encoder.getName());
+            }
+            return items;
+        }
+
+        /**
+         * Fills the transport list.
+         *
+         * @return the transports.
+         */
+        public ListBoxModel doFillTransportItems() {
+            ListBoxModel items = new ListBoxModel();
+            for (MQTransport t : MQTransport.all()) {
+                items.add(t.getDisplayName(), t.getName());
+            }
+            return items;
+        }
+
+        /**
+         * Fills the compression list.
+         *
+         * @return the compressions.
+         */
+        public ListBoxModel doFillCompressionItems() {
+            ListBoxModel items = new ListBoxModel();
+            for (Compression compression : Compression.values()) {
+                items.add(compression.getDisplayName(), compression.name());
+            }
+            return items;
+        }
+
         /**
          * Tests connection to the server URI.
          *
@@ -0,0 +1,518 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import com.rabbitmq.client.AMQP;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores data for a RabbitMQ message.
+ */
+final class MessageData {
+    private static final int SERIALIZED_OVERHEAD = 256;
+    /* The types of header values, as the AMQP client accepts them. */
+    private static final int TYPE_NULL = 0;
+    private static final int TYPE_STRING = 1;
+    private static final int TYPE_INT = 2;
+    private static final int TYPE_LONG = 3;
+    private static final int TYPE_BOOLEAN = 4;
+    private static final int TYPE_DOUBLE = 5;
+    private static final int TYPE_FLOAT = 6;
+    private static final int TYPE_SHORT = 7;
+    private static final int TYPE_BYTE = 8;
+    private static final int TYPE_DATE = 9;
+    private static final int TYPE_DECIMAL = 10;
+    private static final int TYPE_BYTES = 11;
+    private static final int TYPE_TABLE = 12;
+    private static final int TYPE_ARRAY = 13;
+
+    private final String exchange;
+    private final String routingKey;
+    private final AMQP.BasicProperties props;
+    private final byte[] body;
+    private final String partitionKey;
+    private final MessagePriority priority;
+    private final String compactionKey;
+    private long journalPosition = -1;
+    private boolean charged = false;
+    private boolean superseded = false;
+
+    /**
+     * Constructor.
+     *
+     * @param exchange the exchange to publish the message to
+     * @param routingKey the routing key
+     * @param props other properties for the message - routing headers etc
+     * @param body the message body
+     * @param partitionKey the key that decides which publisher sends the message
+     */
+    MessageData(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body,
+                String partitionKey) {
+        this(exchange, routingKey, props, body, partitionKey, MessagePriority.NORMAL, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param exchange the exchange to publish the message to
+     * @param routingKey the routing key
+     * @param props other properties for the message - routing headers etc
+     * @param body the message body
+     * @param partitionKey the key that decides which publisher sends the message
+     * @param priority the priority lane of the message
+     * @param compactionKey the key of the entity whose state the message describes, or null
+     */
+    MessageData(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body,
+                String partitionKey, MessagePriority priority, String compactionKey) {
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+        this.props = props;
+        this.body = body;
+        this.partitionKey = partitionKey;
+        this.priority = priority != null ? priority : MessagePriority.NORMAL;
+        this.compactionKey = compactionKey;
+    }
+
+    /**
+     * Gets the exchange name.
+     *
+     * @return the exchange name
+     */
+    String getExchange() {
+        return exchange;
+    }
+
+    /**
+     * Gets the routing key.
+     *
+     * @return the routing key
+     */
+    String getRoutingKey() {
+        return routingKey;
+    }
+
+    /**
+     * Gets the connection properties.
+     *
+     * @return the connection properties
+     */
+    AMQP.BasicProperties getProps() {
+        return props;
+    }
+
+    /**
+     * Gets the message body.
+     *
+     * @return the message body
+     */
+    byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * Gets the partition key.
+     * Messages with the same partition key are published in order by the same publisher.
+     *
+     * @return the partition key
+     */
+    String getPartitionKey() {
+        return partitionKey;
+    }
+
+    /**
+     * Gets the priority lane of the message.
+     *
+     * @return the priority
+     */
+    MessagePriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Gets the key of the entity whose state the message describes, e.g. a build.
+     * A queued message can be superseded by a newer message with the same key.
+     *
+     * @return the compaction key, or null if the message is never superseded
+     */
+    String getCompactionKey() {
+        return compactionKey;
+    }
+
+    /**
+     * Checks if a newer message with the same compaction key was queued before this one was published.
+     *
+     * @return true if superseded
+     */
+    synchronized boolean isSuperseded() {
+        return superseded;
+    }
+
+    /**
+     * Marks the message as superseded by a newer message with the same compaction key.
+     */
+    synchronized void setSuperseded() {
+        superseded = true;
+    }
+
+    /**
+     * Gets the position of the message in the journal.
+     *
+     * @return the journal position, or -1 if the message is not journaled
+     */
+    synchronized long getJournalPosition() {
+        return journalPosition;
+    }
+
+    /**
+     * Sets the position of the message in the journal.
+     *
+     * @param journalPosition the journal position
+     */
+    synchronized void setJournalPosition(long journalPosition) {
+        this.journalPosition = journalPosition;
+    }
+
+    /**
+     * Gets and clears the position of the message in the journal, so it is only marked as done once.
+     *
+     * @return the journal position, or -1 if the message is not journaled or already done
+     */
+    synchronized long takeJournalPosition() {
+        long position = journalPosition;
+        journalPosition = -1;
+        return position;
+    }
+
+    /**
+     * Checks if the body of the message is counted in the queued bytes of the connection.
+     *
+     * @return true if counted
+     */
+    synchronized boolean isCharged() {
+        return charged;
+    }
+
+    /**
+     * Marks the body of the message as counted in the queued bytes of the connection.
+     */
+    synchronized void setCharged() {
+        charged = true;
+    }
+
+    /**
+     * Gets and clears whether the body of the message is counted, so it is only released once.
+     *
+     * @return true if the body was counted
+     */
+    synchronized boolean takeCharged() {
+        boolean wasCharged = charged;
+        charged = false;
+        return wasCharged;
+    }
+
+    /**
+     * Serializes the message, e.g. to keep it on disk.
+     *
+     * @return the serialized message
+     * @throws IOException if the message could not be serialized
+     */
+    byte[] toBytes() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length + SERIALIZED_OVERHEAD);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeString(out, exchange);
+            writeString(out, routingKey);
+            writeString(out, partitionKey);
+            out.writeBoolean(props != null);
+            if (props != null) {
+                writeString(out, props.getAppId());
+                writeString(out, props.getContentType());
+                writeString(out, props.getContentEncoding());
+                out.writeInt(props.getDeliveryMode() != null ? props.getDeliveryMode() : -1);
+                out.writeLong(props.getTimestamp() != null ? props.getTimestamp().getTime() : -1);
+                out.writeInt(props.getPriority() != null ? props.getPriority() : -1);
+                writeString(out, props.getCorrelationId());
+                writeString(out, props.getReplyTo());
+                writeString(out, props.getExpiration());
+                writeString(out, props.getMessageId());
+                writeString(out, props.getType());
+                writeString(out, props.getUserId());
+                writeString(out, props.getClusterId());
+                writeValue(out, props.getHeaders());
+            }
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeByte(priority.ordinal());
+            writeString(out, compactionKey);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deserializes a message serialized with {@link #toBytes()}.
+     *
+     * @param payload the serialized message
+     * @return the message
+     * @throws IOException if the message could not be deserialized
+     */
+    static MessageData fromBytes(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            String exchange = readString(in);
+            String routingKey = readString(in);
+            String partitionKey = readString(in);
+            AMQP.BasicProperties props = null;
+            if (in.readBoolean()) {
+                AMQP.BasicProperties.Builder bob = new AMQP.BasicProperties.Builder();
+                bob.appId(readString(in));
+                bob.contentType(readString(in));
+                bob.contentEncoding(readString(in));
+                int deliveryMode = in.readInt();
+                if (deliveryMode >= 0) {
+                    bob.deliveryMode(deliveryMode);
+                }
+                long timestamp = in.readLong();
+                if (timestamp >= 0) {
+                    bob.timestamp(new Date(timestamp));
+                }
+                int messagePriority = in.readInt();
+                if (messagePriority >= 0) {
+                    bob.priority(messagePriority);
+                }
+                bob.correlationId(readString(in));
+                bob.replyTo(readString(in));
+                bob.expiration(readString(in));
+                bob.messageId(readString(in));
+                bob.type(readString(in));
+                bob.userId(readString(in));
+                bob.clusterId(readString(in));
+                bob.headers(readTable(in));
+                props = bob.build();
+            }
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            int ordinal = in.readUnsignedByte();
+            MessagePriority priority = ordinal < MessagePriority.values().length
+                    ? MessagePriority.values()[ordinal] : MessagePriority.NORMAL;
+            String compactionKey = readString(in);
+            return new MessageData(exchange, routingKey, props, body, partitionKey, priority, compactionKey);
+        }
+    }
+
+    /**
+     * Writes a header value, or a table or array of them. Values of other types are written as strings.
+     *
+     * @param out the stream to write to
+     * @param value the value, may be null
+     * @throws IOException if the value could not be written
+     */
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof Integer) {
+            out.writeByte(TYPE_INT);
+            out.writeInt((Integer)value);
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long)value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean)value);
+        } else if (value instanceof Double) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double)value);
+        } else if (value instanceof Float) {
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat((Float)value);
+        } else if (value instanceof Short) {
+            out.writeByte(TYPE_SHORT);
+            out.writeShort((Short)value);
+        } else if (value instanceof Byte) {
+            out.writeByte(TYPE_BYTE);
+            out.writeByte((Byte)value);
+        } else if (value instanceof Date) {
+            out.writeByte(TYPE_DATE);
+            out.writeLong(((Date)value).getTime());
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(TYPE_DECIMAL);
+            writeBytes(out, value.toString().getBytes(StandardCharsets.US_ASCII));
+        } else if (value instanceof byte[]) {
+            out.writeByte(TYPE_BYTES);
+            writeBytes(out, (byte[])value);
+        } else if (value instanceof Map) {
+            out.writeByte(TYPE_TABLE);
+            Map<?, ?> table = (Map<?, ?>)value;
+            out.writeInt(table.size());
+            for (Map.Entry<?, ?> entry : table.entrySet()) {
+                writeBytes(out, String.valueOf(entry.getKey()).getBytes(StandardCharsets.UTF_8));
+                writeValue(out, entry.getValue());
+            }
+        } else if (value instanceof List || value instanceof Object[]) {
+            out.writeByte(TYPE_ARRAY);
+            List<?> array = value instanceof List ? (List<?>)value : Arrays.asList((Object[])value);
+            out.writeInt(array.size());
+            for (Object element : array) {
+                writeValue(out, element);
+            }
+        } else {
+            // Strings, including the LongStrings of received headers.
+            out.writeByte(TYPE_STRING);
+            writeBytes(out, value.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Reads a header value written with {@link #writeValue(DataOutputStream, Object)}.
+     *
+     * @param in the stream to read from
+     * @return the value, may be null
+     * @throws IOException if the value could not be read
+     */
+    private static Object readValue(DataInputStream in) throws IOException {
+        int type = in.readUnsignedByte();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_STRING:
+                return new String(readBytes(in), StandardCharsets.UTF_8);
+            case TYPE_INT:
+                return in.readInt();
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_BOOLEAN:
+                return in.readBoolean();
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_FLOAT:
+                return in.readFloat();
+            case TYPE_SHORT:
+                return in.readShort();
+            case TYPE_BYTE:
+                return in.readByte();
+            case TYPE_DATE:
+                return new Date(in.readLong());
+            case TYPE_DECIMAL:
+                return new BigDecimal(new String(readBytes(in), StandardCharsets.US_ASCII));
+            case TYPE_BYTES:
+                return readBytes(in);
+            case TYPE_TABLE:
+                int size = in.readInt();
+                Map<String, Object> table = new LinkedHashMap<>();
+                for (int i = 0; i < size; i++) {
+                    String key = new String(readBytes(in), StandardCharsets.UTF_8);
+                    table.put(key, readValue(in));
+                }
+                return table;
+            case TYPE_ARRAY:
+                int length = in.readInt();
+                List<Object> array = new ArrayList<>(length);
+                for (int i = 0; i < length; i++) {
+                    array.add(readValue(in));
+                }
+                return array;
+            default:
+                throw new IOException("Unknown header value type " + type);
+        }
+    }
+
+    /**
+     * Reads the headers of a message.
+     *
+     * @param in the stream to read from
+     * @return the headers, or null if the message has none
+     * @throws IOException if the headers could not be read
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> readTable(DataInputStream in) throws IOException {
+        Object headers = readValue(in);
+        if (headers != null && !(headers instanceof Map)) {
+            throw new IOException("Message headers are not a table");
+        }
+        return (Map<String, Object>)headers;
+    }
+
+    /**
+     * Writes bytes preceded by their length.
+     *
+     * @param out the stream to write to
+     * @param bytes the bytes
+     * @throws IOException if the bytes could not be written
+     */
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads bytes preceded by their length.
+     *
+     * @param in the stream to read from
+     * @return the bytes
+     * @throws IOException if the bytes could not be read
+     */
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Writes a string that may be null.
+     *
+     * @param out the stream to write to
+     * @param value the string
+     * @throws IOException if the string could not be written
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * Reads a string that may be null.
+     *
+     * @param in the stream to read from
+     * @return the string
+     * @throws IOException if the string could not be read
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        if (in.readBoolean()) {
+            return in.readUTF();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import com.rabbitmq.client.AMQP;
+
+import java.util.Date;
+
+/**
+ * The parts of a published message that only change when the configuration changes: whether publishing is
+ * enabled, the exchange, the routing key and the message properties.
+ * <p>
+ * The properties are built once from a template. AMQP timestamps have a resolution of one second, so
+ * the properties with the current timestamp are shared by all messages published within the same second.
+ */
+final class MessageEnvelope {
+    private static final long MILLIS_PER_SECOND = 1000;
+    private static final int DELIVERY_MODE_NON_PERSISTENT = 1;
+    private static final int DELIVERY_MODE_PERSISTENT = 2;
+
+    private final long generation;
+    private final boolean enabled;
+    private final String exchange;
+    private final String routingKey;
+    private final AMQP.BasicProperties template;
+    private volatile Stamped stamped;
+    private volatile Stamped stampedEncoded;
+
+    /**
+     * Properties with the timestamp of one second.
+     */
+    private static final class Stamped {
+        private final long second;
+        private final String contentEncoding;
+        private final AMQP.BasicProperties props;
+
+        /**
+         * Constructor.
+         *
+         * @param second the second since the epoch
+         * @param contentEncoding the content encoding, or null
+         * @param props the properties with the timestamp of the second
+         */
+        private Stamped(long second, String contentEncoding, AMQP.BasicProperties props) {
+            this.second = second;
+            this.contentEncoding = contentEncoding;
+            this.props = props;
+        }
+    }
+
+    /**
+     * Builds the envelope from the configuration.
+     *
+     * @param config the configuration, null if not loaded, which disables publishing
+     * @param generation the generation of the configuration the envelope is built from
+     */
+    MessageEnvelope(MQNotifierConfig config, long generation) {
+        this(config, generation, Util.CONTENT_TYPE);
+    }
+
+    /**
+     * Builds the envelope from the configuration.
+     *
+     * @param config the configuration, null if not loaded, which disables publishing
+     * @param generation the generation of the configuration the envelope is built from
+     * @param contentType the content type of the encoded messages
+     */
+    MessageEnvelope(MQNotifierConfig config, long generation, String contentType) {
+        this.generation = generation;
+        this.enabled = config != null && config.isNotifierEnabled();
+        AMQP.BasicProperties.Builder bob = new AMQP.BasicProperties.Builder();
+        bob.contentType(contentType);
+        if (config != null) {
+            this.exchange = config.getExchangeName();
+            this.routingKey = config.getRoutingKey();
+            bob.appId(config.getAppId());
+            bob.deliveryMode(config.getPersistentDelivery() ? DELIVERY_MODE_PERSISTENT : DELIVERY_MODE_NON_PERSISTENT);
+        } else {
+            this.exchange = null;
+            this.routingKey = null;
+        }
+        this.template = bob.build();
+    }
+
+    /**
+     * Gets the generation of the configuration the envelope was built from.
+     *
+     * @return the generation
+     */
+    long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Gets whether publishing is enabled.
+     *
+     * @return true if enabled
+     */
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Gets the exchange to publish to.
+     *
+     * @return the exchange name
+     */
+    String getExchange() {
+        return exchange;
+    }
+
+    /**
+     * Gets the routing key to publish with.
+     *
+     * @return the routing key
+     */
+    String getRoutingKey() {
+        return routingKey;
+    }
+
+    /**
+     * Gets the message properties, with the current time as timestamp.
+     *
+     * @return the properties
+     */
+    AMQP.BasicProperties getProperties() {
+        long second = System.currentTimeMillis() / MILLIS_PER_SECOND;
+        Stamped current = stamped;
+        if (current == null || current.second != second) {
+            current = new Stamped(second, null,
+                    template.builder().timestamp(new Date(second * MILLIS_PER_SECOND)).build());
+            stamped = current;
+        }
+        return current.props;
+    }
+
+    /**
+     * Gets the message properties of an encoded body, with the current time as timestamp.
+     *
+     * @param contentEncoding the content encoding of the body, e.g. gzip, or null if not encoded
+     * @return the properties
+     */
+    AMQP.BasicProperties getProperties(String contentEncoding) {
+        if (contentEncoding == null) {
+            return getProperties();
+        }
+        long second = System.currentTimeMillis() / MILLIS_PER_SECOND;
+        Stamped current = stampedEncoded;
+        if (current == null || current.second != second || !contentEncoding.equals(current.contentEncoding)) {
+            current = new Stamped(second, contentEncoding, template.builder().contentEncoding(contentEncoding)
+                    .timestamp(new Date(second * MILLIS_PER_SECOND)).build());
+            stampedEncoded = current;
+        }
+        return current.props;
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * A crash-safe, segmented, memory-mapped append-only journal of messages that are not yet confirmed by the broker.
+ * <p>
+ * Each message is appended before it is queued and marked as done when the broker confirms it. Messages that
+ * are not done when Jenkins stops are read back with {@link #open()} and published again. Segments where
+ * every message is done are deleted by {@link #compact()}.
+ * <p>
+ * A record is a header of length, CRC and status followed by the serialized message. The length is written
+ * last, so a record that was torn by a crash is detected and ignored.
+ */
+final class MessageJournal {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageJournal.class);
+    /** The default size of a segment file. */
+    static final int SEGMENT_SIZE = 32 * 1024 * 1024;
+    private static final int HEADER_SIZE = 9;
+    private static final int CRC_OFFSET = 4;
+    private static final int STATUS_OFFSET = 8;
+    private static final byte STATUS_PENDING = 0;
+    private static final byte STATUS_DONE = 1;
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".seg";
+    private static final int SEGMENT_ID_BITS = 32;
+    private static final long OFFSET_MASK = 0xFFFFFFFFL;
+
+    private final File directory;
+    private final int segmentSize;
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+    private Segment active;
+
+    /**
+     * A memory-mapped segment file.
+     */
+    private static final class Segment {
+        private final int id;
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private final AtomicInteger pending = new AtomicInteger();
+        private int writePosition = 0;
+        private volatile boolean sealed = false;
+
+        /**
+         * Maps a segment file, creating it if needed.
+         *
+         * @param id the segment id
+         * @param file the segment file
+         * @param size the size of a new segment
+         * @throws IOException if the file could not be mapped
+         */
+        private Segment(int id, File file, int size) throws IOException {
+            this.id = id;
+            this.file = file;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                long length = Math.max(raf.length(), size);
+                raf.setLength(length);
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            }
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param directory the directory to keep the segment files in
+     * @param segmentSize the size of a segment file
+     */
+    MessageJournal(File directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Gets the journal directory.
+     *
+     * @return the directory
+     */
+    File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Opens the journal and reads back the messages that were never confirmed.
+     *
+     * @return the messages to publish again, in the order they were appended
+     * @throws IOException if the journal could not be opened
+     */
+    synchronized List<MessageData> open() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create journal directory " + directory);
+        }
+        List<MessageData> replay = new ArrayList<>();
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        int nextId = 0;
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                int id;
+                try {
+                    id = Integer.parseInt(file.getName().substring(PREFIX.length(),
+                            file.getName().length() - SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    LOGGER.warn("Ignoring unknown file in journal directory: " + file);
+                    continue;
+                }
+                Segment segment = new Segment(id, file, 0);
+                segment.sealed = true;
+                readPending(segment, replay);
+                segments.put(id, segment);
+                nextId = Math.max(nextId, id + 1);
+            }
+        }
+        active = createSegment(nextId, segmentSize);
+        compact();
+        if (!replay.isEmpty()) {
+            LOGGER.info("Replaying " + replay.size() + " unconfirmed messages from the journal.");
+        }
+        return replay;
+    }
+
+    /**
+     * Reads the pending records of a segment.
+     *
+     * @param segment the segment
+     * @param replay the list to add pending messages to
+     */
+    private void readPending(Segment segment, List<MessageData> replay) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = 0;
+        while (position + HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + HEADER_SIZE + length > buffer.capacity()) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            ByteBuffer record = buffer.duplicate();
+            record.position(position + HEADER_SIZE);
+            record.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int)crc.getValue() != buffer.getInt(position + CRC_OFFSET)) {
+                LOGGER.warn("Ignoring torn record in journal segment " + segment.file);
+                break;
+            }
+            if (buffer.get(position + STATUS_OFFSET) == STATUS_PENDING) {
+                try {
+                    MessageData messageData = MessageData.fromBytes(payload);
+                    messageData.setJournalPosition(toPosition(segment.id, position));
+                    segment.pending.incrementAndGet();
+                    replay.add(messageData);
+                } catch (IOException e) {
+                    LOGGER.warn("Ignoring unreadable record in journal segment " + segment.file, e);
+                }
+            }
+            position += HEADER_SIZE + length;
+        }
+        segment.writePosition = position;
+    }
+
+    /**
+     * Appends a message to the journal and records its position in the message.
+     *
+     * @param messageData the message
+     * @throws IOException if the message could not be written
+     */
+    void append(MessageData messageData) throws IOException {
+        byte[] payload = messageData.toBytes();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        int recordSize = HEADER_SIZE + payload.length;
+        synchronized (this) {
+            if (active == null) {
+                throw new IOException("The journal is closed");
+            }
+            // Keep room for a zero length after the record, that marks the end of the segment.
+            if (active.writePosition + recordSize + HEADER_SIZE > active.buffer.capacity()) {
+                active.sealed = true;
+                active = createSegment(active.id + 1, Math.max(segmentSize, recordSize + HEADER_SIZE));
+            }
+            Segment segment = active;
+            int position = segment.writePosition;
+            MappedByteBuffer buffer = segment.buffer;
+            ByteBuffer record = buffer.duplicate();
+            record.position(position + HEADER_SIZE);
+            record.put(payload);
+            buffer.putInt(position + CRC_OFFSET, (int)crc.getValue());
+            buffer.put(position + STATUS_OFFSET, STATUS_PENDING);
+            buffer.putInt(position, payload.length);
+            segment.writePosition = position + recordSize;
+            segment.pending.incrementAndGet();
+            messageData.setJournalPosition(toPosition(segment.id, position));
+        }
+    }
+
+    /**
+     * Marks a message as done, so it is not published again after a restart.
+     *
+     * @param messageData the message
+     */
+    void markDone(MessageData messageData) {
+        long journalPosition = messageData.takeJournalPosition();
+        if (journalPosition < 0) {
+            return;
+        }
+        Segment segment = segments.get((int)(journalPosition >>> SEGMENT_ID_BITS));
+        if (segment != null) {
+            int position = (int)(journalPosition & OFFSET_MASK);
+            segment.buffer.put(position + STATUS_OFFSET, STATUS_DONE);
+            segment.pending.decrementAndGet();
+        }
+    }
+
+    /**
+     * Flushes the active segment to disk and deletes sealed segments where every message is done.
+     */
+    void compact() {
+        Segment current;
+        synchronized (this) {
+            current = active;
+        }
+        if (current != null) {
+            current.buffer.force();
+        }
+        for (Segment segment : segments.values()) {
+            if (segment.sealed && segment.pending.get() <= 0) {
+                segments.remove(segment.id);
+                if (!segment.file.delete()) {
+                    LOGGER.warn("Could not delete journal segment " + segment.file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Flushes and closes the journal. Messages that are not done are kept for the next {@link #open()}.
+     */
+    synchronized void close() {
+        for (Segment segment : segments.values()) {
+            segment.buffer.force();
+        }
+        segments.clear();
+        active = null;
+    }
+
+    /**
+     * Creates and maps a new segment.
+     *
+     * @param id the segment id
+     * @param size the segment size
+     * @return the segment
+     * @throws IOException if the segment could not be created
+     */
+    private Segment createSegment(int id, int size) throws IOException {
+        Segment segment = new Segment(id, new File(directory, String.format("%s%010d%s", PREFIX, id, SUFFIX)), size);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    /**
+     * Combines a segment id and an offset into a journal position.
+     *
+     * @param segmentId the segment id
+     * @param offset the offset in the segment
+     * @return the journal position
+     */
+    private static long toPosition(int segmentId, int offset) {
+        return ((long)segmentId << SEGMENT_ID_BITS) | (offset & OFFSET_MASK);
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+/**
+ * The priority lane of a message. Lanes are drained in weighted round-robin, highest priority first,
+ * so higher priorities get a larger share of the throughput while lower priorities still make progress.
+ */
+public enum MessagePriority {
+    /** High priority, e.g. build started and completed events. */
+    HIGH(8),
+    /** Normal priority, used for messages without a configured priority. */
+    NORMAL(4),
+    /** Low priority, e.g. queue events. */
+    LOW(1);
+
+    private final int weight;
+
+    /**
+     * Constructor.
+     *
+     * @param weight the number of messages taken from the lane per round
+     */
+    MessagePriority(int weight) {
+        this.weight = weight;
+    }
+
+    /**
+     * Gets the number of messages taken from the lane in each round of draining.
+     *
+     * @return the weight
+     */
+    int getWeight() {
+        return weight;
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free multi-producer/single-consumer ring buffer.
+ * <p>
+ * Producers never block or take a lock, so handing a message over from a Jenkins thread
+ * costs a few atomic operations regardless of contention. All entries are preallocated.
+ * Only one thread at a time may wait for entries, but any thread may remove the oldest entry
+ * with {@link #poll()}, e.g. to make room for a newer one.
+ *
+ * @param <E> the type of the entries
+ */
+final class MpscRingBuffer<E> {
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final int size;
+    /* size - 1 if the size is a power of two, so that slots are found with a mask instead of a division. */
+    private final int mask;
+    private final AtomicReferenceArray<E> entries;
+    /* The sequence of each slot tells whether it is free for the producer or filled for the consumer. */
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    private volatile Thread consumer;
+    private volatile boolean consumerWaiting = false;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity the minimum capacity, rounded up to the next power of two
+     */
+    MpscRingBuffer(int capacity) {
+        this(capacity, true);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param capacity the capacity, at least two
+     * @param roundUp true to round the capacity up to the next power of two, which is slightly faster,
+     *                false to preallocate exactly the capacity
+     */
+    MpscRingBuffer(int capacity, boolean roundUp) {
+        // The sequence of a slot cannot tell free from filled with fewer than two slots.
+        int slots = Math.max(2, Math.min(capacity, MAX_CAPACITY));
+        if (roundUp) {
+            slots = 2;
+            while (slots < capacity && slots < MAX_CAPACITY) {
+                slots <<= 1;
+            }
+        }
+        size = slots;
+        mask = Integer.bitCount(slots) == 1 ? slots - 1 : -1;
+        entries = new AtomicReferenceArray<>(slots);
+        sequences = new AtomicLongArray(slots);
+        for (int i = 0; i < slots; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Gets the slot of a position.
+     *
+     * @param pos the position
+     * @return the index of the slot
+     */
+    private int slot(long pos) {
+        return mask >= 0 ? (int)(pos & mask) : (int)(pos % size);
+    }
+
+    /**
+     * Gets the capacity.
+     *
+     * @return the number of entries the buffer can hold
+     */
+    int capacity() {
+        return size;
+    }
+
+    /**
+     * Adds an entry if there is room. May be called from any thread.
+     *
+     * @param entry the entry, must not be null
+     * @return true if added, false if the buffer is full
+     */
+    boolean offer(E entry) {
+        long pos = tail.get();
+        int index;
+        while (true) {
+            index = slot(pos);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+        entries.lazySet(index, entry);
+        sequences.set(index, pos + 1);
+        if (consumerWaiting) {
+            Thread waiting = consumer;
+            if (waiting != null) {
+                LockSupport.unpark(waiting);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the oldest entry. May be called from any thread.
+     *
+     * @return the entry, or null if the buffer is empty
+     */
+    E poll() {
+        long pos = head.get();
+        int index;
+        while (true) {
+            index = slot(pos);
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = head.get();
+            } else if (diff < 0) {
+                return null;
+            } else {
+                pos = head.get();
+            }
+        }
+        E entry = entries.get(index);
+        entries.lazySet(index, null);
+        sequences.set(index, pos + size);
+        return entry;
+    }
+
+    /**
+     * Removes the oldest entry, waiting for one to be added if the buffer is empty.
+     * Must only be called by the consumer.
+     *
+     * @param timeout how long to wait
+     * @param unit the unit of the timeout
+     * @return the entry, or null if none was added in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        E entry = poll();
+        if (entry != null) {
+            return entry;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        consumer = Thread.currentThread();
+        try {
+            while (true) {
+                consumerWaiting = true;
+                entry = poll();
+                if (entry != null) {
+                    return entry;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            consumerWaiting = false;
+        }
+    }
+
+    /**
+     * Removes up to the given number of entries and adds them to the collection.
+     * Must only be called by the consumer.
+     *
+     * @param collection the collection to add the entries to
+     * @param maxEntries the maximum number of entries to remove
+     * @return the number of entries removed
+     */
+    int drainTo(Collection<? super E> collection, int maxEntries) {
+        int count = 0;
+        while (count < maxEntries) {
+            E entry = poll();
+            if (entry == null) {
+                break;
+            }
+            collection.add(entry);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Removes all entries and adds them to the collection.
+     * Must only be called by the consumer.
+     *
+     * @param collection the collection to add the entries to
+     * @return the number of entries removed
+     */
+    int drainTo(Collection<? super E> collection) {
+        return drainTo(collection, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets the number of entries, which is only an estimate while entries are added or removed.
+     *
+     * @return the number of entries
+     */
+    int size() {
+        long size = tail.get() - head.get();
+        return (int)Math.max(0, Math.min(size, capacity()));
+    }
+
+    /**
+     * Checks if the buffer is empty, which is only an estimate while entries are added or removed.
+     *
+     * @return true if there are no entries
+     */
+    boolean isEmpty() {
+        return size() == 0;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+/**
+ * What to do with a message when the message queue of its publisher is full.
+ */
+public enum OverflowPolicy {
+    /** Drop the new message. */
+    DROP_NEWEST("Drop the newest message"),
+    /** Drop the oldest queued message to make room for the new one. */
+    DROP_OLDEST("Drop the oldest message"),
+    /** Block the caller until there is room, and drop the new message if the timeout passes. */
+    BLOCK("Block the caller with a timeout"),
+    /** Write the new message to a file on local disk and publish it when the queue has drained. */
+    SPILL_TO_DISK("Spill to local disk");
+
+    private final String displayName;
+
+    /**
+     * Constructor.
+     *
+     * @param displayName the name shown in the configuration
+     */
+    OverflowPolicy(String displayName) {
+        this.displayName = displayName;
+    }
+
+    /**
+     * Gets the name shown in the configuration.
+     *
+     * @return the display name
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A message queue with one bounded lane per {@link MessagePriority}.
+ * The capacity of the queue is split equally between the lanes, and only that much is preallocated.
+ * <p>
+ * Any thread may add messages. Messages are taken by a single consumer in weighted round-robin:
+ * up to {@link MessagePriority#getWeight()} messages from a lane before moving on to the next,
+ * so a busy low priority lane never delays high priority messages for long and still makes progress itself.
+ * Messages keep their order within a lane, but not across lanes.
+ */
+final class PriorityLanes {
+    private static final MessagePriority[] PRIORITIES = MessagePriority.values();
+
+    private final MpscRingBuffer<MessageData>[] lanes;
+    private final int laneCapacity;
+
+    private volatile Thread consumer;
+    private volatile boolean consumerWaiting = false;
+
+    /* Round-robin state, only used by the consumer. */
+    private int currentLane = 0;
+    private int credit = PRIORITIES[0].getWeight();
+
+    /**
+     * Constructor.
+     *
+     * @param capacity the capacity of the queue, split between the lanes
+     */
+    @SuppressWarnings("unchecked")
+    PriorityLanes(int capacity) {
+        laneCapacity = Math.max(1, (capacity + PRIORITIES.length - 1) / PRIORITIES.length);
+        lanes = new MpscRingBuffer[PRIORITIES.length];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new MpscRingBuffer<>(laneCapacity, false);
+        }
+    }
+
+    /**
+     * Adds a message to the lane for its priority if there is room. May be called from any thread.
+     *
+     * @param messageData the message
+     * @return true if added, false if the lane is full
+     */
+    boolean offer(MessageData messageData) {
+        if (!lanes[messageData.getPriority().ordinal()].offer(messageData)) {
+            return false;
+        }
+        if (consumerWaiting) {
+            Thread waiting = consumer;
+            if (waiting != null) {
+                LockSupport.unpark(waiting);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the oldest message that may be dropped to make room for a new message. May be called from any thread.
+     * If the lane of the new message is full, its oldest message is removed. Otherwise, the oldest message of
+     * the lowest priority lane that is not higher than the new message is removed.
+     *
+     * @param incoming the new message
+     * @return the removed message, or null if there is nothing that may be dropped
+     */
+    MessageData pollOldest(MessageData incoming) {
+        int own = incoming.getPriority().ordinal();
+        if (lanes[own].size() >= laneCapacity) {
+            return lanes[own].poll();
+        }
+        for (int i = lanes.length - 1; i >= own; i--) {
+            MessageData oldest = lanes[i].poll();
+            if (oldest != null) {
+                return oldest;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes the next message in weighted round-robin order. Must only be called by the consumer.
+     *
+     * @return the message, or null if all lanes are empty
+     */
+    MessageData poll() {
+        int emptyLanes = 0;
+        while (emptyLanes < lanes.length) {
+            if (credit <= 0) {
+                currentLane = (currentLane + 1) % lanes.length;
+                credit = PRIORITIES[currentLane].getWeight();
+            }
+            MessageData messageData = lanes[currentLane].poll();
+            if (messageData != null) {
+                credit--;
+                return messageData;
+            }
+            credit = 0;
+            emptyLanes++;
+        }
+        return null;
+    }
+
+    /**
+     * Removes the next message, waiting for one to be added if all lanes are empty.
+     * Must only be called by the consumer.
+     *
+     * @param timeout how long to wait
+     * @param unit the unit of the timeout
+     * @return the message, or null if none was added in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    MessageData poll(long timeout, TimeUnit unit) throws InterruptedException {
+        MessageData messageData = poll();
+        if (messageData != null) {
+            return messageData;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        consumer = Thread.currentThread();
+        try {
+            while (true) {
+                consumerWaiting = true;
+                messageData = poll();
+                if (messageData != null) {
+                    return messageData;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            consumerWaiting = false;
+        }
+    }
+
+    /**
+     * Removes up to the given number of messages in weighted round-robin order and adds them to the collection.
+     * Must only be called by the consumer.
+     *
+     * @param collection the collection to add the messages to
+     * @param maxMessages the maximum number of messages to remove
+     * @return the number of messages removed
+     */
+    int drainTo(Collection<? super MessageData> collection, int maxMessages) {
+        int count = 0;
+        while (count < maxMessages) {
+            MessageData messageData = poll();
+            if (messageData == null) {
+                break;
+            }
+            collection.add(messageData);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Removes all messages and adds them to the collection. Must only be called by the consumer.
+     *
+     * @param collection the collection to add the messages to
+     * @return the number of messages removed
+     */
+    int drainTo(Collection<? super MessageData> collection) {
+        return drainTo(collection, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets the number of messages in all lanes, which is only an estimate while messages are added or removed.
+     *
+     * @return the number of messages
+     */
+    int size() {
+        int size = 0;
+        for (MpscRingBuffer<MessageData> lane : lanes) {
+            size += lane.size();
+        }
+        return size;
+    }
+
+    /**
+     * Gets the number of messages in one lane, which is only an estimate while messages are added or removed.
+     *
+     * @param priority the priority of the lane
+     * @return the number of messages
+     */
+    int size(MessagePriority priority) {
+        return lanes[priority.ordinal()].size();
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.providers.EventType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps latency histograms of each data provider per event type, and suspends providers that are too slow.
+ * <p>
+ * The time budget is not a timeout: it is checked after a call has returned. A call that went over
+ * the budget is counted, and the provider is skipped for that event type until the suspension time has passed.
+ */
+public final class ProviderTimings {
+    /** The number of histogram buckets. Bucket i holds the calls that took less than 2^i microseconds. */
+    public static final int BUCKETS = 32;
+    /** The default time a provider is skipped after going over its budget. */
+    static final long DEFAULT_SUSPEND_MILLIS = 60000;
+
+    private static final ProviderTimings INSTANCE = new ProviderTimings();
+    private static final int BITS_PER_LONG = 64;
+
+    private final Map<String, Timing[]> timings = new ConcurrentHashMap<>();
+    private volatile long budgetNanos = 0;
+    private volatile long suspendNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SUSPEND_MILLIS);
+
+    /**
+     * The calls of one provider for one event type.
+     */
+    public static final class Timing {
+        private final String providerName;
+        private final EventType eventType;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLong overBudgetCount = new AtomicLong();
+        private final AtomicLong skippedCount = new AtomicLong();
+        private volatile long suspendedUntil;
+        private volatile boolean suspended = false;
+
+        /**
+         * Constructor.
+         *
+         * @param providerName the class name of the provider
+         * @param eventType the event type
+         */
+        private Timing(String providerName, EventType eventType) {
+            this.providerName = providerName;
+            this.eventType = eventType;
+        }
+
+        /**
+         * Gets the class name of the provider.
+         *
+         * @return the provider name
+         */
+        public String getProviderName() {
+            return providerName;
+        }
+
+        /**
+         * Gets the event type.
+         *
+         * @return the event type
+         */
+        public EventType getEventType() {
+            return eventType;
+        }
+
+        /**
+         * Gets the number of calls.
+         *
+         * @return the number of calls
+         */
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * Gets the total time of all calls.
+         *
+         * @return the total time in nanoseconds
+         */
+        public long getTotalNanos() {
+            return totalNanos.get();
+        }
+
+        /**
+         * Gets the time of the slowest call.
+         *
+         * @return the maximum time in nanoseconds
+         */
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        /**
+         * Gets the number of calls that went over the budget, and whose data was dropped.
+         *
+         * @return the number of calls over the budget
+         */
+        public long getOverBudgetCount() {
+            return overBudgetCount.get();
+        }
+
+        /**
+         * Gets the number of events the provider was skipped for, because it had gone over the budget.
+         *
+         * @return the number of skipped events
+         */
+        public long getSkippedCount() {
+            return skippedCount.get();
+        }
+
+        /**
+         * Gets the number of calls in a histogram bucket.
+         *
+         * @param bucket the bucket, holding the calls that took less than 2^bucket microseconds
+         * @return the number of calls
+         */
+        public long getBucketCount(int bucket) {
+            return buckets.get(bucket);
+        }
+
+        /**
+         * Gets an upper bound of a percentile of the call times, with the resolution of the histogram.
+         *
+         * @param percentile the percentile, e.g. 99
+         * @return the upper bound in microseconds, or 0 if there have been no calls
+         */
+        public long getPercentileMicros(double percentile) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += buckets.get(i);
+            }
+            long rank = (long)Math.ceil(total * Math.min(percentile, 100.0) / 100.0);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen > 0 && seen >= rank) {
+                    return 1L << i;
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Checks if the provider is skipped, and counts the skip if it is.
+         *
+         * @param now the current {@link System#nanoTime()}
+         * @return true if the provider should be skipped
+         */
+        boolean skip(long now) {
+            if (!suspended) {
+                return false;
+            }
+            if (now - suspendedUntil >= 0) {
+                suspended = false;
+                return false;
+            }
+            skippedCount.incrementAndGet();
+            return true;
+        }
+
+        /**
+         * Records a call.
+         *
+         * @param nanos the time of the call
+         * @param now the current {@link System#nanoTime()}
+         * @param budget the budget in nanoseconds, 0 or less for no budget
+         * @param suspend the time in nanoseconds to skip the provider if the call went over the budget
+         * @return true if the call went over the budget
+         */
+        boolean record(long nanos, long now, long budget, long suspend) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+            int bucket = Math.min(BITS_PER_LONG - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+            buckets.incrementAndGet(bucket);
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            if (budget <= 0 || nanos <= budget) {
+                return false;
+            }
+            overBudgetCount.incrementAndGet();
+            suspendedUntil = now + suspend;
+            suspended = true;
+            return true;
+        }
+    }
+
+    /**
+     * Constructor, use {@link #getInstance()} outside of tests.
+     */
+    ProviderTimings() {
+    }
+
+    /**
+     * Gets the instance.
+     *
+     * @return the instance
+     */
+    public static ProviderTimings getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the time budget of a provider call.
+     *
+     * @return the budget in milliseconds, 0 for no budget
+     */
+    public long getBudgetMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(budgetNanos);
+    }
+
+    /**
+     * Sets the time budget of a provider call.
+     *
+     * @param budgetMillis the budget in milliseconds, 0 or less for no budget
+     */
+    void setBudgetMillis(long budgetMillis) {
+        budgetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, budgetMillis));
+    }
+
+    /**
+     * Gets the time budget of a provider call.
+     *
+     * @return the budget in nanoseconds, 0 for no budget
+     */
+    long getBudgetNanos() {
+        return budgetNanos;
+    }
+
+    /**
+     * Sets the time a provider is skipped after going over its budget.
+     *
+     * @param suspendMillis the time in milliseconds
+     */
+    void setSuspendMillis(long suspendMillis) {
+        suspendNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, suspendMillis));
+    }
+
+    /**
+     * Gets the time a provider is skipped after going over its budget.
+     *
+     * @return the time in nanoseconds
+     */
+    long getSuspendNanos() {
+        return suspendNanos;
+    }
+
+    /**
+     * Gets the timing of a provider for an event type, creating it if needed.
+     *
+     * @param providerName the class name of the provider
+     * @param eventType the event type
+     * @return the timing
+     */
+    Timing getTiming(String providerName, EventType eventType) {
+        Timing[] byType = timings.computeIfAbsent(providerName, name -> {
+            Timing[] created = new Timing[EventType.values().length];
+            for (EventType type : EventType.values()) {
+                created[type.ordinal()] = new Timing(name, type);
+            }
+            return created;
+        });
+        return byType[eventType.ordinal()];
+    }
+
+    /**
+     * Gets the timings of all providers that have been called.
+     *
+     * @return the timings, one per provider and event type
+     */
+    public List<Timing> getTimings() {
+        List<Timing> list = new ArrayList<>();
+        for (Timing[] byType : timings.values()) {
+            for (Timing timing : byType) {
+                if (timing.getCount() > 0 || timing.getSkippedCount() > 0) {
+                    list.add(timing);
+                }
+            }
+        }
+        return list;
+    }
+}
@@ -23,7 +23,8 @@
  */
 package com.sonymobile.jenkins.plugins.mq.mqnotifier;
 
-import com.sonymobile.jenkins.plugins.mq.mqnotifier.providers.MQDataProvider;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.providers.EventSnapshot;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.providers.EventType;
 import hudson.Extension;
 import hudson.model.Label;
 import hudson.model.Queue;
@@ -58,10 +59,11 @@ public class QueueListenerImpl extends QueueListener {
         JSONObject json = new JSONObject();
         json.put(Util.KEY_STATE, Util.VALUE_ADDED_TO_QUEUE);
         populateCommon(json, wi);
-        for (MQDataProvider mqDataProvider : MQDataProvider.all()) {
-            mqDataProvider.provideEnterWaitingQueueData(wi, json);
-        }
-        MQConnection.getInstance().publish(json);
+        String key = Util.getCompactionKey(wi);
+        EnrichmentPool.getInstance().enrich(EventType.QUEUE_ENTERED, Util.getFullName(wi.task),
+                () -> EventSnapshot.of(EventType.QUEUE_ENTERED, wi), json,
+                (provider, j) -> provider.provideEnterWaitingQueueData(wi, j), null,
+                (j, body) -> MQConnection.getInstance().publish(j, key));
     }
 
     @Override
@@ -75,10 +77,10 @@ public class QueueListenerImpl extends QueueListener {
             json.put(Util.KEY_DEQUEUE_TIME_SPENT, System.currentTimeMillis() - li.getInQueueSince());
         }
         populateCommon(json, li);
-
-        for (MQDataProvider mqDataProvider : MQDataProvider.all()) {
-            mqDataProvider.provideLeftQueueData(li, json);
-        }
-        MQConnection.getInstance().publish(json);
+        String key = Util.getCompactionKey(li);
+        EnrichmentPool.getInstance().enrich(EventType.QUEUE_LEFT, Util.getFullName(li.task),
+                () -> EventSnapshot.of(EventType.QUEUE_LEFT, li), json,
+                (provider, j) -> provider.provideLeftQueueData(li, j), null,
+                (j, body) -> MQConnection.getInstance().publish(j, key));
     }
 }
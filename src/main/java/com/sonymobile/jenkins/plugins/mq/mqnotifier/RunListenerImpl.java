@@ -23,6 +23,8 @@
  */
 package com.sonymobile.jenkins.plugins.mq.mqnotifier;
 
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.providers.EventSnapshot;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.providers.EventType;
 import com.sonymobile.jenkins.plugins.mq.mqnotifier.providers.MQDataProvider;
 import hudson.Extension;
 import hudson.model.AbstractBuild;
@@ -32,6 +34,9 @@ import hudson.model.TaskListener;
 import hudson.model.listeners.RunListener;
 import net.sf.json.JSONObject;
 
+import java.nio.charset.StandardCharsets;
+import java.util.function.BiConsumer;
+
 
 /**
  * Receives notifications about builds and publish messages on configured MQ server.
@@ -49,10 +54,22 @@ public class RunListenerImpl extends RunListener<Run> {
 
     private  MQNotifierConfig config = MQNotifierConfig.getInstance();
 
-    private void logMessage(JSONObject message, TaskListener listener) {
-        if (this.config.isVerboseLoggingEnabled()) {
-            listener.getLogger().println("Posting JSON message to RabbitMQ:\n" + message.toString(2));
+    /**
+     * Logs a message to the build log if verbose logging is enabled. A logged message is encoded once,
+     * and the same bytes are logged and published.
+     *
+     * @param json the message.
+     * @param listener the build listener to log to, or null.
+     * @return the encoded message if it was logged, null otherwise.
+     */
+    private byte[] log(JSONObject json, TaskListener listener) {
+        if (listener == null || !this.config.isVerboseLoggingEnabled()) {
+            return null;
         }
+        byte[] body = JsonEncoder.encode(json);
+        listener.getLogger().println("Posting JSON message to RabbitMQ:\n"
+                + new String(body, StandardCharsets.UTF_8));
+        return body;
     }
 
     /**
@@ -87,29 +104,40 @@ public class RunListenerImpl extends RunListener<Run> {
             status = res.toString();
         }
         json.put(Util.KEY_STATUS, status);
-        for (MQDataProvider mqDataProvider : MQDataProvider.all()) {
-            mqDataProvider.provideCompletedRunData(r, json);
-        }
         return json;
     }
 
+    /**
+     * Lets the providers add to a message and publishes it on a worker thread. If the message
+     * is logged to the build log, it is logged before this returns.
+     *
+     * @param r the current Jenkins run.
+     * @param eventType the event type, or null if no providers add data to it.
+     * @param json the base message.
+     * @param hook calls the provider method for the event.
+     * @param listener the build listener to log to, or null.
+     */
+    private void enrichAndPublish(Run r, EventType eventType, JSONObject json,
+                                  BiConsumer<MQDataProvider, JSONObject> hook, TaskListener listener) {
+        String key = Util.getCompactionKey(r);
+        EnrichmentPool.getInstance().enrich(eventType, r.getParent().getFullName(),
+                () -> EventSnapshot.of(eventType, r), json, hook, j -> log(j, listener),
+                (j, body) -> MQConnection.getInstance().publish(j, body, key));
+    }
+
 
     @Override
     public void onStarted(Run r, TaskListener listener) {
         JSONObject json = createBaseMessage(r, Util.VALUE_STARTED);
-        for (MQDataProvider mqDataProvider : MQDataProvider.all()) {
-            mqDataProvider.provideStartRunData(r, json);
-        }
-        logMessage(json, listener);
-        MQConnection.getInstance().publish(json);
+        enrichAndPublish(r, EventType.RUN_STARTED, json, (provider, j) -> provider.provideStartRunData(r, j), listener);
     }
 
     @Override
     public void onCompleted(Run r, TaskListener listener) {
         if (r instanceof AbstractBuild) {
             JSONObject json = createDoneMessage(r);
-            logMessage(json, listener);
-            MQConnection.getInstance().publish(json);
+            enrichAndPublish(r, EventType.RUN_COMPLETED, json,
+                    (provider, j) -> provider.provideCompletedRunData(r, j), listener);
         }
     }
 
@@ -117,7 +145,8 @@ public class RunListenerImpl extends RunListener<Run> {
     public void onFinalized(Run r) {
         if (!(r instanceof AbstractBuild)) {
             JSONObject json = createDoneMessage(r);
-            MQConnection.getInstance().publish(json);
+            enrichAndPublish(r, EventType.RUN_COMPLETED, json,
+                    (provider, j) -> provider.provideCompletedRunData(r, j), null);
         }
     }
 
@@ -128,7 +157,8 @@ public class RunListenerImpl extends RunListener<Run> {
             // https://issues.jenkins-ci.org/browse/JENKINS-26708
             JSONObject json = createBaseMessage(r, Util.VALUE_DELETED);
             json.put(Util.KEY_STATUS, Util.VALUE_DELETED);
-            MQConnection.getInstance().publish(json);
+            // No providers add data, but it goes through the pool so that it is published after the earlier events.
+            enrichAndPublish(r, null, json, (provider, j) -> { }, null);
         }
     }
 }
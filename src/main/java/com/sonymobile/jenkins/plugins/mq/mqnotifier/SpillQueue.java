@@ -0,0 +1,231 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A first-in-first-out queue of messages kept in a file on local disk, used when the message queue overflows.
+ * <p>
+ * The file is created when the first message is added and deleted when the queue has been drained,
+ * so nothing is kept on disk while the message queue keeps up. The file starts with the position of
+ * the first message that has not been read yet, so that a file left behind by a previous run can be
+ * {@link #replayStale(File[], Consumer) replayed} from there.
+ */
+final class SpillQueue {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpillQueue.class);
+    /** The suffix of spill files. */
+    static final String SUFFIX = ".spill";
+    private static final int HEADER_SIZE = 12;
+    /* The read position at the start of the file. */
+    private static final int FILE_HEADER_SIZE = 8;
+
+    private final File directory;
+    private final String prefix;
+    private final AtomicInteger size = new AtomicInteger();
+    private File file;
+    private RandomAccessFile raf;
+    private long readPosition = FILE_HEADER_SIZE;
+    private long writePosition = FILE_HEADER_SIZE;
+
+    /**
+     * Constructor.
+     *
+     * @param directory the directory to create the spill file in
+     * @param prefix the prefix of the spill file name
+     */
+    SpillQueue(File directory, String prefix) {
+        this.directory = directory;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Gets the number of messages in the queue.
+     *
+     * @return the number of messages
+     */
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Checks if the queue is empty.
+     *
+     * @return true if there are no messages
+     */
+    boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    /**
+     * Adds a message last in the queue.
+     *
+     * @param messageData the message
+     * @throws IOException if the message could not be written
+     */
+    synchronized void add(MessageData messageData) throws IOException {
+        byte[] payload = messageData.toBytes();
+        if (raf == null) {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create spill directory " + directory);
+            }
+            file = File.createTempFile(prefix, SUFFIX, directory);
+            raf = new RandomAccessFile(file, "rw");
+            raf.writeLong(readPosition);
+        }
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        record.putLong(messageData.getJournalPosition());
+        record.putInt(payload.length);
+        record.put(payload);
+        raf.seek(writePosition);
+        raf.write(record.array());
+        writePosition += record.capacity();
+        size.incrementAndGet();
+    }
+
+    /**
+     * Removes up to the given number of messages, oldest first, and adds them to the collection.
+     *
+     * @param collection the collection to add the messages to
+     * @param maxMessages the maximum number of messages to remove
+     * @return the number of messages removed
+     * @throws IOException if the messages could not be read
+     */
+    synchronized int drainTo(Collection<? super MessageData> collection, int maxMessages) throws IOException {
+        int count = 0;
+        byte[] header = new byte[HEADER_SIZE];
+        while (count < maxMessages && readPosition < writePosition) {
+            raf.seek(readPosition);
+            raf.readFully(header);
+            ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+            long journalPosition = headerBuffer.getLong();
+            byte[] payload = new byte[headerBuffer.getInt()];
+            raf.readFully(payload);
+            readPosition += HEADER_SIZE + payload.length;
+            size.decrementAndGet();
+            MessageData messageData = MessageData.fromBytes(payload);
+            messageData.setJournalPosition(journalPosition);
+            collection.add(messageData);
+            count++;
+        }
+        if (raf != null && readPosition >= writePosition) {
+            close();
+        } else if (count > 0) {
+            raf.seek(0);
+            raf.writeLong(readPosition);
+        }
+        return count;
+    }
+
+    /**
+     * Closes and deletes the spill file, dropping any messages left in it.
+     */
+    synchronized void close() {
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                LOGGER.warn("Could not close spill file " + file, e);
+            }
+            if (!file.delete()) {
+                LOGGER.warn("Could not delete spill file " + file);
+            }
+            raf = null;
+            file = null;
+        }
+        readPosition = FILE_HEADER_SIZE;
+        writePosition = FILE_HEADER_SIZE;
+        size.set(0);
+    }
+
+    /**
+     * Lists the spill files in a directory, oldest first. Listed before anything is spilled to the directory,
+     * these are the files left behind by a previous run.
+     *
+     * @param directory the spill directory
+     * @return the spill files
+     */
+    static File[] listStale(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        return files;
+    }
+
+    /**
+     * Reads the messages that were not read yet from spill files left behind by a previous run, in order,
+     * and deletes the files. A message that was being written when the previous run stopped is lost.
+     *
+     * @param files the spill files, oldest first, see {@link #listStale(File)}
+     * @param consumer receives the messages in the order they were spilled
+     * @return the number of messages read
+     */
+    static int replayStale(File[] files, Consumer<MessageData> consumer) {
+        int count = 0;
+        for (File stale : files) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(stale)))) {
+                long position = in.readLong();
+                in.skipBytes((int)Math.min(Integer.MAX_VALUE, position - FILE_HEADER_SIZE));
+                while (true) {
+                    long journalPosition;
+                    byte[] payload;
+                    try {
+                        journalPosition = in.readLong();
+                        payload = new byte[in.readInt()];
+                        in.readFully(payload);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    MessageData messageData = MessageData.fromBytes(payload);
+                    messageData.setJournalPosition(journalPosition);
+                    consumer.accept(messageData);
+                    count++;
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Could not read all messages from spill file " + stale, e);
+            }
+            if (!stale.delete()) {
+                LOGGER.warn("Could not delete stale spill file " + stale);
+            }
+        }
+        return count;
+    }
+}
@@ -28,6 +28,7 @@ import hudson.model.AbstractItem;
 import hudson.model.Queue;
 import hudson.model.Run;
 import jenkins.model.Jenkins;
+import jenkins.model.JenkinsLocationConfiguration;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
@@ -37,7 +38,13 @@ import java.net.UnknownHostException;
  * @author Tomas Westling &lt;tomas.westling@sonymobile.com&gt;
  */
 public final class Util {
-    private static String hostName = null;
+    private static final long HOST_NAME_RETRY_MILLIS = 60000;
+    private static volatile String hostName = null;
+    /* When to try resolving the host name again after it failed. */
+    private static volatile long hostNameRetryAt = 0;
+    /* The configured root URL, cached since it is needed for every message. Null if not configured. */
+    private static volatile String rootUrl = null;
+    private static volatile boolean rootUrlCached = false;
 
     /**Url Key. */
     public static final String KEY_URL = "url";
@@ -77,6 +84,12 @@ public final class Util {
     public static final String VALUE_COMPLETED = "COMPLETED";
     /**Deleted Value. */
     public static final String VALUE_DELETED = "DELETED";
+    /**Claim check Key, holding the reference to a message body that was too large to publish. */
+    public static final String KEY_CLAIM_CHECK = "claim_check";
+    /**Digest Key. */
+    public static final String KEY_DIGEST = "digest";
+    /**Size Key. */
+    public static final String KEY_SIZE = "size";
     /**Content Type. */
     public static final String CONTENT_TYPE = "application/json";
 
@@ -94,9 +107,9 @@ public final class Util {
      *
      */
     public static String getJobUrl(Queue.Item item) {
-        Jenkins jenkins = Jenkins.getInstance();
-        if (jenkins != null && jenkins.getRootUrl() != null) {
-            return Functions.joinPath(jenkins.getRootUrl(), item.task.getUrl());
+        String root = getRootUrl();
+        if (root != null) {
+            return Functions.joinPath(root, item.task.getUrl());
         } else {
             return item.task.getUrl();
         }
@@ -110,28 +123,87 @@ public final class Util {
      *
      */
     public static String getJobUrl(Run r) {
-        Jenkins jenkins = Jenkins.getInstance();
-        if (jenkins != null && jenkins.getRootUrl() != null) {
-            return Functions.joinPath(jenkins.getRootUrl(), r.getUrl());
+        String root = getRootUrl();
+        if (root != null) {
+            return Functions.joinPath(root, r.getUrl());
         } else {
             return r.getUrl();
         }
     }
 
+    /**
+     * Get the root url of Jenkins.
+     * A configured root url is cached until {@link #refreshRootUrl()} is called.
+     *
+     * @return The root url, or null if not known.
+     */
+    public static String getRootUrl() {
+        if (rootUrlCached) {
+            return rootUrl;
+        }
+        Jenkins jenkins = Jenkins.getInstance();
+        String root = null;
+        if (jenkins != null) {
+            root = jenkins.getRootUrl();
+        }
+        if (root != null && JenkinsLocationConfiguration.get() != null
+                && JenkinsLocationConfiguration.get().getUrl() != null) {
+            // Only a configured url is cached, otherwise it may be derived from the current request.
+            rootUrl = root;
+            rootUrlCached = true;
+        }
+        return root;
+    }
+
+    /**
+     * Forget the cached root url, called when the Jenkins location configuration may have changed.
+     */
+    public static void refreshRootUrl() {
+        rootUrlCached = false;
+        rootUrl = null;
+    }
+
+    /**
+     * Get the key that identifies a build, for compacting superseded messages about it.
+     *
+     * @param r The build.
+     * @return The compaction key.
+     */
+    public static String getCompactionKey(Run r) {
+        return r.getParent().getFullName() + "#" + r.getNumber();
+    }
+
+    /**
+     * Get the key that identifies a queue item, for compacting superseded messages about it.
+     *
+     * @param item The queue item.
+     * @return The compaction key.
+     */
+    public static String getCompactionKey(Queue.Item item) {
+        return getFullName(item.task) + "@" + item.getId();
+    }
+
     /**
      * Fetches and caches the jenkins master FQDN.
+     * If it cannot be resolved, it is not tried again for a minute.
      *
      * @return hostname
      */
     public static String getHostName() {
-        if (hostName == null) {
+        String name = hostName;
+        if (name == null) {
+            if (System.currentTimeMillis() < hostNameRetryAt) {
+                return VALUE_UNRESOLVED_HOST;
+            }
             try {
-                hostName = InetAddress.getLocalHost().getHostName();
+                name = InetAddress.getLocalHost().getHostName();
+                hostName = name;
             } catch (UnknownHostException e) {
+                hostNameRetryAt = System.currentTimeMillis() + HOST_NAME_RETRY_MILLIS;
                 return VALUE_UNRESOLVED_HOST;
             }
         }
-        return hostName;
+        return name;
     }
 
     /**
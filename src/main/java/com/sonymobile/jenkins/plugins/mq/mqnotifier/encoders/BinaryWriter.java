@@ -0,0 +1,213 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier.encoders;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONNull;
+import net.sf.json.JSONObject;
+import net.sf.json.util.JSONUtils;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Writes json-lib values in a binary format, into a buffer that is reused between messages.
+ * Subclasses write the headers and scalars of their format, this class walks the values.
+ */
+abstract class BinaryWriter {
+    private static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+    /* Larger buffers are not kept between messages, so an occasional huge message does not pin memory. */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+    private static final int BYTE_BITS = 8;
+    private static final int LONG_BITS = 64;
+
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private int length = 0;
+
+    /**
+     * Encodes a message.
+     *
+     * @param json the message
+     * @return the encoded message
+     */
+    final byte[] encode(JSONObject json) {
+        try {
+            writeValue(json);
+            return Arrays.copyOf(buffer, length);
+        } finally {
+            length = 0;
+            if (buffer.length > MAX_RETAINED_BUFFER_SIZE) {
+                buffer = new byte[INITIAL_BUFFER_SIZE];
+            }
+        }
+    }
+
+    /**
+     * Writes a value.
+     *
+     * @param value the value
+     */
+    private void writeValue(Object value) {
+        if (value == null || value instanceof JSONNull) {
+            writeNull();
+        } else if (value instanceof String) {
+            writeString((String)value);
+        } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            writeLong(((Number)value).longValue());
+        } else if (value instanceof BigInteger && ((BigInteger)value).bitLength() < LONG_BITS) {
+            writeLong(((BigInteger)value).longValue());
+        } else if (value instanceof Number) {
+            writeDouble(((Number)value).doubleValue());
+        } else if (value instanceof Boolean) {
+            writeBoolean((Boolean)value);
+        } else if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject)value;
+            if (object.isNullObject()) {
+                writeNull();
+                return;
+            }
+            writeMapHeader(object.size());
+            for (Object entry : object.entrySet()) {
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>)entry;
+                writeString(String.valueOf(e.getKey()));
+                writeValue(e.getValue());
+            }
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray)value;
+            writeArrayHeader(array.size());
+            for (Object element : array) {
+                writeValue(element);
+            }
+        } else {
+            // JSON functions and other values json-lib writes verbatim.
+            writeString(JSONUtils.valueToString(value));
+        }
+    }
+
+    /**
+     * Writes a string.
+     *
+     * @param value the string
+     */
+    private void writeString(String value) {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        writeStringHeader(utf8.length);
+        write(utf8);
+    }
+
+    /**
+     * Writes the header of a map.
+     *
+     * @param size the number of entries
+     */
+    abstract void writeMapHeader(int size);
+
+    /**
+     * Writes the header of an array.
+     *
+     * @param size the number of elements
+     */
+    abstract void writeArrayHeader(int size);
+
+    /**
+     * Writes the header of a UTF-8 string.
+     *
+     * @param size the number of bytes
+     */
+    abstract void writeStringHeader(int size);
+
+    /**
+     * Writes an integer.
+     *
+     * @param value the integer
+     */
+    abstract void writeLong(long value);
+
+    /**
+     * Writes a floating point number.
+     *
+     * @param value the number
+     */
+    abstract void writeDouble(double value);
+
+    /**
+     * Writes a boolean.
+     *
+     * @param value the boolean
+     */
+    abstract void writeBoolean(boolean value);
+
+    /**
+     * Writes a null.
+     */
+    abstract void writeNull();
+
+    /**
+     * Writes one byte.
+     *
+     * @param b the byte
+     */
+    final void write(int b) {
+        ensureCapacity(1);
+        buffer[length++] = (byte)b;
+    }
+
+    /**
+     * Writes bytes.
+     *
+     * @param bytes the bytes
+     */
+    final void write(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    /**
+     * Writes a value in big-endian byte order.
+     *
+     * @param value the value
+     * @param bytes the number of low-order bytes of the value to write
+     */
+    final void writeBigEndian(long value, int bytes) {
+        ensureCapacity(bytes);
+        for (int i = bytes - 1; i >= 0; i--) {
+            buffer[length++] = (byte)(value >>> (i * BYTE_BITS));
+        }
+    }
+
+    /**
+     * Makes room for more bytes.
+     *
+     * @param extra the number of bytes to make room for
+     */
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier.encoders;
+
+import hudson.Extension;
+import net.sf.json.JSONObject;
+
+/**
+ * Encodes messages as CBOR, RFC 8949, with the same structure as the JSON messages.
+ */
+@Extension
+public class CborMessageEncoder extends MQMessageEncoder {
+    /** The name of the CBOR encoder. */
+    public static final String NAME = "cbor";
+
+    private static final ThreadLocal<Writer> WRITER = ThreadLocal.withInitial(Writer::new);
+
+    /**
+     * Writes CBOR.
+     */
+    private static final class Writer extends BinaryWriter {
+        private static final int MAJOR_UNSIGNED = 0;
+        private static final int MAJOR_NEGATIVE = 1;
+        private static final int MAJOR_TEXT = 3;
+        private static final int MAJOR_ARRAY = 4;
+        private static final int MAJOR_MAP = 5;
+        private static final int MAJOR_SHIFT = 5;
+        private static final int MAX_INLINE = 23;
+        private static final int FOLLOWS_1 = 24;
+        private static final int FOLLOWS_2 = 25;
+        private static final int FOLLOWS_4 = 26;
+        private static final int FOLLOWS_8 = 27;
+        private static final int BYTES_2 = 2;
+        private static final int BYTES_4 = 4;
+        private static final int BYTES_8 = 8;
+        private static final long MAX_1 = 0xFFL;
+        private static final long MAX_2 = 0xFFFFL;
+        private static final long MAX_4 = 0xFFFFFFFFL;
+        private static final int FALSE = 0xF4;
+        private static final int TRUE = 0xF5;
+        private static final int NULL = 0xF6;
+        private static final int DOUBLE = 0xFB;
+
+        /**
+         * Writes the initial byte of a data item and its argument.
+         *
+         * @param major the major type
+         * @param argument the argument, treated as unsigned
+         */
+        private void writeHead(int major, long argument) {
+            int type = major << MAJOR_SHIFT;
+            if (argument >= 0 && argument <= MAX_INLINE) {
+                write(type | (int)argument);
+            } else if (argument >= 0 && argument <= MAX_1) {
+                write(type | FOLLOWS_1);
+                write((int)argument);
+            } else if (argument >= 0 && argument <= MAX_2) {
+                write(type | FOLLOWS_2);
+                writeBigEndian(argument, BYTES_2);
+            } else if (argument >= 0 && argument <= MAX_4) {
+                write(type | FOLLOWS_4);
+                writeBigEndian(argument, BYTES_4);
+            } else {
+                write(type | FOLLOWS_8);
+                writeBigEndian(argument, BYTES_8);
+            }
+        }
+
+        @Override
+        void writeMapHeader(int size) {
+            writeHead(MAJOR_MAP, size);
+        }
+
+        @Override
+        void writeArrayHeader(int size) {
+            writeHead(MAJOR_ARRAY, size);
+        }
+
+        @Override
+        void writeStringHeader(int size) {
+            writeHead(MAJOR_TEXT, size);
+        }
+
+        @Override
+        void writeLong(long value) {
+            if (value >= 0) {
+                writeHead(MAJOR_UNSIGNED, value);
+            } else {
+                // -1 - value, which is never negative, even for Long.MIN_VALUE.
+                writeHead(MAJOR_NEGATIVE, ~value);
+            }
+        }
+
+        @Override
+        void writeDouble(double value) {
+            write(DOUBLE);
+            writeBigEndian(Double.doubleToLongBits(value), BYTES_8);
+        }
+
+        @Override
+        void writeBoolean(boolean value) {
+            write(value ? TRUE : FALSE);
+        }
+
+        @Override
+        void writeNull() {
+            write(NULL);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "CBOR";
+    }
+
+    @Override
+    public String getContentType() {
+        return "application/cbor";
+    }
+
+    @Override
+    public byte[] encode(JSONObject json) {
+        return WRITER.get().encode(json);
+    }
+}
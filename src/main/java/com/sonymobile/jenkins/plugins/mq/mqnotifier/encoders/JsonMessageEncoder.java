@@ -0,0 +1,60 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier.encoders;
+
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.JsonEncoder;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.Util;
+import hudson.Extension;
+import net.sf.json.JSONObject;
+
+/**
+ * Encodes messages as UTF-8 JSON, the default.
+ */
+@Extension
+public class JsonMessageEncoder extends MQMessageEncoder {
+    /** The name of the JSON encoder. */
+    public static final String NAME = "json";
+    /** The encoder used when no other encoder is selected. */
+    static final JsonMessageEncoder INSTANCE = new JsonMessageEncoder();
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "JSON";
+    }
+
+    @Override
+    public String getContentType() {
+        return Util.CONTENT_TYPE;
+    }
+
+    @Override
+    public byte[] encode(JSONObject json) {
+        return JsonEncoder.encode(json);
+    }
+}
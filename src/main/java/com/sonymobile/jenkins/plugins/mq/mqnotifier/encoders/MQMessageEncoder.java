@@ -0,0 +1,101 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier.encoders;
+
+import hudson.ExtensionPoint;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+
+import java.util.List;
+
+/**
+ * Encodes messages into the bytes that are published. One encoder is selected in the plugin configuration,
+ * and the content type of published messages is set to the content type of the encoder.
+ */
+public abstract class MQMessageEncoder implements ExtensionPoint {
+
+    /**
+     * Gets the name that the encoder is selected by in the configuration.
+     *
+     * @return the name, e.g. json.
+     */
+    public abstract String getName();
+
+    /**
+     * Gets the name shown in the configuration.
+     *
+     * @return the display name.
+     */
+    public abstract String getDisplayName();
+
+    /**
+     * Gets the content type of the encoded messages.
+     *
+     * @return the content type, e.g. application/json.
+     */
+    public abstract String getContentType();
+
+    /**
+     * Encodes a message.
+     *
+     * @param json the message.
+     * @return the encoded message.
+     */
+    public abstract byte[] encode(JSONObject json);
+
+    /**
+     * Returns all MQMessageEncoders for this Jenkins instance.
+     * @return all the MQMessageEncoders.
+     */
+    public static List<MQMessageEncoder> all() {
+        return Jenkins.getInstance().getExtensionList(MQMessageEncoder.class);
+    }
+
+    /**
+     * Gets the encoder that is used when no other encoder is selected.
+     *
+     * @return the JSON encoder.
+     */
+    public static MQMessageEncoder getDefault() {
+        return JsonMessageEncoder.INSTANCE;
+    }
+
+    /**
+     * Finds an encoder by name.
+     *
+     * @param name the name of the encoder.
+     * @return the encoder, or the JSON encoder if there is no encoder with the name.
+     */
+    public static MQMessageEncoder find(String name) {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins != null && name != null) {
+            for (MQMessageEncoder encoder : all()) {
+                if (name.equals(encoder.getName())) {
+                    return encoder;
+                }
+            }
+        }
+        return getDefault();
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier.encoders;
+
+import hudson.Extension;
+import net.sf.json.JSONObject;
+
+/**
+ * Encodes messages as MessagePack, with the same structure as the JSON messages.
+ */
+@Extension
+public class MessagePackMessageEncoder extends MQMessageEncoder {
+    /** The name of the MessagePack encoder. */
+    public static final String NAME = "msgpack";
+
+    private static final ThreadLocal<Writer> WRITER = ThreadLocal.withInitial(Writer::new);
+
+    /**
+     * Writes MessagePack.
+     */
+    private static final class Writer extends BinaryWriter {
+        private static final int FIXMAP = 0x80;
+        private static final int FIXARRAY = 0x90;
+        private static final int FIXSTR = 0xA0;
+        private static final int NIL = 0xC0;
+        private static final int FALSE = 0xC2;
+        private static final int TRUE = 0xC3;
+        private static final int FLOAT64 = 0xCB;
+        private static final int UINT8 = 0xCC;
+        private static final int UINT16 = 0xCD;
+        private static final int UINT32 = 0xCE;
+        private static final int UINT64 = 0xCF;
+        private static final int INT8 = 0xD0;
+        private static final int INT16 = 0xD1;
+        private static final int INT32 = 0xD2;
+        private static final int INT64 = 0xD3;
+        private static final int STR8 = 0xD9;
+        private static final int STR16 = 0xDA;
+        private static final int STR32 = 0xDB;
+        private static final int ARRAY16 = 0xDC;
+        private static final int ARRAY32 = 0xDD;
+        private static final int MAP16 = 0xDE;
+        private static final int MAP32 = 0xDF;
+        private static final int FIX_COLLECTION_LIMIT = 16;
+        private static final int FIXSTR_LIMIT = 32;
+        private static final long POSITIVE_FIXINT_LIMIT = 0x80;
+        private static final long NEGATIVE_FIXINT_MIN = -32;
+        private static final int BYTES_2 = 2;
+        private static final int BYTES_4 = 4;
+        private static final int BYTES_8 = 8;
+        private static final long MAX_1 = 0xFFL;
+        private static final long MAX_2 = 0xFFFFL;
+        private static final long MAX_4 = 0xFFFFFFFFL;
+
+        /**
+         * Writes the header of a map or an array.
+         *
+         * @param size the number of entries or elements
+         * @param fix the type of a short collection
+         * @param type16 the type with a 16-bit size
+         * @param type32 the type with a 32-bit size
+         */
+        private void writeCollectionHeader(int size, int fix, int type16, int type32) {
+            if (size < FIX_COLLECTION_LIMIT) {
+                write(fix | size);
+            } else if (size <= MAX_2) {
+                write(type16);
+                writeBigEndian(size, BYTES_2);
+            } else {
+                write(type32);
+                writeBigEndian(size, BYTES_4);
+            }
+        }
+
+        @Override
+        void writeMapHeader(int size) {
+            writeCollectionHeader(size, FIXMAP, MAP16, MAP32);
+        }
+
+        @Override
+        void writeArrayHeader(int size) {
+            writeCollectionHeader(size, FIXARRAY, ARRAY16, ARRAY32);
+        }
+
+        @Override
+        void writeStringHeader(int size) {
+            if (size < FIXSTR_LIMIT) {
+                write(FIXSTR | size);
+            } else if (size <= MAX_1) {
+                write(STR8);
+                write(size);
+            } else if (size <= MAX_2) {
+                write(STR16);
+                writeBigEndian(size, BYTES_2);
+            } else {
+                write(STR32);
+                writeBigEndian(size, BYTES_4);
+            }
+        }
+
+        @Override
+        void writeLong(long value) {
+            if (value >= 0) {
+                if (value < POSITIVE_FIXINT_LIMIT) {
+                    write((int)value);
+                } else if (value <= MAX_1) {
+                    write(UINT8);
+                    write((int)value);
+                } else if (value <= MAX_2) {
+                    write(UINT16);
+                    writeBigEndian(value, BYTES_2);
+                } else if (value <= MAX_4) {
+                    write(UINT32);
+                    writeBigEndian(value, BYTES_4);
+                } else {
+                    write(UINT64);
+                    writeBigEndian(value, BYTES_8);
+                }
+            } else if (value >= NEGATIVE_FIXINT_MIN) {
+                write((int)value);
+            } else if (value >= Byte.MIN_VALUE) {
+                write(INT8);
+                write((int)value);
+            } else if (value >= Short.MIN_VALUE) {
+                write(INT16);
+                writeBigEndian(value, BYTES_2);
+            } else if (value >= Integer.MIN_VALUE) {
+                write(INT32);
+                writeBigEndian(value, BYTES_4);
+            } else {
+                write(INT64);
+                writeBigEndian(value, BYTES_8);
+            }
+        }
+
+        @Override
+        void writeDouble(double value) {
+            write(FLOAT64);
+            writeBigEndian(Double.doubleToLongBits(value), BYTES_8);
+        }
+
+        @Override
+        void writeBoolean(boolean value) {
+            write(value ? TRUE : FALSE);
+        }
+
+        @Override
+        void writeNull() {
+            write(NIL);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "MessagePack";
+    }
+
+    @Override
+    public String getContentType() {
+        return "application/msgpack";
+    }
+
+    @Override
+    public byte[] encode(JSONObject json) {
+        return WRITER.get().encode(json);
+    }
+}
@@ -23,6 +23,7 @@
  */
 package com.sonymobile.jenkins.plugins.mq.mqnotifier.pipeline;
 
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.JsonEncoder;
 import com.sonymobile.jenkins.plugins.mq.mqnotifier.MQConnection;
 import com.sonymobile.jenkins.plugins.mq.mqnotifier.MQNotifierConfig;
 import hudson.Extension;
@@ -37,6 +38,7 @@ import org.jenkinsci.plugins.workflow.steps.SynchronousStepExecution;
 import org.kohsuke.stapler.DataBoundConstructor;
 
 import javax.annotation.Nonnull;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.Set;
 
@@ -104,10 +106,13 @@ public class MQMessageStep extends Step {
             // message is put on a queue to be sent at a later point in time. Preferably we would be able
             // to get a Future<> back so that we could wait if we wanted. But that's not how the MQ
             // Notifier is built.
+            byte[] body = null;
             if (config.isVerboseLoggingEnabled()) {
-                listener.getLogger().println("Posting JSON message to RabbitMQ:\n" + json.toString(2));
+                body = JsonEncoder.encode(json);
+                listener.getLogger().println("Posting JSON message to RabbitMQ:\n"
+                        + new String(body, StandardCharsets.UTF_8));
             }
-            MQConnection.getInstance().publish(json);
+            MQConnection.getInstance().publish(json, body, null);
             return null;
         }
     }
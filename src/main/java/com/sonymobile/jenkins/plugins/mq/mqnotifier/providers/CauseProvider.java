@@ -33,8 +33,10 @@ import hudson.model.TopLevelItem;
 import jenkins.model.Jenkins;
 import net.sf.json.JSONObject;
 
+import java.util.EnumSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Provides information about the causes for a build.
@@ -47,6 +49,18 @@ public class CauseProvider extends MQDataProvider {
     /**Causes Key. */
     public static final String KEY_CAUSES = "causes";
 
+    private static final int UPSTREAM_CACHE_SIZE = 1000;
+    private static final long UPSTREAM_CACHE_MILLIS = 60000;
+
+    /* The URLs of matrix upstream builds by project and build number, null if not a matrix build. */
+    private final LookupCache<String, String> upstreamUrls =
+            new LookupCache<>(UPSTREAM_CACHE_SIZE, UPSTREAM_CACHE_MILLIS);
+
+    @Override
+    public Set<EventType> getEventTypes() {
+        return EnumSet.of(EventType.RUN_STARTED);
+    }
+
     @Override
     public void provideStartRunData(Run run, JSONObject json) {
 
@@ -61,11 +75,10 @@ public class CauseProvider extends MQDataProvider {
                 if (cause instanceof Cause.UpstreamCause) {
                     Cause.UpstreamCause upstreamCause = (Cause.UpstreamCause)cause;
                     causes.add(upstreamCause.getShortDescription());
-                    TopLevelItem item = Jenkins.getInstance().getItem(upstreamCause.getUpstreamProject());
-                    if (item != null && item instanceof MatrixProject) {
-                        //Find the build
-                        MatrixBuild mb = ((MatrixProject)item).getBuildByNumber(upstreamCause.getUpstreamBuild());
-                        causes.add(mb.getUrl());
+                    String url = upstreamUrls.get(upstreamCause.getUpstreamProject() + "#"
+                            + upstreamCause.getUpstreamBuild(), key -> getMatrixBuildUrl(upstreamCause));
+                    if (url != null) {
+                        causes.add(url);
                     }
                 }
             }
@@ -80,4 +93,22 @@ public class CauseProvider extends MQDataProvider {
         }
         json.put(KEY_CAUSES, causes.toString());
     }
+
+    /**
+     * Looks up the URL of an upstream build, if it is a matrix build.
+     *
+     * @param upstreamCause the upstream cause
+     * @return the URL of the build, or null if the upstream is not a matrix build or the build is gone
+     */
+    private static String getMatrixBuildUrl(Cause.UpstreamCause upstreamCause) {
+        TopLevelItem item = Jenkins.getInstance().getItem(upstreamCause.getUpstreamProject());
+        if (item instanceof MatrixProject) {
+            //Find the build
+            MatrixBuild mb = ((MatrixProject)item).getBuildByNumber(upstreamCause.getUpstreamBuild());
+            if (mb != null) {
+                return mb.getUrl();
+            }
+        }
+        return null;
+    }
 }
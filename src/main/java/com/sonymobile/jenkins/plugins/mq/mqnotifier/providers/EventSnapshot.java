@@ -0,0 +1,152 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier.providers;
+
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.Util;
+import hudson.model.Queue;
+import hudson.model.Result;
+import hudson.model.Run;
+
+/**
+ * What an event was about, as it was when the event was reported. Providers that do not
+ * {@link MQDataProvider#requiresInline() run inline} get this instead of the live queue item or run,
+ * since they run on another thread after the listener has returned, when the item or run may have changed.
+ */
+public final class EventSnapshot {
+    private final EventType eventType;
+    private final String jobName;
+    private final String url;
+    private final int buildNumber;
+    private final long queueId;
+    private final String result;
+    private final long timestamp;
+
+    /**
+     * Creates a snapshot.
+     *
+     * @param eventType the event type.
+     * @param jobName the full name of the job.
+     * @param url the url of the job or build.
+     * @param buildNumber the build number, 0 for queue events.
+     * @param queueId the id of the queue item.
+     * @param result the result of a completed build, null otherwise.
+     */
+    public EventSnapshot(EventType eventType, String jobName, String url, int buildNumber, long queueId,
+                         String result) {
+        this.eventType = eventType;
+        this.jobName = jobName;
+        this.url = url;
+        this.buildNumber = buildNumber;
+        this.queueId = queueId;
+        this.result = result;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * Takes a snapshot of a queue item.
+     *
+     * @param eventType the event type.
+     * @param item the queue item.
+     * @return the snapshot.
+     */
+    public static EventSnapshot of(EventType eventType, Queue.Item item) {
+        return new EventSnapshot(eventType, Util.getFullName(item.task), Util.getJobUrl(item), 0, item.getId(), null);
+    }
+
+    /**
+     * Takes a snapshot of a run.
+     *
+     * @param eventType the event type.
+     * @param run the run.
+     * @return the snapshot.
+     */
+    public static EventSnapshot of(EventType eventType, Run run) {
+        Result res = run.getResult();
+        return new EventSnapshot(eventType, run.getParent().getFullName(), Util.getJobUrl(run), run.getNumber(),
+                run.getQueueId(), res != null ? res.toString() : null);
+    }
+
+    /**
+     * Gets the event type.
+     *
+     * @return the event type.
+     */
+    public EventType getEventType() {
+        return eventType;
+    }
+
+    /**
+     * Gets the full name of the job.
+     *
+     * @return the job name.
+     */
+    public String getJobName() {
+        return jobName;
+    }
+
+    /**
+     * Gets the url of the job or build, as in the message.
+     *
+     * @return the url.
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Gets the build number.
+     *
+     * @return the build number, 0 for queue events.
+     */
+    public int getBuildNumber() {
+        return buildNumber;
+    }
+
+    /**
+     * Gets the id of the queue item.
+     *
+     * @return the queue id.
+     */
+    public long getQueueId() {
+        return queueId;
+    }
+
+    /**
+     * Gets the result of a completed build.
+     *
+     * @return the result, or null if the build has not completed.
+     */
+    public String getResult() {
+        return result;
+    }
+
+    /**
+     * Gets when the event was reported.
+     *
+     * @return the time in milliseconds.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier.providers;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded cache of lookup results that expire after a time. When full, the least recently used entry is evicted.
+ * Null results are cached too, so a lookup that finds nothing is not repeated either.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+final class LookupCache<K, V> {
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final int maxEntries;
+    private final long expireNanos;
+    private final LongSupplier clock;
+    private final Map<K, Entry<V>> entries;
+
+    /**
+     * A cached value and when it expires.
+     *
+     * @param <V> the type of the value
+     */
+    private static final class Entry<V> {
+        private final V value;
+        private final long expires;
+
+        /**
+         * Constructor.
+         *
+         * @param value the value, may be null
+         * @param expires the {@link System#nanoTime()} when the value expires
+         */
+        private Entry(V value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxEntries the maximum number of entries
+     * @param expireMillis the time in milliseconds an entry is kept
+     */
+    LookupCache(int maxEntries, long expireMillis) {
+        this(maxEntries, expireMillis, System::nanoTime);
+    }
+
+    /**
+     * Constructor with a clock, for tests.
+     *
+     * @param maxEntries the maximum number of entries
+     * @param expireMillis the time in milliseconds an entry is kept
+     * @param clock the clock in nanoseconds
+     */
+    LookupCache(int maxEntries, long expireMillis, LongSupplier clock) {
+        this.maxEntries = maxEntries;
+        this.expireNanos = TimeUnit.MILLISECONDS.toNanos(expireMillis);
+        this.clock = clock;
+        this.entries = new LinkedHashMap<K, Entry<V>>(maxEntries, LOAD_FACTOR, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > LookupCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Gets a cached value, or looks it up and caches it if it is missing or expired.
+     * The lookup is done without holding the lock, so two threads may look up the same key at once.
+     *
+     * @param key the key
+     * @param lookup looks up the value, may return null
+     * @return the value, may be null
+     */
+    V get(K key, Function<K, V> lookup) {
+        long now = clock.getAsLong();
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && entry.expires - now > 0) {
+                return entry.value;
+            }
+        }
+        V value = lookup.apply(key);
+        synchronized (entries) {
+            entries.put(key, new Entry<>(value, now + expireNanos));
+        }
+        return value;
+    }
+
+    /**
+     * Gets the number of entries, including expired ones that have not been replaced yet.
+     *
+     * @return the number of entries
+     */
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+}
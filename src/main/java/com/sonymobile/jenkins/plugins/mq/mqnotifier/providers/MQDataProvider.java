@@ -23,13 +23,19 @@
  */
 package com.sonymobile.jenkins.plugins.mq.mqnotifier.providers;
 
+import hudson.ExtensionList;
+import hudson.ExtensionListListener;
 import hudson.ExtensionPoint;
 import hudson.model.Queue;
 import hudson.model.Run;
 import jenkins.model.Jenkins;
 import net.sf.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Provides data for the notifier to send.
@@ -37,6 +43,38 @@ import java.util.List;
  * @author Tomas Westling &lt;tomas.westling@axis.com&gt;
  */
 public abstract class MQDataProvider implements ExtensionPoint {
+    private static final Object LOCK = new Object();
+    /* The providers of each event type, for the Jenkins instance they were looked up in. */
+    private static volatile Cache cache;
+    /* The provider list that clears the cache when it changes. */
+    private static ExtensionList<MQDataProvider> listenedTo;
+
+    /**
+     * The providers of each event type.
+     */
+    private static final class Cache {
+        private final Jenkins jenkins;
+        private final List<List<MQDataProvider>> byEventType = new ArrayList<>();
+
+        /**
+         * Sorts the providers by the event types they handle.
+         *
+         * @param jenkins the Jenkins instance
+         * @param providers all providers
+         */
+        private Cache(Jenkins jenkins, List<MQDataProvider> providers) {
+            this.jenkins = jenkins;
+            for (EventType eventType : EventType.values()) {
+                List<MQDataProvider> handling = new ArrayList<>();
+                for (MQDataProvider provider : providers) {
+                    if (provider.getEventTypes().contains(eventType)) {
+                        handling.add(provider);
+                    }
+                }
+                byEventType.add(Collections.unmodifiableList(handling));
+            }
+        }
+    }
 
     /**
      * Provides data for when an item enters the queue.
@@ -74,6 +112,37 @@ public abstract class MQDataProvider implements ExtensionPoint {
     public void provideCompletedRunData(Run run, JSONObject json) {
     }
 
+    /**
+     * Provides data for any event, for providers that do not {@link #requiresInline() run inline}.
+     * This is called instead of the method for the event, on a worker thread after the listener has returned.
+     *
+     * @param snapshot what the event was about, as it was when the event was reported.
+     * @param json the json object that we should add information to.
+     */
+    public void provideDeferredData(EventSnapshot snapshot, JSONObject json) {
+    }
+
+    /**
+     * Tells whether this provider must run on the Jenkins thread that reports the event, where it gets the
+     * live queue item or run. Providers that return false are not given the item or run: they get an
+     * {@link EventSnapshot} in {@link #provideDeferredData(EventSnapshot, JSONObject)} instead,
+     * on a worker thread, so that they do not hold up the listener.
+     *
+     * @return true if this provider must run on the listener thread, unless overridden.
+     */
+    public boolean requiresInline() {
+        return true;
+    }
+
+    /**
+     * Tells which events this provider adds data to. Only these provider methods are called.
+     *
+     * @return the event types, all of them unless overridden.
+     */
+    public Set<EventType> getEventTypes() {
+        return EnumSet.allOf(EventType.class);
+    }
+
     /**
      * Returns all MQDataProvider for this Jenkins instance.
      * @return all the MQDataProviders.
@@ -81,4 +150,38 @@ public abstract class MQDataProvider implements ExtensionPoint {
     public static List<MQDataProvider> all() {
         return Jenkins.getInstance().getExtensionList(MQDataProvider.class);
     }
+
+    /**
+     * Returns the MQDataProviders that add data to an event type. The list is cached
+     * until the providers of this Jenkins instance change.
+     *
+     * @param eventType the event type.
+     * @return the MQDataProviders for the event type, not modifiable.
+     */
+    public static List<MQDataProvider> all(EventType eventType) {
+        Jenkins jenkins = Jenkins.getInstance();
+        Cache current = cache;
+        if (current == null || current.jenkins != jenkins) {
+            synchronized (LOCK) {
+                current = cache;
+                if (current == null || current.jenkins != jenkins) {
+                    ExtensionList<MQDataProvider> providers = jenkins.getExtensionList(MQDataProvider.class);
+                    if (listenedTo != providers) {
+                        listenedTo = providers;
+                        providers.addListener(new ExtensionListListener() {
+                            @Override
+                            public void onChange() {
+                                synchronized (LOCK) {
+                                    cache = null;
+                                }
+                            }
+                        });
+                    }
+                    current = new Cache(jenkins, providers);
+                    cache = current;
+                }
+            }
+        }
+        return current.byEventType.get(eventType.ordinal());
+    }
 }
@@ -0,0 +1,199 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier.providers;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Formats build parameters as name=value strings, leaving out filtered parameters
+ * and capping the length of each value and of all parameters together.
+ */
+final class ParameterFormatter {
+    /** Appended to a value that was cut at the maximum length. */
+    static final String TRUNCATED_MARKER = "...[truncated, %d chars]";
+    /** Replaces a value that was too long, when oversized values are hashed. */
+    static final String HASH_MARKER = "[sha256:%s, %d chars]";
+    /** Added in place of the parameters that did not fit in the total length. */
+    static final String OMITTED_MARKER = "...[%d parameters omitted]";
+
+    private static final String HEX = "0123456789abcdef";
+    private static final int NIBBLE_BITS = 4;
+    private static final int NIBBLE_MASK = 0xF;
+
+    private final int maxValueLength;
+    private final int maxTotalLength;
+    private final boolean hashOversized;
+    private final List<Pattern> includes;
+    private final List<Pattern> excludes;
+
+    /**
+     * Constructor.
+     *
+     * @param maxValueLength the maximum length of a value, 0 or less for no limit
+     * @param maxTotalLength the maximum length of all parameters together, 0 or less for no limit
+     * @param hashOversized true to replace a value that is too long with its hash instead of truncating it
+     * @param includes the names of the parameters to include, all if blank
+     * @param excludes the names of the parameters to leave out
+     */
+    ParameterFormatter(int maxValueLength, int maxTotalLength, boolean hashOversized, String includes,
+                       String excludes) {
+        this.maxValueLength = maxValueLength;
+        this.maxTotalLength = maxTotalLength;
+        this.hashOversized = hashOversized;
+        this.includes = parseNames(includes);
+        this.excludes = parseNames(excludes);
+    }
+
+    /**
+     * Parses parameter names, separated by commas or new lines, where * matches any characters.
+     *
+     * @param text the names, may be null
+     * @return the name patterns
+     */
+    static List<Pattern> parseNames(String text) {
+        List<Pattern> patterns = new ArrayList<>();
+        if (StringUtils.isBlank(text)) {
+            return patterns;
+        }
+        for (String name : text.split("[,\\r\\n]+")) {
+            String trimmed = name.trim();
+            if (!trimmed.isEmpty()) {
+                StringBuilder regex = new StringBuilder();
+                for (String part : trimmed.split("\\*", -1)) {
+                    if (regex.length() > 0) {
+                        regex.append(".*");
+                    }
+                    regex.append(Pattern.quote(part));
+                }
+                patterns.add(Pattern.compile(regex.toString()));
+            }
+        }
+        return patterns;
+    }
+
+    /**
+     * Checks if a parameter is included.
+     *
+     * @param name the parameter name
+     * @return true if the parameter should be added
+     */
+    boolean isIncluded(String name) {
+        if (!includes.isEmpty() && !matches(includes, name)) {
+            return false;
+        }
+        return !matches(excludes, name);
+    }
+
+    /**
+     * Checks if a name matches any of the patterns.
+     *
+     * @param patterns the patterns
+     * @param name the name
+     * @return true if a pattern matches
+     */
+    private static boolean matches(List<Pattern> patterns, String name) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(name).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Formats the parameters.
+     *
+     * @param parameters the parameter names and values, in order
+     * @return the formatted parameters
+     */
+    List<String> format(List<Map.Entry<String, Object>> parameters) {
+        List<String> formatted = new ArrayList<>(parameters.size());
+        long total = 0;
+        int omitted = 0;
+        for (Map.Entry<String, Object> parameter : parameters) {
+            String name = parameter.getKey();
+            if (!isIncluded(name)) {
+                continue;
+            }
+            if (omitted > 0) {
+                omitted++;
+                continue;
+            }
+            String entry = name + "=" + formatValue(String.valueOf(parameter.getValue()));
+            if (maxTotalLength > 0 && total + entry.length() > maxTotalLength) {
+                omitted++;
+                continue;
+            }
+            total += entry.length();
+            formatted.add(entry);
+        }
+        if (omitted > 0) {
+            formatted.add(String.format(OMITTED_MARKER, omitted));
+        }
+        return formatted;
+    }
+
+    /**
+     * Caps the length of a value.
+     *
+     * @param value the value
+     * @return the value, truncated or hashed if it is too long
+     */
+    String formatValue(String value) {
+        if (maxValueLength <= 0 || value.length() <= maxValueLength) {
+            return value;
+        }
+        if (hashOversized) {
+            return String.format(HASH_MARKER, sha256(value), value.length());
+        }
+        return value.substring(0, maxValueLength) + String.format(TRUNCATED_MARKER, value.length());
+    }
+
+    /**
+     * Hashes a value.
+     *
+     * @param value the value
+     * @return the SHA-256 of the UTF-8 value, in hex
+     */
+    static String sha256(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(HEX.charAt((b >> NIBBLE_BITS) & NIBBLE_MASK)).append(HEX.charAt(b & NIBBLE_MASK));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
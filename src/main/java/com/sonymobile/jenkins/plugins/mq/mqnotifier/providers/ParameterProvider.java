@@ -31,8 +31,12 @@ import hudson.model.Queue;
 import hudson.model.Run;
 import net.sf.json.JSONObject;
 
-import java.util.LinkedList;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Provides the notifier with build parameters.
@@ -43,6 +47,28 @@ public class ParameterProvider extends MQDataProvider {
     /**Params Key. */
     public static final String KEY_PARAMETERS = "parameters";
 
+    /* How parameters are filtered and capped, set from the plugin configuration. */
+    private static volatile ParameterFormatter formatter = new ParameterFormatter(0, 0, false, null, null);
+
+    /**
+     * Sets how parameters are filtered and capped. Called when the plugin configuration is applied.
+     *
+     * @param maxValueLength the maximum length of a value, 0 for no limit.
+     * @param maxTotalLength the maximum length of all parameters of a message together, 0 for no limit.
+     * @param hashOversized true to replace a value that is too long with its SHA-256 instead of truncating it.
+     * @param includes the names of the parameters to include, separated by commas or new lines, all if blank.
+     * @param excludes the names of the parameters to leave out, separated by commas or new lines.
+     */
+    public static void setLimits(int maxValueLength, int maxTotalLength, boolean hashOversized, String includes,
+                                 String excludes) {
+        formatter = new ParameterFormatter(maxValueLength, maxTotalLength, hashOversized, includes, excludes);
+    }
+
+    @Override
+    public Set<EventType> getEventTypes() {
+        return EnumSet.of(EventType.QUEUE_ENTERED, EventType.RUN_STARTED, EventType.RUN_COMPLETED);
+    }
+
     @Override
     public void provideStartRunData(Run run, JSONObject json) {
         addParametersToJSON(run, json);
@@ -71,15 +97,16 @@ public class ParameterProvider extends MQDataProvider {
      * @param json the JSON object to add data to.
      */
     private void addParametersToJSON(Actionable actionable, JSONObject json) {
-        List<String> parameters = new LinkedList<String>();
+        List<Map.Entry<String, Object>> parameters = new ArrayList<>();
         for (ParametersAction action : actionable.getActions(ParametersAction.class)) {
             List<ParameterValue> parameterValues = action.getParameters();
             if (parameterValues != null) {
                 for (ParameterValue parameterValue : parameterValues) {
-                    parameters.add(parameterValue.getName() + "=" + parameterValue.getValue());
+                    parameters.add(new AbstractMap.SimpleImmutableEntry<>(parameterValue.getName(),
+                            parameterValue.getValue()));
                 }
             }
         }
-        json.put(KEY_PARAMETERS, parameters);
+        json.put(KEY_PARAMETERS, formatter.format(parameters));
     }
 }
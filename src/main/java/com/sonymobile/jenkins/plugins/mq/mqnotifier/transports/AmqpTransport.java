@@ -0,0 +1,185 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier.transports;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.AlreadyClosedException;
+import com.rabbitmq.client.BuiltinExchangeType;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.RecoveryListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.MQConnection;
+import hudson.Extension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Publishes messages to the AMQP server, the default.
+ * Channels are created on the connection of the destination and use publisher confirms.
+ */
+@Extension
+public class AmqpTransport extends MQTransport {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AmqpTransport.class);
+    /** The name of the AMQP transport. */
+    public static final String NAME = "amqp";
+    /** The transport used when no other transport is selected. */
+    static final AmqpTransport INSTANCE = new AmqpTransport();
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "AMQP";
+    }
+
+    @Override
+    public TransportChannel openChannel(MQConnection connection, TransportListener listener) throws IOException {
+        Channel channel = connection.createChannel();
+        channel.confirmSelect();
+        channel.addConfirmListener(listener::confirmed, listener::rejected);
+        channel.addShutdownListener(cause -> {
+            boolean exchangeMissing = !cause.isHardError() && cause.getReason() instanceof AMQP.Channel.Close
+                    && ((AMQP.Channel.Close)cause.getReason()).getReplyCode() == AMQP.NOT_FOUND;
+            if (exchangeMissing) {
+                LOGGER.warn("Exchange not found, channel closed: " + cause.getMessage());
+            }
+            listener.lost(exchangeMissing);
+        });
+        if (channel instanceof Recoverable) {
+            ((Recoverable)channel).addRecoveryListener(new RecoveryListener() {
+                @Override
+                public void handleRecovery(Recoverable recoverable) {
+                    listener.recovered();
+                }
+
+                @Override
+                public void handleRecoveryStarted(Recoverable recoverable) {
+                }
+            });
+        }
+        return new AmqpChannel(channel);
+    }
+
+    /**
+     * Tells whether the broker closed a channel for a reason that trying again does not change,
+     * e.g. because the exchange does not exist, rather than because the connection was lost.
+     *
+     * @param cause why the channel was closed
+     * @return true if the channel was closed with a permanent reply code
+     */
+    static boolean isPermanent(ShutdownSignalException cause) {
+        if (cause.isHardError() || !(cause.getReason() instanceof AMQP.Channel.Close)) {
+            return false;
+        }
+        int replyCode = ((AMQP.Channel.Close)cause.getReason()).getReplyCode();
+        return replyCode == AMQP.NOT_FOUND || replyCode == AMQP.ACCESS_REFUSED
+                || replyCode == AMQP.PRECONDITION_FAILED;
+    }
+
+    /**
+     * A channel on the AMQP connection.
+     */
+    private static final class AmqpChannel implements TransportChannel {
+        private final Channel channel;
+
+        /**
+         * Constructor.
+         *
+         * @param channel the AMQP channel, in confirm mode
+         */
+        private AmqpChannel(Channel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void validateExchange(String exchange, boolean declare) throws IOException {
+            try {
+                if (declare) {
+                    channel.exchangeDeclare(exchange, BuiltinExchangeType.TOPIC, true);
+                } else {
+                    channel.exchangeDeclarePassive(exchange);
+                }
+            } catch (IOException e) {
+                if (e.getCause() instanceof ShutdownSignalException
+                        && isPermanent((ShutdownSignalException)e.getCause())) {
+                    throw new ExchangeUnavailableException("Cannot use exchange " + exchange + ": "
+                            + e.getCause().getMessage(), e);
+                }
+                throw e;
+            } catch (AlreadyClosedException e) {
+                throw new IOException("Connection is already closed", e);
+            }
+        }
+
+        @Override
+        public long getNextPublishSeqNo() {
+            return channel.getNextPublishSeqNo();
+        }
+
+        @Override
+        public void publish(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body)
+                throws IOException {
+            try {
+                channel.basicPublish(exchange, routingKey, props, body);
+            } catch (AlreadyClosedException e) {
+                throw new IOException("Connection is already closed", e);
+            }
+        }
+
+        @Override
+        public void flush() {
+            // Published messages are written to the socket right away.
+        }
+
+        @Override
+        public void waitForConfirms(long timeoutMillis) throws InterruptedException, TimeoutException, IOException {
+            try {
+                channel.waitForConfirms(timeoutMillis);
+            } catch (AlreadyClosedException e) {
+                throw new IOException("Connection is already closed", e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                channel.close();
+            } catch (TimeoutException | AlreadyClosedException e) {
+                throw new IOException("Channel could not be closed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier.transports;
+
+import com.rabbitmq.client.AMQP;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.MQConnection;
+import hudson.Extension;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Appends published messages to rotating newline-delimited JSON files on local disk, for archiving.
+ * Messages are confirmed when they have been written to the file, at the end of each batch.
+ */
+@Extension
+public class FileTransport extends MQTransport {
+    /** The name of the file transport. */
+    public static final String NAME = "file";
+    /** The default size in bytes to rotate files at. */
+    public static final long DEFAULT_MAX_FILE_BYTES = 100L * 1024 * 1024;
+
+    /* Shared by all channels, so that the messages of all publishers end up in the same file. */
+    private volatile NdjsonSegmentWriter file = null;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Local NDJSON files";
+    }
+
+    /**
+     * Sets where the files are written.
+     *
+     * @param directory the directory, or null to stop writing
+     * @param maxFileBytes the size in bytes to rotate files at, 0 to never rotate
+     */
+    public synchronized void setDirectory(File directory, long maxFileBytes) {
+        NdjsonSegmentWriter current = file;
+        if (current != null && current.getDirectory().equals(directory) && current.getMaxBytes() == maxFileBytes) {
+            return;
+        }
+        if (current != null) {
+            current.close();
+        }
+        file = directory != null ? new NdjsonSegmentWriter(directory, maxFileBytes, 0, null) : null;
+    }
+
+    /**
+     * Gets the directory the files are written in.
+     *
+     * @return the directory, or null if not set
+     */
+    public File getDirectory() {
+        NdjsonSegmentWriter current = file;
+        return current != null ? current.getDirectory() : null;
+    }
+
+    @Override
+    public TransportChannel openChannel(MQConnection connection, TransportListener listener) throws IOException {
+        getFile();
+        return new FileChannel(listener);
+    }
+
+    /**
+     * Gets the file to write to.
+     *
+     * @return the file
+     * @throws IOException if no directory is set
+     */
+    private NdjsonSegmentWriter getFile() throws IOException {
+        NdjsonSegmentWriter current = file;
+        if (current == null) {
+            throw new IOException("No directory is set for the file transport");
+        }
+        return current;
+    }
+
+    /**
+     * A channel that confirms the messages of a batch when the batch has been written.
+     */
+    private final class FileChannel implements TransportChannel {
+        private final TransportListener listener;
+        private long nextSeqNo = 1;
+        private long lastConfirmed = 0;
+        private volatile boolean open = true;
+
+        /**
+         * Constructor.
+         *
+         * @param listener the listener to confirm messages to
+         */
+        private FileChannel(TransportListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void validateExchange(String exchange, boolean declare) {
+            // Messages to all exchanges are written to the same files.
+        }
+
+        @Override
+        public long getNextPublishSeqNo() {
+            return nextSeqNo;
+        }
+
+        @Override
+        public void publish(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body)
+                throws IOException {
+            try {
+                getFile().append(exchange, routingKey, props, body);
+                nextSeqNo++;
+            } catch (IOException e) {
+                lose();
+                throw e;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (lastConfirmed < nextSeqNo - 1) {
+                try {
+                    getFile().flush();
+                } catch (IOException e) {
+                    lose();
+                    throw e;
+                }
+                lastConfirmed = nextSeqNo - 1;
+                listener.confirmed(lastConfirmed, true);
+            }
+        }
+
+        @Override
+        public void waitForConfirms(long timeoutMillis) throws IOException {
+            flush();
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+
+        /**
+         * Closes the channel after a failed write, so unconfirmed messages are published again.
+         */
+        private void lose() {
+            open = false;
+            listener.lost(false);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier.transports;
+
+import com.rabbitmq.client.AMQP;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.MQConnection;
+import hudson.Extension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps published messages in memory and confirms them right away, for tests and benchmarks
+ * of the publishing pipeline without a broker. Only the latest messages are retained.
+ */
+@Extension
+public class InMemoryTransport extends MQTransport {
+    /** The name of the in-memory transport. */
+    public static final String NAME = "memory";
+    /** The default number of messages retained. */
+    public static final int DEFAULT_RETAINED = 1000;
+
+    private final ConcurrentLinkedDeque<Message> messages = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger retainedCount = new AtomicInteger();
+    private volatile int retained = DEFAULT_RETAINED;
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong publishedBytes = new AtomicLong();
+
+    /**
+     * A published message.
+     */
+    public static final class Message {
+        private final String exchange;
+        private final String routingKey;
+        private final AMQP.BasicProperties props;
+        private final byte[] body;
+
+        /**
+         * Constructor.
+         *
+         * @param exchange the exchange
+         * @param routingKey the routing key
+         * @param props the message properties
+         * @param body the message body
+         */
+        private Message(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.props = props;
+            this.body = body;
+        }
+
+        /**
+         * Gets the exchange.
+         *
+         * @return the exchange
+         */
+        public String getExchange() {
+            return exchange;
+        }
+
+        /**
+         * Gets the routing key.
+         *
+         * @return the routing key
+         */
+        public String getRoutingKey() {
+            return routingKey;
+        }
+
+        /**
+         * Gets the message properties.
+         *
+         * @return the message properties
+         */
+        public AMQP.BasicProperties getProps() {
+            return props;
+        }
+
+        /**
+         * Gets the message body.
+         *
+         * @return the message body
+         */
+        public byte[] getBody() {
+            return body;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "In memory (testing)";
+    }
+
+    @Override
+    public TransportChannel openChannel(MQConnection connection, TransportListener listener) {
+        return new InMemoryChannel(listener);
+    }
+
+    /**
+     * Gets the latest published messages.
+     *
+     * @return the messages in the order they were published
+     */
+    public List<Message> getMessages() {
+        return new ArrayList<>(messages);
+    }
+
+    /**
+     * Gets the number of messages published since the last {@link #clear()}.
+     *
+     * @return the number of messages
+     */
+    public long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+    /**
+     * Gets the number of body bytes published since the last {@link #clear()}.
+     *
+     * @return the number of bytes
+     */
+    public long getPublishedBytes() {
+        return publishedBytes.get();
+    }
+
+    /**
+     * Sets how many of the latest messages are retained.
+     *
+     * @param count the number of messages, 0 to only count them
+     */
+    public void setRetained(int count) {
+        retained = Math.max(0, count);
+        trim();
+    }
+
+    /**
+     * Removes the retained messages and resets the counters.
+     */
+    public void clear() {
+        messages.clear();
+        retainedCount.set(0);
+        publishedCount.set(0);
+        publishedBytes.set(0);
+    }
+
+    /**
+     * Adds a published message, dropping the oldest ones beyond the retained count.
+     *
+     * @param message the message
+     */
+    private void add(Message message) {
+        publishedCount.incrementAndGet();
+        publishedBytes.addAndGet(message.body.length);
+        if (retained > 0) {
+            messages.addLast(message);
+            retainedCount.incrementAndGet();
+            trim();
+        }
+    }
+
+    /**
+     * Drops the oldest messages beyond the retained count.
+     */
+    private void trim() {
+        while (retainedCount.get() > retained && messages.pollFirst() != null) {
+            retainedCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * A channel that confirms each message as it is published.
+     */
+    private final class InMemoryChannel implements TransportChannel {
+        private final TransportListener listener;
+        private long nextSeqNo = 1;
+        private volatile boolean open = true;
+
+        /**
+         * Constructor.
+         *
+         * @param listener the listener to confirm messages to
+         */
+        private InMemoryChannel(TransportListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void validateExchange(String exchange, boolean declare) {
+            // Every exchange exists in memory.
+        }
+
+        @Override
+        public long getNextPublishSeqNo() {
+            return nextSeqNo;
+        }
+
+        @Override
+        public void publish(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body) {
+            long seqNo = nextSeqNo++;
+            add(new Message(exchange, routingKey, props, body));
+            listener.confirmed(seqNo, false);
+        }
+
+        @Override
+        public void flush() {
+            // Messages are confirmed as they are published.
+        }
+
+        @Override
+        public void waitForConfirms(long timeoutMillis) {
+            // Messages are confirmed as they are published.
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+}
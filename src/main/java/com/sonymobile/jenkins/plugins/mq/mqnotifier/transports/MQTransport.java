@@ -0,0 +1,102 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier.transports;
+
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.MQConnection;
+import hudson.ExtensionPoint;
+import jenkins.model.Jenkins;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Delivers published messages somewhere. One transport is selected in the plugin configuration.
+ * <p>
+ * Batching, the confirm window, retries and the journal are handled by the publishers, which use the
+ * transport only to open channels and publish on them. A transport confirms each published message by
+ * its sequence number, and a message that is rejected or not confirmed before the channel is lost is
+ * published again.
+ */
+public abstract class MQTransport implements ExtensionPoint {
+
+    /**
+     * Gets the name that the transport is selected by in the configuration.
+     *
+     * @return the name, e.g. amqp.
+     */
+    public abstract String getName();
+
+    /**
+     * Gets the name shown in the configuration.
+     *
+     * @return the display name.
+     */
+    public abstract String getDisplayName();
+
+    /**
+     * Opens a channel. Each publisher opens its own channel, and opens a new one when it is lost.
+     *
+     * @param connection the connection of the destination that the channel is for.
+     * @param listener the listener to notify of confirms and of the channel being lost.
+     * @return the channel.
+     * @throws IOException if the channel could not be opened.
+     */
+    public abstract TransportChannel openChannel(MQConnection connection, TransportListener listener)
+            throws IOException;
+
+    /**
+     * Returns all MQTransports for this Jenkins instance.
+     * @return all the MQTransports.
+     */
+    public static List<MQTransport> all() {
+        return Jenkins.getInstance().getExtensionList(MQTransport.class);
+    }
+
+    /**
+     * Gets the transport that is used when no other transport is selected.
+     *
+     * @return the AMQP transport.
+     */
+    public static MQTransport getDefault() {
+        return AmqpTransport.INSTANCE;
+    }
+
+    /**
+     * Finds a transport by name.
+     *
+     * @param name the name of the transport.
+     * @return the transport, or the AMQP transport if there is no transport with the name.
+     */
+    public static MQTransport find(String name) {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins != null && name != null) {
+            for (MQTransport transport : all()) {
+                if (name.equals(transport.getName())) {
+                    return transport;
+                }
+            }
+        }
+        return getDefault();
+    }
+}
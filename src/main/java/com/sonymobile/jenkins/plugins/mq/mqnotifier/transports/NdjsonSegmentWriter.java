@@ -0,0 +1,353 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier.transports;
+
+import com.rabbitmq.client.AMQP;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.Util;
+import net.sf.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.Executor;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes newline-delimited JSON to segment files that are rotated by size and age.
+ * <p>
+ * Lines are collected in a large direct buffer and written to {@code events.ndjson} with a single
+ * write per buffer, so appending costs a copy and no system call. When the segment is full or too old,
+ * it is renamed to {@code events-<time>.ndjson} and, if an executor is given, gzip compressed to
+ * {@code events-<time>.ndjson.gz} in the background. The active segment only ever contains complete,
+ * written lines, so it can be tailed.
+ * <p>
+ * A JSON message body is written as is. Other bodies, e.g. compressed or binary encoded ones,
+ * are written Base64 encoded in a JSON object with their properties.
+ */
+public final class NdjsonSegmentWriter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(NdjsonSegmentWriter.class);
+    /** The name of the segment that lines are appended to. */
+    public static final String ACTIVE_NAME = "events.ndjson";
+    /** The suffix of compressed segments. */
+    public static final String GZIP_SUFFIX = ".gz";
+    private static final String PREFIX = "events-";
+    private static final String SUFFIX = ".ndjson";
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final byte NEWLINE = '\n';
+
+    private final File directory;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    private final Executor compressor;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private FileChannel channel;
+    private long size = 0;
+    private long openedAt = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param directory the directory to write the segments in
+     * @param maxBytes the size to rotate a segment at, 0 to not rotate by size
+     * @param maxAgeMillis the age to rotate a segment at, 0 to not rotate by age
+     * @param compressor the executor to compress closed segments on, or null to keep them uncompressed
+     */
+    public NdjsonSegmentWriter(File directory, long maxBytes, long maxAgeMillis, Executor compressor) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.compressor = compressor;
+    }
+
+    /**
+     * Gets the directory.
+     *
+     * @return the directory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Gets the size to rotate a segment at.
+     *
+     * @return the size in bytes, 0 if not rotated by size
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Gets the age to rotate a segment at.
+     *
+     * @return the age in milliseconds, 0 if not rotated by age
+     */
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    /**
+     * Checks if closed segments are compressed.
+     *
+     * @return true if closed segments are compressed
+     */
+    public boolean isCompressing() {
+        return compressor != null;
+    }
+
+    /**
+     * Appends a message as a line, rotating the segment first if it is full or too old.
+     * The line is buffered until the buffer is full or {@link #flush()} is called.
+     *
+     * @param exchange the exchange
+     * @param routingKey the routing key
+     * @param props the message properties
+     * @param body the message body
+     * @throws IOException if the line could not be written
+     */
+    public synchronized void append(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body)
+            throws IOException {
+        byte[] line = toLine(exchange, routingKey, props, body);
+        int length = line.length + 1;
+        if (channel == null) {
+            open();
+        } else if (isDue(length)) {
+            rotate();
+            open();
+        }
+        if (buffer.remaining() < length) {
+            drain();
+        }
+        if (buffer.remaining() < length) {
+            // Longer than the whole buffer, write it directly.
+            byte[] terminated = Arrays.copyOf(line, length);
+            terminated[line.length] = NEWLINE;
+            write(ByteBuffer.wrap(terminated));
+        } else {
+            buffer.put(line);
+            buffer.put(NEWLINE);
+        }
+        size += length;
+    }
+
+    /**
+     * Writes the buffered lines to the segment, and rotates the segment if it is too old.
+     *
+     * @throws IOException if the lines could not be written
+     */
+    public synchronized void flush() throws IOException {
+        if (channel != null) {
+            drain();
+            if (maxAgeMillis > 0 && size > 0 && System.currentTimeMillis() - openedAt >= maxAgeMillis) {
+                rotate();
+            }
+        }
+    }
+
+    /**
+     * Writes the buffered lines and closes the segment. It is opened again by the next append.
+     */
+    public synchronized void close() {
+        if (channel != null) {
+            try {
+                drain();
+            } catch (IOException e) {
+                LOGGER.warn("Could not write buffered lines to " + new File(directory, ACTIVE_NAME), e);
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.warn("Could not close " + new File(directory, ACTIVE_NAME), e);
+            }
+            channel = null;
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Compresses all closed segments that are not compressed yet, also the ones left by a previous run.
+     */
+    public void compressClosedSegments() {
+        File[] closed = directory.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (closed != null) {
+            Arrays.sort(closed);
+            for (File segment : closed) {
+                compress(segment);
+            }
+        }
+    }
+
+    /**
+     * Checks if the segment must be rotated before a line is appended.
+     *
+     * @param length the length of the line
+     * @return true if the segment is full or too old
+     */
+    private boolean isDue(int length) {
+        if (size == 0) {
+            return false;
+        }
+        return (maxBytes > 0 && size + length > maxBytes)
+                || (maxAgeMillis > 0 && System.currentTimeMillis() - openedAt >= maxAgeMillis);
+    }
+
+    /**
+     * Opens the active segment for appending.
+     *
+     * @throws IOException if the segment could not be opened
+     */
+    private void open() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        channel = FileChannel.open(new File(directory, ACTIVE_NAME).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        size = channel.size();
+        openedAt = System.currentTimeMillis();
+        buffer.clear();
+    }
+
+    /**
+     * Writes the buffered lines to the segment.
+     *
+     * @throws IOException if the lines could not be written
+     */
+    private void drain() throws IOException {
+        buffer.flip();
+        try {
+            write(buffer);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Writes all remaining bytes of a buffer to the segment.
+     *
+     * @param bytes the bytes to write
+     * @throws IOException if the bytes could not be written
+     */
+    private void write(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    /**
+     * Closes the active segment, renames it and schedules its compression.
+     *
+     * @throws IOException if the segment could not be renamed
+     */
+    private void rotate() throws IOException {
+        drain();
+        channel.close();
+        channel = null;
+        File active = new File(directory, ACTIVE_NAME);
+        long time = System.currentTimeMillis();
+        File rotated = new File(directory, PREFIX + time + SUFFIX);
+        while (rotated.exists() || new File(directory, rotated.getName() + GZIP_SUFFIX).exists()) {
+            time++;
+            rotated = new File(directory, PREFIX + time + SUFFIX);
+        }
+        if (!active.renameTo(rotated)) {
+            throw new IOException("Cannot rotate " + active + " to " + rotated);
+        }
+        if (compressor != null) {
+            File closed = rotated;
+            compressor.execute(() -> compress(closed));
+        }
+    }
+
+    /**
+     * Gzip compresses a closed segment and deletes it.
+     *
+     * @param segment the closed segment
+     */
+    private static void compress(File segment) {
+        if (!segment.isFile()) {
+            return;
+        }
+        File compressed = new File(segment.getParentFile(), segment.getName() + GZIP_SUFFIX);
+        File temp = new File(segment.getParentFile(), compressed.getName() + ".tmp");
+        try {
+            try (InputStream in = new FileInputStream(segment);
+                 OutputStream out = new GZIPOutputStream(new FileOutputStream(temp), COPY_BUFFER_SIZE)) {
+                byte[] copy = new byte[COPY_BUFFER_SIZE];
+                int read = in.read(copy);
+                while (read > 0) {
+                    out.write(copy, 0, read);
+                    read = in.read(copy);
+                }
+            }
+            if (!temp.renameTo(compressed)) {
+                throw new IOException("Cannot rename " + temp + " to " + compressed);
+            }
+            if (!segment.delete()) {
+                LOGGER.warn("Could not delete compressed segment " + segment);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not compress segment " + segment, e);
+            if (temp.exists() && !temp.delete()) {
+                LOGGER.warn("Could not delete " + temp);
+            }
+        }
+    }
+
+    /**
+     * Formats a message as a line.
+     *
+     * @param exchange the exchange
+     * @param routingKey the routing key
+     * @param props the message properties
+     * @param body the message body
+     * @return the line, without the newline
+     */
+    static byte[] toLine(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body) {
+        if (props == null || (props.getContentEncoding() == null
+                && (props.getContentType() == null || Util.CONTENT_TYPE.equals(props.getContentType())))) {
+            return body;
+        }
+        JSONObject line = new JSONObject();
+        line.put("exchange", exchange);
+        line.put("routing_key", routingKey);
+        line.put("content_type", props.getContentType());
+        if (props.getContentEncoding() != null) {
+            line.put("content_encoding", props.getContentEncoding());
+        }
+        line.put("body_base64", Base64.getEncoder().encodeToString(body));
+        return line.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
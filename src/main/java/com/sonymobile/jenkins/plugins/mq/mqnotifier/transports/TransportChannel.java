@@ -0,0 +1,109 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier.transports;
+
+import com.rabbitmq.client.AMQP;
+
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A channel of a {@link MQTransport}, used by one publisher thread at a time.
+ */
+public interface TransportChannel {
+
+    /**
+     * Thrown when an exchange is refused for good, e.g. because it does not exist,
+     * so that messages to it can never be published. Other exceptions are taken as transient.
+     */
+    class ExchangeUnavailableException extends IOException {
+        public ExchangeUnavailableException(String errorMessage) {
+            super(errorMessage);
+        }
+
+        public ExchangeUnavailableException(String errorMessage, Throwable cause) {
+            super(errorMessage, cause);
+        }
+    }
+
+    /**
+     * Checks if the channel can still be published on.
+     *
+     * @return true if the channel is open.
+     */
+    boolean isOpen();
+
+    /**
+     * Checks that messages can be published to an exchange, declaring it if asked to.
+     * Publishers call this once per exchange and channel.
+     *
+     * @param exchange the exchange.
+     * @param declare if a missing exchange should be created.
+     * @throws ExchangeUnavailableException if messages can never be published to the exchange.
+     * @throws IOException if the exchange could not be validated, e.g. because the connection was lost.
+     */
+    void validateExchange(String exchange, boolean declare) throws IOException;
+
+    /**
+     * Gets the sequence number that the next published message will be confirmed by.
+     *
+     * @return the sequence number.
+     */
+    long getNextPublishSeqNo();
+
+    /**
+     * Publishes a message. The message is confirmed later through the {@link TransportListener}.
+     *
+     * @param exchange the exchange.
+     * @param routingKey the routing key.
+     * @param props the message properties.
+     * @param body the message body.
+     * @throws IOException if the message could not be published.
+     */
+    void publish(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body) throws IOException;
+
+    /**
+     * Called after a batch of messages is published. Transports that buffer messages write them out here.
+     *
+     * @throws IOException if the messages could not be written.
+     */
+    void flush() throws IOException;
+
+    /**
+     * Waits until all published messages are confirmed.
+     *
+     * @param timeoutMillis how long to wait.
+     * @throws InterruptedException if interrupted while waiting.
+     * @throws TimeoutException if not all messages were confirmed in time.
+     * @throws IOException if the confirms could not be received.
+     */
+    void waitForConfirms(long timeoutMillis) throws InterruptedException, TimeoutException, IOException;
+
+    /**
+     * Closes the channel.
+     *
+     * @throws IOException if the channel could not be closed cleanly.
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,59 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier.transports;
+
+/**
+ * Receives confirms and channel events from a {@link TransportChannel}. May be called from any thread.
+ */
+public interface TransportListener {
+
+    /**
+     * Called when published messages are confirmed.
+     *
+     * @param sequenceNumber the sequence number of the confirmed message.
+     * @param multiple if all messages up to and including the sequence number are confirmed.
+     */
+    void confirmed(long sequenceNumber, boolean multiple);
+
+    /**
+     * Called when published messages are rejected and should be published again.
+     *
+     * @param sequenceNumber the sequence number of the rejected message.
+     * @param multiple if all messages up to and including the sequence number are rejected.
+     */
+    void rejected(long sequenceNumber, boolean multiple);
+
+    /**
+     * Called when the channel is lost, also if it is later recovered.
+     * Messages that are not confirmed by then are published again.
+     *
+     * @param exchangeMissing true if the channel was closed because an exchange was not found.
+     */
+    void lost(boolean exchangeMissing);
+
+    /**
+     * Called when the channel is recovered after it was lost, so exchanges must be validated again.
+     */
+    void recovered();
+}
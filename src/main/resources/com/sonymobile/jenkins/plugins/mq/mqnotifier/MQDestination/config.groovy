@@ -0,0 +1,58 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier.MQDestination;
+
+def f = namespace("/lib/form")
+def l = "/plugin/mq-notifier/"
+
+f.entry(title: "Name", field: "name", help: l+"help-destinations.html") {
+    f.textbox()
+}
+f.entry(title: "MQ URI", field: "serverUri", help: l+"help-amqp-uri.html") {
+    f.textbox()
+}
+f.entry(title: "User name", field: "userName", help: l+"help-user-name.html") {
+    f.textbox()
+}
+f.entry(title: "Password", field: "userPassword", help: l+"help-user-password.html") {
+    f.password()
+}
+f.entry(title: "Virtual host", field: "virtualHost", help: l+"help-virtual-host.html") {
+    f.textbox()
+}
+f.entry(title: "Exchange Name", field: "exchangeName", help: l+"help-exchange-name.html") {
+    f.textbox()
+}
+f.entry(title: "Routing Key", field: "routingKey", help: l+"help-routing-key.html") {
+    f.textbox()
+}
+f.entry(title: "Overflow policy", field: "overflowPolicy", help: l+"help-overflow-policy.html") {
+    f.select()
+}
+f.entry(title: "Queue capacity", field: "queueCapacity", help: l+"help-queue-capacity.html") {
+    f.number(default: 100000, min: 1)
+}
+f.entry {
+    f.repeatableDeleteButton()
+}
@@ -34,6 +34,15 @@ f.section(title: "MQ Notifier") {
     f.entry(title: "MQ URI", field: "serverUri", help: l+"help-amqp-uri.html") {
         f.textbox("value":my.serverUri)
     }
+    f.entry(title: "Cluster nodes", field: "brokerAddresses", help: l+"help-broker-addresses.html") {
+        f.textarea("value":my.brokerAddresses)
+    }
+    f.entry(title: "Shuffle cluster nodes", help: l+"help-broker-addresses.html") {
+        f.checkbox(field: "shuffleBrokerAddresses", checked: my.shuffleBrokerAddresses)
+    }
+    f.entry(title: "Prefer the node with the lowest latency", help: l+"help-broker-addresses.html") {
+        f.checkbox(field: "preferLowestLatency", checked: my.preferLowestLatency)
+    }
     f.entry(title: "User name", field: "userName", help: l+"help-user-name.html") {
         f.textbox("value":my.userName)
     }
@@ -47,6 +56,9 @@ f.section(title: "MQ Notifier") {
     f.entry(title: "Exchange Name", field: "exchangeName", help: l+"help-exchange-name.html") {
         f.textbox("value":my.exchangeName)
     }
+    f.entry(title: "Declare exchange if missing", help: l+"help-declare-exchange.html") {
+        f.checkbox(field: "declareExchange", checked: my.declareExchange)
+    }
     f.entry(title: "Virtual host", field: "virtualHost", help: l+"help-virtual-host.html") {
         f.textbox("value":my.virtualHost)
     }
@@ -62,4 +74,107 @@ f.section(title: "MQ Notifier") {
     f.entry(title: "Enable verbose logging", help: l+"help-enable-verbose-logging.html") {
         f.checkbox(field: "enableVerboseLogging", checked: my.enableVerboseLogging)
     }
+    f.entry(title: "Additional destinations", help: l+"help-destinations.html") {
+        f.repeatableProperty(field: "destinations", add: "Add destination")
+    }
+    f.advanced {
+        f.entry(title: "Batch size", field: "batchSize", help: l+"help-batch-size.html") {
+            f.number("value":my.batchSize, min: 1)
+        }
+        f.entry(title: "Batch linger time (ms)", field: "batchLingerMillis", help: l+"help-batch-linger.html") {
+            f.number("value":my.batchLingerMillis, min: 0)
+        }
+        f.entry(title: "Max unconfirmed messages", field: "maxInFlight", help: l+"help-max-in-flight.html") {
+            f.number("value":my.maxInFlight, min: 0)
+        }
+        f.entry(title: "Number of publishers", field: "publisherCount", help: l+"help-publisher-count.html") {
+            f.number("value":my.publisherCount, min: 1)
+        }
+        f.entry(title: "Queue capacity", field: "queueCapacity", help: l+"help-queue-capacity.html") {
+            f.number("value":my.queueCapacity, min: 1)
+        }
+        f.entry(title: "Priority by state", field: "statePriorities", help: l+"help-state-priorities.html") {
+            f.textarea("value":my.statePriorities)
+        }
+        f.entry(title: "Queue memory limit (MB)", field: "queueMemoryLimitMb", help: l+"help-queue-memory-limit.html") {
+            f.number("value":my.queueMemoryLimitMb, min: 0)
+        }
+        f.entry(title: "When the queue is full", field: "overflowPolicy", help: l+"help-overflow-policy.html") {
+            f.select()
+        }
+        f.entry(title: "Block timeout (ms)", field: "overflowBlockMillis", help: l+"help-overflow-block.html") {
+            f.number("value":my.overflowBlockMillis, min: 0)
+        }
+        f.entry(title: "Enrichment threads", field: "enrichmentThreads", help: l+"help-enrichment-threads.html") {
+            f.number("value":my.enrichmentThreads, min: 0)
+        }
+        f.entry(title: "Suspend data providers slower than (ms)", field: "providerBudgetMillis",
+                help: l+"help-provider-budget.html") {
+            f.number("value":my.providerBudgetMillis, min: 0)
+        }
+        f.entry(title: "Max parameter value length", field: "parameterMaxValueLength",
+                help: l+"help-parameter-limits.html") {
+            f.number("value":my.parameterMaxValueLength, min: 0)
+        }
+        f.entry(title: "Max total parameters length", field: "parameterMaxTotalLength",
+                help: l+"help-parameter-limits.html") {
+            f.number("value":my.parameterMaxTotalLength, min: 0)
+        }
+        f.entry(title: "Hash oversized parameter values", help: l+"help-hash-oversized-parameters.html") {
+            f.checkbox(field: "hashOversizedParameters", checked: my.hashOversizedParameters)
+        }
+        f.entry(title: "Included parameters", field: "includedParameters", help: l+"help-parameter-filter.html") {
+            f.textarea("value":my.includedParameters)
+        }
+        f.entry(title: "Excluded parameters", field: "excludedParameters", help: l+"help-parameter-filter.html") {
+            f.textarea("value":my.excludedParameters)
+        }
+        f.entry(title: "Claim check threshold (KB)", field: "claimCheckThresholdKb", help: l+"help-claim-check.html") {
+            f.number("value":my.claimCheckThresholdKb, min: 0)
+        }
+        f.entry(title: "Claim check retention (hours)", field: "blobRetentionHours", help: l+"help-claim-check.html") {
+            f.number("value":my.blobRetentionHours, min: 1)
+        }
+        f.entry(title: "Message encoding", field: "messageEncoder", help: l+"help-message-encoder.html") {
+            f.select()
+        }
+        f.entry(title: "Compression", field: "compression", help: l+"help-compression.html") {
+            f.select()
+        }
+        f.entry(title: "Compression threshold (bytes)", field: "compressionThreshold", help: l+"help-compression.html") {
+            f.number("value":my.compressionThreshold, min: 0)
+        }
+        f.entry(title: "Transport", field: "transport", help: l+"help-transport.html") {
+            f.select()
+        }
+        f.entry(title: "Transport file size (MB)", field: "transportFileSizeMb", help: l+"help-transport.html") {
+            f.number("value":my.transportFileSizeMb, min: 0)
+        }
+        f.entry(title: "Compact superseded events", help: l+"help-enable-compaction.html") {
+            f.checkbox(field: "enableCompaction", checked: my.enableCompaction)
+        }
+        f.entry(title: "Enable journal", help: l+"help-enable-journal.html") {
+            f.checkbox(field: "enableJournal", checked: my.enableJournal)
+        }
+        f.entry(title: "Archive events to local files", help: l+"help-archive.html") {
+            f.checkbox(field: "enableArchive", checked: my.enableArchive)
+        }
+        f.entry(title: "Archive file size (MB)", field: "archiveFileSizeMb", help: l+"help-archive.html") {
+            f.number("value":my.archiveFileSizeMb, min: 0)
+        }
+        f.entry(title: "Archive rotation (minutes)", field: "archiveRotateMinutes", help: l+"help-archive.html") {
+            f.number("value":my.archiveRotateMinutes, min: 0)
+        }
+        f.entry(title: "Compress archived files", help: l+"help-archive.html") {
+            f.checkbox(field: "compressArchive", checked: my.compressArchive)
+        }
+    }
+}
+
+f.section(title: "MQ Notifier status") {
+    my.status.each { name, value ->
+        f.entry(title: name) {
+            text(value)
+        }
+    }
 }
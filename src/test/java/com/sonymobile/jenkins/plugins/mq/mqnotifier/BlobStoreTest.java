@@ -0,0 +1,80 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the {@link BlobStore}.
+ */
+@SuppressWarnings({"checkstyle:magicnumber", "checkstyle:javadocvariable"})
+public class BlobStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that bodies are stored once by digest with what they were first stored with and the jobs
+     * they were stored for, read back, and deleted after the retention time.
+     *
+     * @throws Exception thrown
+     */
+    @Test
+    public void testPutGetAndRetention() throws Exception {
+        File dir = new File(folder.getRoot(), "blobs");
+        BlobStore store = new BlobStore(dir);
+        byte[] body = "{\"key\":\"value\"}".getBytes(StandardCharsets.UTF_8);
+
+        String digest = store.put(body, "application/json", "folder/job");
+        assertEquals(BlobStore.sha256(body), digest);
+        assertEquals(digest, store.put(body, "application/cbor", "other"));
+        assertEquals(digest, store.put(body, "application/json", null));
+        assertEquals(2, dir.listFiles().length);
+        assertArrayEquals(body, Files.readAllBytes(store.get(digest).toPath()));
+        assertEquals("application/json", store.getMetadata(digest).getContentType());
+        assertEquals(new HashSet<>(Arrays.asList("folder/job", "other")), store.getMetadata(digest).getJobs());
+        assertNull(store.get("../" + digest));
+        assertNull(store.get(BlobStore.sha256(new byte[0])));
+
+        assertEquals(0, store.deleteOlderThan(60000));
+        assertTrue(store.get(digest).setLastModified(System.currentTimeMillis() - 120000));
+        assertEquals(1, store.deleteOlderThan(60000));
+        assertNull(store.get(digest));
+        assertNull(store.getMetadata(digest));
+        assertEquals(0, dir.listFiles().length);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import com.rabbitmq.client.Address;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the {@link BrokerAddresses}.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+public class BrokerAddressesTest {
+    private static final Address NODE1 = new Address("node1", 5672);
+    private static final Address NODE2 = new Address("node2", 5673);
+    private static final Address NODE3 = new Address("node3");
+
+    /**
+     * Test that addresses are parsed from commas, whitespace and line breaks.
+     */
+    @Test
+    public void testParse() {
+        assertEquals(Arrays.asList(NODE1, NODE2, NODE3), BrokerAddresses.parse(" node1:5672,node2:5673\n node3 "));
+        assertTrue(BrokerAddresses.parse(null).isEmpty());
+        assertTrue(BrokerAddresses.parse("  ").isEmpty());
+        try {
+            BrokerAddresses.parse("node1:port");
+            fail("Expected an invalid port to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("node1:port"));
+        }
+    }
+
+    /**
+     * Test that the configured order is kept when neither shuffling nor latency is used.
+     */
+    @Test
+    public void testConfiguredOrder() {
+        BrokerAddresses addresses = new BrokerAddresses(Arrays.asList(NODE1, NODE2, NODE3), false, false,
+                address -> 0, () -> 0);
+        assertEquals(Arrays.asList(NODE1, NODE2, NODE3), addresses.getAddresses());
+    }
+
+    /**
+     * Test that shuffling keeps every address and eventually changes the order.
+     */
+    @Test
+    public void testShuffle() {
+        BrokerAddresses addresses = new BrokerAddresses(Arrays.asList(NODE1, NODE2, NODE3), true, false,
+                address -> 0, () -> 0);
+        HashSet<List<Address>> orders = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            List<Address> ordered = addresses.getAddresses();
+            assertEquals(new HashSet<>(Arrays.asList(NODE1, NODE2, NODE3)), new HashSet<>(ordered));
+            orders.add(ordered);
+        }
+        assertTrue(orders.size() > 1);
+    }
+
+    /**
+     * Test that the nodes with the lowest latency come first, unreachable nodes last,
+     * and that nodes are only probed once per interval.
+     */
+    @Test
+    public void testLowestLatencyFirst() {
+        Map<Address, Long> latency = new HashMap<>();
+        latency.put(NODE1, BrokerAddresses.UNREACHABLE);
+        latency.put(NODE2, TimeUnit.MILLISECONDS.toNanos(30));
+        latency.put(NODE3, TimeUnit.MILLISECONDS.toNanos(5));
+        AtomicInteger probes = new AtomicInteger();
+        AtomicLong now = new AtomicLong(1000);
+        BrokerAddresses addresses = new BrokerAddresses(Arrays.asList(NODE1, NODE2, NODE3), true, true,
+                address -> {
+                    probes.incrementAndGet();
+                    return latency.get(address);
+                }, now::get);
+
+        assertEquals(Arrays.asList(NODE3, NODE2, NODE1), addresses.getAddresses());
+        assertEquals(3, probes.get());
+        assertEquals(Long.valueOf(5), addresses.getLatencyMillis().get("node3"));
+        assertEquals(Long.valueOf(-1), addresses.getLatencyMillis().get("node1:5672"));
+
+        latency.put(NODE1, TimeUnit.MILLISECONDS.toNanos(1));
+        now.addAndGet(1000);
+        assertEquals(Arrays.asList(NODE3, NODE2, NODE1), addresses.getAddresses());
+        assertEquals(3, probes.get());
+
+        now.addAndGet(TimeUnit.MINUTES.toMillis(1));
+        assertEquals(Arrays.asList(NODE1, NODE3, NODE2), addresses.getAddresses());
+        assertEquals(6, probes.get());
+    }
+
+    /**
+     * Test that the handshake time of a connection replaces the probed latency of its node.
+     *
+     * @throws Exception thrown
+     */
+    @Test
+    public void testConnectedLatency() throws Exception {
+        Address local = new Address("127.0.0.1", 5672);
+        Address other = new Address("127.0.0.2", 5672);
+        BrokerAddresses addresses = new BrokerAddresses(Arrays.asList(other, local), false, true,
+                address -> TimeUnit.MILLISECONDS.toNanos(10), () -> 0);
+        addresses.getAddresses();
+        addresses.connected(InetAddress.getByName("127.0.0.1"), 5672, TimeUnit.MILLISECONDS.toNanos(2));
+        assertEquals(Arrays.asList(local, other), addresses.getAddresses());
+        assertEquals(Long.valueOf(2), addresses.getLatencyMillis().get("127.0.0.1:5672"));
+    }
+}
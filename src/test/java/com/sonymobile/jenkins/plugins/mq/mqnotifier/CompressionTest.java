@@ -0,0 +1,124 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the {@link Compression}.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+public class CompressionTest {
+
+    /**
+     * Reads a stream to the end.
+     */
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[1024];
+        int count = in.read(chunk);
+        while (count > 0) {
+            out.write(chunk, 0, count);
+            count = in.read(chunk);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Test that compressed bodies are read back by the standard decoders, also when the deflater is reused.
+     *
+     * @throws Exception thrown
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            json.append("{\"build_job_name\":\"job\",\"build_number\":").append(i).append("}");
+        }
+        byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < 2; i++) {
+            byte[] gzip = Compression.GZIP.compress(body);
+            assertTrue(gzip.length < body.length / 4);
+            assertArrayEquals(body, readAll(new GZIPInputStream(new ByteArrayInputStream(gzip))));
+
+            byte[] deflate = Compression.DEFLATE.compress(body);
+            assertTrue(deflate.length < body.length / 4);
+            assertArrayEquals(body, readAll(new InflaterInputStream(new ByteArrayInputStream(deflate))));
+        }
+        assertSame(body, Compression.NONE.compress(body));
+    }
+
+    /**
+     * Test that many threads can compress at once, and that compressing still works after the pool is released.
+     *
+     * @throws Exception thrown
+     */
+    @Test
+    public void testConcurrentCompressionAndRelease() throws Exception {
+        byte[] body = "{\"build_job_name\":\"job\",\"build_job_name\":\"job\"}".getBytes(StandardCharsets.UTF_8);
+        List<Thread> threads = new ArrayList<>();
+        AtomicInteger failures = new AtomicInteger();
+        for (int t = 0; t < 16; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 100; i++) {
+                        byte[] gzip = Compression.GZIP.compress(body);
+                        if (!Arrays.equals(body, readAll(new GZIPInputStream(new ByteArrayInputStream(gzip))))) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                } catch (IOException e) {
+                    failures.incrementAndGet();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, failures.get());
+
+        Compression.releaseAll();
+        byte[] deflate = Compression.DEFLATE.compress(body);
+        assertArrayEquals(body, readAll(new InflaterInputStream(new ByteArrayInputStream(deflate))));
+    }
+}
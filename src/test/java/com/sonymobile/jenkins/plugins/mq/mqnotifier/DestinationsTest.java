@@ -0,0 +1,106 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import com.rabbitmq.client.AMQP;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.transports.InMemoryTransport;
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests publishing to additional destinations.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+public class DestinationsTest {
+    private static final long TIMEOUT = 10000;
+
+    /**
+     * Removes the destinations and restores the AMQP transport.
+     */
+    @After
+    public void tearDown() {
+        MQConnection conn = MQConnection.getInstance();
+        conn.setDestinations(null);
+        conn.setTransport(null);
+    }
+
+    /**
+     * Test that every message is published to each destination with the same body,
+     * while a destination that cannot connect does not hold back the others.
+     *
+     * @throws Exception thrown
+     */
+    @Test
+    public void testFanOut() throws Exception {
+        MQConnection conn = MQConnection.getInstance();
+        InMemoryTransport primary = new InMemoryTransport();
+        InMemoryTransport analytics = new InMemoryTransport();
+        conn.setTransport(primary);
+        conn.setDestinations(Arrays.asList(
+                new MQDestination("analytics", "amqp://localhost:1", null, null, null, "events", null,
+                        OverflowPolicy.DROP_OLDEST, 1000),
+                new MQDestination("dead", "amqp://localhost:1", null, null, null, "alerts", "alert.key",
+                        OverflowPolicy.BLOCK, 10)));
+        conn.getDestination("analytics").setTransport(analytics);
+        assertEquals("dead", conn.getDestinations().get(1).getName());
+        assertEquals(OverflowPolicy.DROP_OLDEST, conn.getDestination("dead").getOverflowPolicy());
+
+        AMQP.BasicProperties props = new AMQP.BasicProperties.Builder().contentType(Util.CONTENT_TYPE).build();
+        byte[][] bodies = new byte[50][];
+        for (int i = 0; i < 50; i++) {
+            bodies[i] = ("{\"n\":" + i + "}").getBytes(StandardCharsets.UTF_8);
+            conn.addMessageToQueue("main", "key", props, bodies[i]);
+        }
+
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while ((primary.getPublishedCount() < 50 || analytics.getPublishedCount() < 50)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(50, primary.getPublishedCount());
+        assertEquals(50, analytics.getPublishedCount());
+        for (int i = 0; i < 50; i++) {
+            assertSame(bodies[i], primary.getMessages().get(i).getBody());
+            assertSame(bodies[i], analytics.getMessages().get(i).getBody());
+            assertEquals("events", analytics.getMessages().get(i).getExchange());
+            assertEquals("key", analytics.getMessages().get(i).getRoutingKey());
+        }
+        // The queue of the dead destination is full, the oldest messages are dropped instead of blocking.
+        assertTrue(conn.getDestination("dead").getDroppedCount(OverflowPolicy.DROP_OLDEST) > 0);
+
+        conn.setDestinations(Collections.singletonList(new MQDestination("dead", "amqp://localhost:1", null, null,
+                null, "alerts", "alert.key", OverflowPolicy.DROP_NEWEST, 10)));
+        assertNull(conn.getDestination("analytics"));
+        assertEquals(1, conn.getDestinations().size());
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import net.sf.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the {@link EnrichmentPool}.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+public class EnrichmentPoolTest {
+
+    /**
+     * Runs everything on the listener threads again.
+     */
+    @After
+    public void tearDown() {
+        EnrichmentPool.getInstance().setThreads(0);
+    }
+
+    /**
+     * Test that events for the same key are published in the order they were reported,
+     * also when some of them are logged by the listener.
+     *
+     * @throws Exception thrown
+     */
+    @Test
+    public void testEventsKeepOrder() throws Exception {
+        EnrichmentPool pool = EnrichmentPool.getInstance();
+        pool.setThreads(2);
+        long dropped = pool.getDroppedCount();
+        List<Integer> published = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> logged = new ArrayList<>();
+        CountDownLatch release = new CountDownLatch(1);
+        pool.enrich(null, "job", null, new JSONObject(), (provider, j) -> { }, null, (j, body) -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            published.add(0);
+        });
+        // The worker is busy with the first event while the next ones are reported.
+        for (int i = 1; i < 100; i++) {
+            int n = i;
+            Function<JSONObject, byte[]> log = null;
+            if (i % 10 == 0) {
+                log = j -> {
+                    logged.add(n);
+                    return new byte[] {(byte)n};
+                };
+            }
+            pool.enrich(null, "job", null, new JSONObject(), (provider, j) -> { }, log, (j, body) -> {
+                if (body != null) {
+                    assertEquals(n, body[0]);
+                }
+                published.add(n);
+            });
+        }
+        // Logging does not wait for the worker.
+        assertEquals(9, logged.size());
+        assertEquals(0, published.size());
+        CountDownLatch done = new CountDownLatch(1);
+        release.countDown();
+        pool.enrich(null, "job", null, new JSONObject(), (provider, j) -> { }, null, (j, body) -> done.countDown());
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(100, published.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, (int)published.get(i));
+        }
+        assertEquals(dropped, pool.getDroppedCount());
+    }
+
+    /**
+     * Test that an event is dropped right away, without waiting, when the queue of its worker is full.
+     *
+     * @throws Exception thrown
+     */
+    @Test
+    public void testFullWorkerDropsEvent() throws Exception {
+        EnrichmentPool pool = EnrichmentPool.getInstance();
+        pool.setThreads(1);
+        long dropped = pool.getDroppedCount();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        pool.enrich(null, "job", null, new JSONObject(), (provider, j) -> { }, null, (j, body) -> {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        try {
+            AtomicInteger published = new AtomicInteger();
+            long start = System.nanoTime();
+            for (int i = 0; i < 10001; i++) {
+                pool.enrich(null, "job", null, new JSONObject(), (provider, j) -> { }, null,
+                        (j, body) -> published.incrementAndGet());
+            }
+            assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5);
+            assertEquals(dropped + 1, pool.getDroppedCount());
+        } finally {
+            release.countDown();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.transports.NdjsonSegmentWriter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the {@link EventArchive}.
+ */
+@SuppressWarnings({"checkstyle:magicnumber", "checkstyle:javadocvariable"})
+public class EventArchiveTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that messages from many threads are all written, one line each, and counted.
+     *
+     * @throws Exception thrown
+     */
+    @Test
+    public void testMessagesAreWritten() throws Exception {
+        File dir = folder.newFolder("archive");
+        EventArchive archive = new EventArchive(new NdjsonSegmentWriter(dir, 0, 0, null), 1 << 16);
+        Thread[] producers = new Thread[4];
+        for (int t = 0; t < producers.length; t++) {
+            int producer = t;
+            producers[t] = new Thread(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    byte[] body = ("{\"p\":" + producer + ",\"n\":" + i + "}").getBytes(StandardCharsets.UTF_8);
+                    archive.offer(new MessageData("exchange", "key", null, body, null));
+                }
+            });
+            producers[t].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        archive.close();
+
+        assertEquals(20000, archive.getWrittenCount());
+        assertEquals(0, archive.getDroppedCount());
+        List<String> lines = Files.readAllLines(new File(dir, NdjsonSegmentWriter.ACTIVE_NAME).toPath());
+        assertEquals(20000, lines.size());
+        assertEquals(5000, lines.stream().filter(line -> line.startsWith("{\"p\":3,")).count());
+    }
+
+    /**
+     * Test that messages offered after the archive is closed are counted as dropped.
+     *
+     * @throws Exception thrown
+     */
+    @Test
+    public void testDroppedAfterClose() throws Exception {
+        EventArchive archive = new EventArchive(new NdjsonSegmentWriter(folder.newFolder("archive"), 0, 0, null), 4);
+        archive.close();
+        archive.offer(new MessageData("exchange", "key", null, new byte[] {'{', '}'}, null));
+        assertEquals(1, archive.getDroppedCount());
+        assertEquals(0, archive.getWrittenCount());
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import com.rabbitmq.client.AMQP;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.transports.InMemoryTransport;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.transports.MQTransport;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.transports.TransportChannel;
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.transports.TransportListener;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests publishing through the {@link MQConnection} on the {@link InMemoryTransport}, without a broker.
+ */
+@SuppressWarnings({"checkstyle:magicnumber", "checkstyle:javadocvariable"})
+public class InMemoryTransportTest {
+    private static final long TIMEOUT = 10000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Restores the AMQP transport.
+     */
+    @After
+    public void tearDown() {
+        MQConnection.getInstance().setTransport(null);
+    }
+
+    /**
+     * Test that queued messages are published in order and confirmed by the in-memory transport.
+     *
+     * @throws Exception thrown
+     */
+    @Test
+    public void testMessagesArePublishedAndConfirmed() throws Exception {
+        MQConnection conn = MQConnection.getInstance();
+        InMemoryTransport transport = new InMemoryTransport();
+        conn.setTransport(transport);
+        AMQP.BasicProperties props = new AMQP.BasicProperties.Builder().contentType(Util.CONTENT_TYPE).build();
+        for (int i = 0; i < 50; i++) {
+            conn.addMessageToQueue("exchange", "key", props, ("{\"n\":" + i + "}").getBytes(StandardCharsets.UTF_8));
+        }
+
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while ((transport.getPublishedCount() < 50 || conn.getSizeOutstandingConfirms() > 0)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(50, transport.getPublishedCount());
+        assertEquals(0, conn.getSizeOutstandingConfirms());
+        assertEquals(0, conn.getInFlightCount());
+        List<InMemoryTransport.Message> messages = transport.getMessages();
+        for (int i = 0; i < 50; i++) {
+            assertEquals("{\"n\":" + i + "}", new String(messages.get(i).getBody(), StandardCharsets.UTF_8));
+            assertEquals("exchange", messages.get(i).getExchange());
+        }
+    }
+
+    /**
+     * Test that journaled messages in spill files of a previous run are published when the journal is disabled.
+     *
+     * @throws Exception thrown
+     */
+    @Test
+    public void testStaleSpillIsReplayedWithoutJournal() throws Exception {
+        File dir = folder.newFolder();
+        SpillQueue stale = new SpillQueue(dir, "publisher-0-");
+        for (int i = 0; i < 10; i++) {
+            MessageData messageData = new MessageData("exchange", "key", null,
+                    ("{\"n\":" + i + "}").getBytes(StandardCharsets.UTF_8), null);
+            messageData.setJournalPosition(i);
+            stale.add(messageData);
+        }
+        MQConnection conn = MQConnection.getInstance();
+        InMemoryTransport transport = new InMemoryTransport();
+        conn.setTransport(transport);
+        try {
+            conn.setSpillDirectory(dir);
+            conn.setJournalDirectory(null);
+            conn.replayStaleSpill();
+
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (transport.getPublishedCount() < 10 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(10, transport.getPublishedCount());
+            assertEquals(0, dir.listFiles().length);
+        } finally {
+            conn.setSpillDirectory(null);
+        }
+    }
+
+    /**
+     * Test that a message to an exchange that fails validation is dropped and released from the byte budget,
+     * while the messages after it are still published.
+     *
+     * @throws Exception thrown
+     */
+    @Test
+    public void testMessageToMissingExchangeIsDropped() throws Exception {
+        MQConnection conn = MQConnection.getInstance();
+        InMemoryTransport delegate = new InMemoryTransport();
+        conn.setTransport(new MissingExchangeTransport(delegate, "missing", null));
+        long undeliverable = conn.getUndeliverableCount();
+        AMQP.BasicProperties props = new AMQP.BasicProperties.Builder().contentType(Util.CONTENT_TYPE).build();
+        for (int i = 0; i < 20; i++) {
+            String exchange = i % 4 == 0 ? "missing" : "exchange";
+            conn.addMessageToQueue(exchange, "key", props, ("{\"n\":" + i + "}").getBytes(StandardCharsets.UTF_8));
+        }
+
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while ((delegate.getPublishedCount() < 15 || conn.getQueuedBytes() > 0)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(15, delegate.getPublishedCount());
+        assertEquals(5, conn.getUndeliverableCount() - undeliverable);
+        assertEquals(0, conn.getQueuedBytes());
+        assertEquals(0, conn.getSizeOutstandingConfirms());
+    }
+
+    /**
+     * Test that messages are kept and published on a new attempt when their exchange cannot be validated
+     * because of a failure that is not permanent, e.g. a lost connection.
+     *
+     * @throws Exception thrown
+     */
+    @Test
+    public void testMessageIsKeptOnTransientValidationFailure() throws Exception {
+        MQConnection conn = MQConnection.getInstance();
+        InMemoryTransport delegate = new InMemoryTransport();
+        conn.setTransport(new MissingExchangeTransport(delegate, "flaky", new IOException("Connection reset")));
+        long undeliverable = conn.getUndeliverableCount();
+        AMQP.BasicProperties props = new AMQP.BasicProperties.Builder().contentType(Util.CONTENT_TYPE).build();
+        for (int i = 0; i < 20; i++) {
+            String exchange = i % 4 == 0 ? "flaky" : "exchange";
+            conn.addMessageToQueue(exchange, "key", props, ("{\"n\":" + i + "}").getBytes(StandardCharsets.UTF_8));
+        }
+
+        // The publisher waits a while before it tries again.
+        long deadline = System.currentTimeMillis() + 2 * TIMEOUT;
+        while ((delegate.getPublishedCount() < 20 || conn.getQueuedBytes() > 0)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(20, delegate.getPublishedCount());
+        assertEquals(0, conn.getUndeliverableCount() - undeliverable);
+        assertEquals(0, conn.getQueuedBytes());
+    }
+
+    /**
+     * Test that messages are kept and published on a new attempt when the transport fails with an unexpected
+     * runtime exception, instead of being lost with the publisher thread.
+     *
+     * @throws Exception thrown
+     */
+    @Test
+    public void testMessageIsKeptOnRuntimeException() throws Exception {
+        MQConnection conn = MQConnection.getInstance();
+        InMemoryTransport delegate = new InMemoryTransport();
+        conn.setTransport(new MissingExchangeTransport(delegate, "flaky", new IllegalStateException("closed")));
+        AMQP.BasicProperties props = new AMQP.BasicProperties.Builder().contentType(Util.CONTENT_TYPE).build();
+        for (int i = 0; i < 20; i++) {
+            String exchange = i % 4 == 0 ? "flaky" : "exchange";
+            conn.addMessageToQueue(exchange, "key", props, ("{\"n\":" + i + "}").getBytes(StandardCharsets.UTF_8));
+        }
+
+        long deadline = System.currentTimeMillis() + 2 * TIMEOUT;
+        while ((delegate.getPublishedCount() < 20 || conn.getQueuedBytes() > 0)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(20, delegate.getPublishedCount());
+        assertEquals(0, conn.getQueuedBytes());
+        assertEquals(0, conn.getSizeOutstandingConfirms());
+    }
+
+    /**
+     * A transport that publishes in memory, but fails to validate one exchange,
+     * either for good or only the first time.
+     */
+    private static final class MissingExchangeTransport extends MQTransport {
+        private final InMemoryTransport delegate;
+        private final String missing;
+        private final Exception once;
+        private volatile boolean failed = false;
+
+        /**
+         * Constructor.
+         *
+         * @param delegate the transport that publishes the messages
+         * @param missing the exchange that fails validation
+         * @param once the exception the exchange fails with the first time, or null if it always fails
+         */
+        private MissingExchangeTransport(InMemoryTransport delegate, String missing, Exception once) {
+            this.delegate = delegate;
+            this.missing = missing;
+            this.once = once;
+        }
+
+        @Override
+        public String getName() {
+            return "missing-exchange";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Missing exchange";
+        }
+
+        @Override
+        public TransportChannel openChannel(MQConnection connection, TransportListener listener)
+                throws IOException {
+            TransportChannel channel = delegate.openChannel(connection, listener);
+            return new TransportChannel() {
+                @Override
+                public boolean isOpen() {
+                    return channel.isOpen();
+                }
+
+                @Override
+                public void validateExchange(String exchange, boolean declare) throws IOException {
+                    if (missing.equals(exchange)) {
+                        if (once == null) {
+                            throw new TransportChannel.ExchangeUnavailableException(
+                                    "NOT_FOUND - no exchange '" + exchange + "'");
+                        }
+                        if (!failed) {
+                            failed = true;
+                            if (once instanceof IOException) {
+                                throw (IOException)once;
+                            }
+                            throw (RuntimeException)once;
+                        }
+                    }
+                    channel.validateExchange(exchange, declare);
+                }
+
+                @Override
+                public long getNextPublishSeqNo() {
+                    return channel.getNextPublishSeqNo();
+                }
+
+                @Override
+                public void publish(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body)
+                        throws IOException {
+                    channel.publish(exchange, routingKey, props, body);
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    channel.flush();
+                }
+
+                @Override
+                public void waitForConfirms(long timeoutMillis)
+                        throws InterruptedException, TimeoutException, IOException {
+                    channel.waitForConfirms(timeoutMillis);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    channel.close();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the {@link JsonEncoder}.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+public class JsonEncoderTest {
+
+    /**
+     * Test that the encoded message is the same as json-lib produces for the usual field types.
+     */
+    @Test
+    public void testSameAsJsonLib() {
+        JSONObject json = new JSONObject();
+        json.put(Util.KEY_PROJECT_NAME, "folder/job");
+        json.put(Util.KEY_BUILD_NR, 42);
+        json.put(Util.KEY_BUILD_DURATION, -1234567890123L);
+        json.put("ratio", 0.5);
+        json.put("flag", true);
+        json.put("quote", "say \"hi\"\\\n\ttab");
+        JSONArray array = new JSONArray();
+        array.add("a");
+        array.add(Long.MIN_VALUE);
+        JSONObject nested = new JSONObject();
+        nested.put("key", "value");
+        array.add(nested);
+        json.put("list", array);
+        json.put("empty", new JSONObject());
+
+        assertEquals(json.toString(), new String(JsonEncoder.encode(json), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Test that non-ASCII characters and control characters survive a round trip.
+     */
+    @Test
+    public void testUnicodeRoundTrip() {
+        JSONObject json = new JSONObject();
+        json.put("text", "åäö € 😀 \u0001");
+
+        byte[] encoded = JsonEncoder.encode(json);
+        JSONObject decoded = JSONObject.fromObject(new String(encoded, StandardCharsets.UTF_8));
+        assertEquals(json.getString("text"), decoded.getString("text"));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import com.rabbitmq.client.AMQP;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the {@link MessageEnvelope}.
+ */
+public class MessageEnvelopeTest {
+
+    /**
+     * Test that the envelope is built from the configuration and the properties carry a timestamp.
+     */
+    @Test
+    public void testEnvelopeFromConfig() {
+        MQNotifierConfig config = new MQNotifierConfig();
+        config.setEnableNotifier(true);
+        config.setExchangeName("exchange");
+        config.setRoutingKey("routing");
+        config.setAppId("app");
+        config.setPersistentDelivery(false);
+
+        MessageEnvelope envelope = new MessageEnvelope(config, 1);
+        assertTrue(envelope.isEnabled());
+        assertEquals("exchange", envelope.getExchange());
+        assertEquals("routing", envelope.getRoutingKey());
+        AMQP.BasicProperties props = envelope.getProperties();
+        assertEquals("app", props.getAppId());
+        assertEquals(Util.CONTENT_TYPE, props.getContentType());
+        assertEquals(Integer.valueOf(1), props.getDeliveryMode());
+        assertNotNull(props.getTimestamp());
+
+        AMQP.BasicProperties encoded = envelope.getProperties("gzip");
+        assertEquals("gzip", encoded.getContentEncoding());
+        assertEquals("app", encoded.getAppId());
+        assertEquals(null, envelope.getProperties(null).getContentEncoding());
+    }
+
+    /**
+     * Test that publishing is disabled without a configuration.
+     */
+    @Test
+    public void testDisabledWithoutConfig() {
+        assertFalse(new MessageEnvelope(null, 0).isEnabled());
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import com.rabbitmq.client.AMQP;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the {@link MessageJournal}.
+ */
+@SuppressWarnings({"checkstyle:magicnumber", "checkstyle:javadocvariable"})
+public class MessageJournalTest {
+
+    private static final int SMALL_SEGMENT = 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Creates a message with the given body.
+     */
+    private static MessageData message(String body) {
+        AMQP.BasicProperties props = new AMQP.BasicProperties.Builder()
+                .appId("app").contentType(Util.CONTENT_TYPE).deliveryMode(2).build();
+        return new MessageData("exchange", "routing", props, body.getBytes(StandardCharsets.UTF_8), "job");
+    }
+
+    /**
+     * Test that only messages that are not done are replayed, in order and with their properties.
+     *
+     * @throws Exception thrown
+     */
+    @Test
+    public void testReplayPendingMessages() throws Exception {
+        File dir = folder.newFolder();
+        MessageJournal journal = new MessageJournal(dir, SMALL_SEGMENT);
+        assertTrue(journal.open().isEmpty());
+        List<MessageData> messages = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            MessageData messageData = message("message " + i);
+            journal.append(messageData);
+            messages.add(messageData);
+        }
+        for (int i = 0; i < 20; i += 2) {
+            journal.markDone(messages.get(i));
+        }
+        journal.close();
+
+        List<MessageData> replay = new MessageJournal(dir, SMALL_SEGMENT).open();
+        assertEquals(10, replay.size());
+        for (int i = 0; i < 10; i++) {
+            MessageData messageData = replay.get(i);
+            assertEquals("message " + (i * 2 + 1), new String(messageData.getBody(), StandardCharsets.UTF_8));
+            assertEquals("exchange", messageData.getExchange());
+            assertEquals("routing", messageData.getRoutingKey());
+            assertEquals("job", messageData.getPartitionKey());
+            assertEquals("app", messageData.getProps().getAppId());
+            assertEquals(Integer.valueOf(2), messageData.getProps().getDeliveryMode());
+        }
+    }
+
+    /**
+     * Test that replayed messages keep their headers and other properties.
+     *
+     * @throws Exception thrown
+     */
+    @Test
+    public void testReplayKeepsHeaders() throws Exception {
+        Map<String, Object> nested = new HashMap<>();
+        nested.put("list", Arrays.asList("a", 1L, null));
+        Map<String, Object> headers = new HashMap<>();
+        headers.put("string", "value");
+        headers.put("int", 42);
+        headers.put("flag", true);
+        headers.put("time", new Date(1234567890000L));
+        headers.put("bytes", new byte[] {1, 2, 3});
+        headers.put("nested", nested);
+        AMQP.BasicProperties props = new AMQP.BasicProperties.Builder().contentType(Util.CONTENT_TYPE)
+                .headers(headers).priority(5).correlationId("correlation").messageId("id").type("event").build();
+        File dir = folder.newFolder();
+        MessageJournal journal = new MessageJournal(dir, SMALL_SEGMENT);
+        journal.open();
+        journal.append(new MessageData("exchange", "routing", props, new byte[] {'{', '}'}, "job"));
+        journal.close();
+
+        List<MessageData> replay = new MessageJournal(dir, SMALL_SEGMENT).open();
+        assertEquals(1, replay.size());
+        AMQP.BasicProperties replayed = replay.get(0).getProps();
+        assertEquals(Integer.valueOf(5), replayed.getPriority());
+        assertEquals("correlation", replayed.getCorrelationId());
+        assertEquals("id", replayed.getMessageId());
+        assertEquals("event", replayed.getType());
+        Map<String, Object> replayedHeaders = replayed.getHeaders();
+        assertEquals(6, replayedHeaders.size());
+        assertEquals("value", replayedHeaders.get("string"));
+        assertEquals(42, replayedHeaders.get("int"));
+        assertEquals(true, replayedHeaders.get("flag"));
+        assertEquals(new Date(1234567890000L), replayedHeaders.get("time"));
+        assertArrayEquals(new byte[] {1, 2, 3}, (byte[])replayedHeaders.get("bytes"));
+        assertEquals(nested, replayedHeaders.get("nested"));
+    }
+
+    /**
+     * Test that segments where every message is done are deleted.
+     *
+     * @throws Exception thrown
+     */
+    @Test
+    public void testCompactDeletesDoneSegments() throws Exception {
+        File dir = folder.newFolder();
+        MessageJournal journal = new MessageJournal(dir, SMALL_SEGMENT);
+        journal.open();
+        List<MessageData> messages = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            MessageData messageData = message("a somewhat longer message body " + i);
+            journal.append(messageData);
+            messages.add(messageData);
+        }
+        int segments = dir.listFiles().length;
+        assertTrue("Expected several segments", segments > 2);
+        for (MessageData messageData : messages) {
+            journal.markDone(messageData);
+        }
+        journal.compact();
+        assertEquals(1, dir.listFiles().length);
+        journal.close();
+        assertTrue(new MessageJournal(dir, SMALL_SEGMENT).open().isEmpty());
+    }
+}
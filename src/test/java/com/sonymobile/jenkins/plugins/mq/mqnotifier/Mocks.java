@@ -32,7 +32,7 @@ import mockit.MockUp;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 
-//CS IGNORE Javadoc FOR NEXT 50 LINES. REASON: TestData
+//CS IGNORE Javadoc FOR NEXT 70 LINES. REASON: TestData
 
 /**
  * Test mocks.
@@ -61,6 +61,27 @@ public final class Mocks {
             String str = new String(body);
             MESSAGES.add(str);
         }
+
+        @Mock
+        public void addMessageToQueue(String exchangeName, String routingKey, AMQP.BasicProperties props, byte[] body,
+                                      String partitionKey) {
+            String str = new String(body);
+            MESSAGES.add(str);
+        }
+
+        @Mock
+        public void addMessageToQueue(String exchangeName, String routingKey, AMQP.BasicProperties props, byte[] body,
+                                      String partitionKey, MessagePriority priority) {
+            String str = new String(body);
+            MESSAGES.add(str);
+        }
+
+        @Mock
+        public void addMessageToQueue(String exchangeName, String routingKey, AMQP.BasicProperties props, byte[] body,
+                                      String partitionKey, MessagePriority priority, String compactionKey) {
+            String str = new String(body);
+            MESSAGES.add(str);
+        }
     }
 
     /**
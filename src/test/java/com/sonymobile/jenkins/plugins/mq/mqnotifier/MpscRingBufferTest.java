@@ -0,0 +1,160 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the {@link MpscRingBuffer}.
+ */
+@SuppressWarnings({"checkstyle:magicnumber"})
+public class MpscRingBufferTest {
+
+    /**
+     * Test that entries come out in the order they were added and that a full buffer rejects entries.
+     */
+    @Test
+    public void testOfferAndPollInOrder() {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(4);
+        assertEquals(4, buffer.capacity());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(4));
+        assertEquals(4, buffer.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(Integer.valueOf(i), buffer.poll());
+        }
+        assertNull(buffer.poll());
+        assertTrue(buffer.isEmpty());
+    }
+
+    /**
+     * Test that the capacity is rounded up to a power of two and that the buffer wraps around.
+     */
+    @Test
+    public void testWrapAround() {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(3);
+        assertEquals(4, buffer.capacity());
+        List<Integer> drained = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            buffer.offer(i);
+            buffer.offer(i);
+            assertEquals(2, buffer.drainTo(drained, 2));
+        }
+        assertEquals(20, drained.size());
+        assertEquals(Integer.valueOf(9), drained.get(19));
+    }
+
+    /**
+     * Test that a buffer that is not rounded up holds exactly its capacity and wraps around.
+     */
+    @Test
+    public void testExactCapacity() {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(3, false);
+        assertEquals(3, buffer.capacity());
+        List<Integer> drained = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(buffer.offer(i));
+            assertTrue(buffer.offer(i));
+            assertTrue(buffer.offer(i));
+            assertFalse(buffer.offer(i));
+            assertEquals(3, buffer.drainTo(drained, 3));
+        }
+        assertEquals(30, drained.size());
+        assertEquals(Integer.valueOf(9), drained.get(29));
+    }
+
+    /**
+     * Test that a waiting consumer is woken up by a producer, and times out when nothing is added.
+     *
+     * @throws Exception thrown
+     */
+    @Test
+    public void testPollWithTimeout() throws Exception {
+        MpscRingBuffer<String> buffer = new MpscRingBuffer<>(8);
+        assertNull(buffer.poll(10, TimeUnit.MILLISECONDS));
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            buffer.offer("message");
+        });
+        producer.start();
+        assertEquals("message", buffer.poll(10, TimeUnit.SECONDS));
+        producer.join();
+    }
+
+    /**
+     * Test that no entries are lost or duplicated with several producers.
+     *
+     * @throws Exception thrown
+     */
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        final int producers = 4;
+        final int perProducer = 10000;
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(1024);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final int offset = p * perProducer;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    while (!buffer.offer(offset + i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        boolean[] seen = new boolean[producers * perProducer];
+        int[] last = new int[producers];
+        Arrays.fill(last, -1);
+        for (int count = 0; count < seen.length; count++) {
+            Integer value = buffer.poll(10, TimeUnit.SECONDS);
+            assertFalse("Duplicate entry", seen[value]);
+            seen[value] = true;
+            int producer = value / perProducer;
+            assertTrue("Entries from one producer out of order", value > last[producer]);
+            last[producer] = value;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(buffer.isEmpty());
+    }
+}
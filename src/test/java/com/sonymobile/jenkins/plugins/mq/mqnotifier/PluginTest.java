@@ -246,7 +246,7 @@ public class PluginTest {
 
         j.buildAndAssertSuccess(job);
         j.assertLogContains(
-                "Posting JSON message to RabbitMQ:\n{\"key\": \"value\"}",
+                "Posting JSON message to RabbitMQ:\n{\"key\":\"value\"}",
                 job.getLastCompletedBuild()
         );
     }
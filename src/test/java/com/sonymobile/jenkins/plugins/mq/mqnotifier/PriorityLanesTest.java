@@ -0,0 +1,111 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the {@link PriorityLanes}.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+public class PriorityLanesTest {
+
+    /**
+     * Creates a message with the given body and priority.
+     */
+    private static MessageData message(String body, MessagePriority priority) {
+        return new MessageData("exchange", "routing", null, body.getBytes(StandardCharsets.UTF_8), null,
+                priority, null);
+    }
+
+    /**
+     * Test that lanes are drained in weighted round-robin and keep their order.
+     */
+    @Test
+    public void testWeightedDraining() {
+        PriorityLanes lanes = new PriorityLanes(64);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(lanes.offer(message("low " + i, MessagePriority.LOW)));
+            assertTrue(lanes.offer(message("high " + i, MessagePriority.HIGH)));
+        }
+        assertEquals(20, lanes.size(MessagePriority.HIGH));
+        assertEquals(0, lanes.size(MessagePriority.NORMAL));
+        assertEquals(20, lanes.size(MessagePriority.LOW));
+
+        List<MessageData> drained = new ArrayList<>();
+        lanes.drainTo(drained, 10);
+        for (int i = 0; i < 8; i++) {
+            assertEquals("high " + i, new String(drained.get(i).getBody(), StandardCharsets.UTF_8));
+        }
+        assertEquals("low 0", new String(drained.get(8).getBody(), StandardCharsets.UTF_8));
+        assertEquals("high 8", new String(drained.get(9).getBody(), StandardCharsets.UTF_8));
+
+        lanes.drainTo(drained);
+        assertEquals(40, drained.size());
+        assertEquals("low 19", new String(drained.get(39).getBody(), StandardCharsets.UTF_8));
+        assertNull(lanes.poll());
+    }
+
+    /**
+     * Test that making room drops from the full lane, or else from lower priority lanes only.
+     */
+    @Test
+    public void testPollOldest() {
+        PriorityLanes lanes = new PriorityLanes(2);
+        lanes.offer(message("low", MessagePriority.LOW));
+        lanes.offer(message("high 0", MessagePriority.HIGH));
+        lanes.offer(message("high 1", MessagePriority.HIGH));
+        assertFalse(lanes.offer(message("high 2", MessagePriority.HIGH)));
+
+        MessageData dropped = lanes.pollOldest(message("high 2", MessagePriority.HIGH));
+        assertEquals("high 0", new String(dropped.getBody(), StandardCharsets.UTF_8));
+        dropped = lanes.pollOldest(message("normal", MessagePriority.NORMAL));
+        assertEquals("low", new String(dropped.getBody(), StandardCharsets.UTF_8));
+        assertNull(lanes.pollOldest(message("low", MessagePriority.LOW)));
+    }
+
+    /**
+     * Test that the capacity is split between the lanes rather than given to each of them.
+     */
+    @Test
+    public void testCapacityIsSplitBetweenLanes() {
+        PriorityLanes lanes = new PriorityLanes(30);
+        for (MessagePriority priority : MessagePriority.values()) {
+            for (int i = 0; i < 10; i++) {
+                assertTrue(lanes.offer(message(priority + " " + i, priority)));
+            }
+            assertFalse(lanes.offer(message(priority + " full", priority)));
+        }
+        assertEquals(30, lanes.size());
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import com.sonymobile.jenkins.plugins.mq.mqnotifier.providers.EventType;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the {@link ProviderTimings}.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+public class ProviderTimingsTest {
+
+    /**
+     * Test that calls are counted per provider and event type, and that percentiles come from the histogram.
+     */
+    @Test
+    public void testHistogram() {
+        ProviderTimings timings = new ProviderTimings();
+        ProviderTimings.Timing timing = timings.getTiming("provider", EventType.RUN_STARTED);
+        assertSame(timing, timings.getTiming("provider", EventType.RUN_STARTED));
+        assertEquals(0, timings.getTimings().size());
+        assertEquals(0, timing.getPercentileMicros(50));
+
+        for (int i = 0; i < 99; i++) {
+            assertFalse(timing.record(TimeUnit.MICROSECONDS.toNanos(100), 0, 0, 0));
+        }
+        assertFalse(timing.record(TimeUnit.MILLISECONDS.toNanos(50), 0, 0, 0));
+
+        assertEquals(100, timing.getCount());
+        assertEquals(1, timings.getTimings().size());
+        assertEquals(0, timings.getTiming("provider", EventType.RUN_COMPLETED).getCount());
+        assertEquals(99, timing.getBucketCount(7));
+        assertEquals(128, timing.getPercentileMicros(50));
+        assertEquals(128, timing.getPercentileMicros(99));
+        assertEquals(65536, timing.getPercentileMicros(100));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(50), timing.getMaxNanos());
+    }
+
+    /**
+     * Test that a call over the budget suspends the provider until the suspension has passed.
+     */
+    @Test
+    public void testBudget() {
+        ProviderTimings timings = new ProviderTimings();
+        ProviderTimings.Timing timing = timings.getTiming("provider", EventType.QUEUE_LEFT);
+        assertFalse(timing.skip(0));
+        assertFalse(timing.record(10, 0, 100, 1000));
+        assertFalse(timing.skip(0));
+
+        assertTrue(timing.record(200, 0, 100, 1000));
+        assertEquals(1, timing.getOverBudgetCount());
+        assertTrue(timing.skip(500));
+        assertTrue(timing.skip(999));
+        assertEquals(2, timing.getSkippedCount());
+        assertFalse(timing.skip(1000));
+        assertFalse(timing.skip(500));
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the {@link SpillQueue}.
+ */
+@SuppressWarnings({"checkstyle:magicnumber", "checkstyle:javadocvariable"})
+public class SpillQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that spilled messages are read back in order and the file is deleted when drained.
+     *
+     * @throws Exception thrown
+     */
+    @Test
+    public void testDrainInOrder() throws Exception {
+        File dir = folder.newFolder();
+        SpillQueue spill = new SpillQueue(dir, "test-");
+        for (int i = 0; i < 10; i++) {
+            MessageData messageData = new MessageData("exchange", "routing", null,
+                    ("message " + i).getBytes(StandardCharsets.UTF_8), null);
+            messageData.setJournalPosition(i);
+            spill.add(messageData);
+        }
+        assertEquals(10, spill.size());
+        assertEquals(1, dir.listFiles().length);
+
+        List<MessageData> drained = new ArrayList<>();
+        assertEquals(4, spill.drainTo(drained, 4));
+        assertEquals(6, spill.size());
+        assertEquals(6, spill.drainTo(drained, 100));
+        assertTrue(spill.isEmpty());
+        assertEquals(0, dir.listFiles().length);
+        for (int i = 0; i < 10; i++) {
+            assertEquals("message " + i, new String(drained.get(i).getBody(), StandardCharsets.UTF_8));
+            assertEquals(i, drained.get(i).getJournalPosition());
+        }
+    }
+
+    /**
+     * Test that a spill file left behind is replayed from the first message that was not read,
+     * that a message cut off while it was written is skipped, and that the file is deleted.
+     *
+     * @throws Exception thrown
+     */
+    @Test
+    public void testReplayStale() throws Exception {
+        File dir = folder.newFolder();
+        SpillQueue spill = new SpillQueue(dir, "test-");
+        for (int i = 0; i < 10; i++) {
+            MessageData messageData = new MessageData("exchange", "routing", null,
+                    ("message " + i).getBytes(StandardCharsets.UTF_8), null);
+            messageData.setJournalPosition(i);
+            spill.add(messageData);
+        }
+        assertEquals(4, spill.drainTo(new ArrayList<>(), 4));
+        File file = dir.listFiles()[0];
+        Files.write(file.toPath(), new byte[] {0, 0, 0, 0, 0}, StandardOpenOption.APPEND);
+
+        List<MessageData> replayed = new ArrayList<>();
+        assertEquals(6, SpillQueue.replayStale(SpillQueue.listStale(dir), replayed::add));
+        for (int i = 0; i < 6; i++) {
+            assertEquals("message " + (i + 4), new String(replayed.get(i).getBody(), StandardCharsets.UTF_8));
+            assertEquals(i + 4, replayed.get(i).getJournalPosition());
+        }
+        assertEquals(0, dir.listFiles().length);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier.encoders;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONNull;
+import net.sf.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the {@link CborMessageEncoder} and the {@link MessagePackMessageEncoder}.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+public class BinaryEncodersTest {
+
+    /**
+     * Converts ints to bytes.
+     */
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte)values[i];
+        }
+        return bytes;
+    }
+
+    /**
+     * Creates a message with each kind of value.
+     */
+    private static JSONObject message() {
+        JSONArray array = new JSONArray();
+        array.add(true);
+        array.add(JSONNull.getInstance());
+        JSONObject json = new JSONObject();
+        json.put("a", 1);
+        json.put("b", array);
+        json.put("c", "x");
+        json.put("d", -500);
+        json.put("e", 1.5);
+        return json;
+    }
+
+    /**
+     * Test that messages are encoded as CBOR.
+     */
+    @Test
+    public void testCbor() {
+        CborMessageEncoder encoder = new CborMessageEncoder();
+        assertEquals("application/cbor", encoder.getContentType());
+        byte[] expected = bytes(0xa5, 0x61, 'a', 0x01, 0x61, 'b', 0x82, 0xf5, 0xf6, 0x61, 'c', 0x61, 'x',
+                0x61, 'd', 0x39, 0x01, 0xf3, 0x61, 'e', 0xfb, 0x3f, 0xf8, 0, 0, 0, 0, 0, 0);
+        assertArrayEquals(expected, encoder.encode(message()));
+        assertArrayEquals(expected, encoder.encode(message()));
+
+        JSONObject large = new JSONObject();
+        large.put("n", 100000);
+        large.put("m", Long.MIN_VALUE);
+        assertArrayEquals(bytes(0xa2, 0x61, 'n', 0x1a, 0x00, 0x01, 0x86, 0xa0,
+                0x61, 'm', 0x3b, 0x7f, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff), encoder.encode(large));
+    }
+
+    /**
+     * Test that messages are encoded as MessagePack.
+     */
+    @Test
+    public void testMessagePack() {
+        MessagePackMessageEncoder encoder = new MessagePackMessageEncoder();
+        assertEquals("application/msgpack", encoder.getContentType());
+        byte[] expected = bytes(0x85, 0xa1, 'a', 0x01, 0xa1, 'b', 0x92, 0xc3, 0xc0, 0xa1, 'c', 0xa1, 'x',
+                0xa1, 'd', 0xd1, 0xfe, 0x0c, 0xa1, 'e', 0xcb, 0x3f, 0xf8, 0, 0, 0, 0, 0, 0);
+        assertArrayEquals(expected, encoder.encode(message()));
+
+        JSONObject large = new JSONObject();
+        large.put("n", 100000);
+        large.put("m", -20);
+        assertArrayEquals(bytes(0x82, 0xa1, 'n', 0xce, 0x00, 0x01, 0x86, 0xa0, 0xa1, 'm', 0xec),
+                encoder.encode(large));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier.providers;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for the {@link LookupCache}.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+public class LookupCacheTest {
+
+    /**
+     * Test that lookups are cached, including those that find nothing, until they expire.
+     */
+    @Test
+    public void testExpiry() {
+        AtomicLong now = new AtomicLong();
+        AtomicInteger lookups = new AtomicInteger();
+        LookupCache<String, String> cache = new LookupCache<>(10, 1000, now::get);
+
+        assertEquals("a#1", cache.get("a#1", key -> {
+            lookups.incrementAndGet();
+            return key;
+        }));
+        assertEquals("a#1", cache.get("a#1", key -> "other"));
+        assertNull(cache.get("b#1", key -> {
+            lookups.incrementAndGet();
+            return null;
+        }));
+        assertNull(cache.get("b#1", key -> "other"));
+        assertEquals(2, lookups.get());
+
+        now.set(TimeUnit.MILLISECONDS.toNanos(1000));
+        assertEquals("other", cache.get("a#1", key -> "other"));
+    }
+
+    /**
+     * Test that the least recently used entry is evicted when the cache is full.
+     */
+    @Test
+    public void testBounded() {
+        LookupCache<Integer, Integer> cache = new LookupCache<>(2, 1000, () -> 0);
+        cache.get(1, key -> key);
+        cache.get(2, key -> key);
+        cache.get(1, key -> -1);
+        cache.get(3, key -> key);
+        assertEquals(2, cache.size());
+        assertEquals(Integer.valueOf(1), cache.get(1, key -> -1));
+        assertEquals(Integer.valueOf(-2), cache.get(2, key -> -key));
+    }
+}
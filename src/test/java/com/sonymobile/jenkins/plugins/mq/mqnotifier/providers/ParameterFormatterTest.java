@@ -0,0 +1,99 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier.providers;
+
+import org.junit.Test;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the {@link ParameterFormatter}.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+public class ParameterFormatterTest {
+
+    /**
+     * Creates parameters from names and values.
+     */
+    private static List<Map.Entry<String, Object>> parameters(String... namesAndValues) {
+        List<Map.Entry<String, Object>> parameters = new ArrayList<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            parameters.add(new AbstractMap.SimpleImmutableEntry<>(namesAndValues[i], namesAndValues[i + 1]));
+        }
+        return parameters;
+    }
+
+    /**
+     * Test that values are unchanged without limits.
+     */
+    @Test
+    public void testNoLimits() {
+        ParameterFormatter formatter = new ParameterFormatter(0, 0, false, null, "");
+        assertEquals(Arrays.asList("FOO=BAR\nBAZ", "X=null"),
+                formatter.format(parameters("FOO", "BAR\nBAZ", "X", null)));
+    }
+
+    /**
+     * Test that long values are truncated or hashed, and that parameters over the total are omitted.
+     */
+    @Test
+    public void testLimits() {
+        ParameterFormatter truncating = new ParameterFormatter(3, 30, false, null, null);
+        assertEquals(Arrays.asList("A=abc...[truncated, 6 chars]", "...[2 parameters omitted]"),
+                truncating.format(parameters("A", "abcdef", "B", "b", "C", "c")));
+        truncating = new ParameterFormatter(3, 12, false, null, null);
+        assertEquals(Arrays.asList("A=abc", "B=b", "...[1 parameters omitted]"),
+                truncating.format(parameters("A", "abc", "B", "b", "C", "0123456789")));
+
+        ParameterFormatter hashing = new ParameterFormatter(3, 0, true, null, null);
+        assertEquals(Arrays.asList("A=[sha256:" + ParameterFormatter.sha256("abcdef") + ", 6 chars]", "B=abc"),
+                hashing.format(parameters("A", "abcdef", "B", "abc")));
+        assertEquals("bef57ec7f53a6d40beb640a780a639c83bc29ac8a9816f1fc6c5c6dcd93c4721",
+                ParameterFormatter.sha256("abcdef"));
+    }
+
+    /**
+     * Test that parameters are filtered by name.
+     */
+    @Test
+    public void testFilter() {
+        ParameterFormatter formatter = new ParameterFormatter(0, 0, false, "BUILD_*, GERRIT_*",
+                "*_SECRET\nGERRIT_PATCHSET");
+        assertTrue(formatter.isIncluded("BUILD_TYPE"));
+        assertTrue(formatter.isIncluded("GERRIT_BRANCH"));
+        assertFalse(formatter.isIncluded("GERRIT_PATCHSET"));
+        assertFalse(formatter.isIncluded("BUILD_SECRET"));
+        assertFalse(formatter.isIncluded("OTHER"));
+        assertEquals(Arrays.asList("BUILD_TYPE=x"),
+                formatter.format(parameters("OTHER", "y", "BUILD_TYPE", "x", "BUILD_SECRET", "z")));
+    }
+}
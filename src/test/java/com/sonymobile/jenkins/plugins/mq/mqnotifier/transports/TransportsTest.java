@@ -0,0 +1,237 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2021 Axis Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonymobile.jenkins.plugins.mq.mqnotifier.transports;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.ShutdownSignalException;
+import net.sf.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the {@link InMemoryTransport} and the {@link FileTransport}.
+ */
+@SuppressWarnings({"checkstyle:magicnumber", "checkstyle:javadocvariable"})
+public class TransportsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Records the confirms of a channel.
+     */
+    private static final class RecordingListener implements TransportListener {
+        private final List<Long> confirmed = new ArrayList<>();
+        private boolean lost = false;
+
+        @Override
+        public void confirmed(long sequenceNumber, boolean multiple) {
+            confirmed.add(multiple ? -sequenceNumber : sequenceNumber);
+        }
+
+        @Override
+        public void rejected(long sequenceNumber, boolean multiple) {
+        }
+
+        @Override
+        public void lost(boolean exchangeMissing) {
+            lost = true;
+        }
+
+        @Override
+        public void recovered() {
+        }
+    }
+
+    /**
+     * Test that the in-memory transport confirms each message and only retains the latest ones.
+     *
+     * @throws Exception thrown
+     */
+    @Test
+    public void testInMemoryTransport() throws Exception {
+        InMemoryTransport transport = new InMemoryTransport();
+        transport.setRetained(2);
+        RecordingListener listener = new RecordingListener();
+        TransportChannel channel = transport.openChannel(null, listener);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i + 1, channel.getNextPublishSeqNo());
+            channel.publish("exchange", "key", null, new byte[] {(byte)i});
+        }
+        assertEquals(5, transport.getPublishedCount());
+        assertEquals(5, transport.getPublishedBytes());
+        assertEquals(2, transport.getMessages().size());
+        assertEquals(3, transport.getMessages().get(0).getBody()[0]);
+        assertEquals(5, listener.confirmed.size());
+        assertEquals(5L, (long)listener.confirmed.get(4));
+
+        transport.clear();
+        assertEquals(0, transport.getPublishedCount());
+        assertTrue(transport.getMessages().isEmpty());
+        channel.close();
+        assertFalse(channel.isOpen());
+    }
+
+    /**
+     * Test that the file transport confirms a batch when it is flushed and rotates full files.
+     *
+     * @throws Exception thrown
+     */
+    @Test
+    public void testFileTransportConfirmsAndRotates() throws Exception {
+        File dir = new File(folder.getRoot(), "events");
+        FileTransport transport = new FileTransport();
+        transport.setDirectory(dir, 20);
+        RecordingListener listener = new RecordingListener();
+        TransportChannel channel = transport.openChannel(null, listener);
+        byte[] line = "{\"n\":1}".getBytes(StandardCharsets.UTF_8);
+
+        channel.publish("exchange", "key", null, line);
+        channel.publish("exchange", "key", null, line);
+        assertTrue(listener.confirmed.isEmpty());
+        channel.flush();
+        assertEquals(-2L, (long)listener.confirmed.get(0));
+        File active = new File(dir, NdjsonSegmentWriter.ACTIVE_NAME);
+        assertEquals("{\"n\":1}\n{\"n\":1}\n", new String(Files.readAllBytes(active.toPath()), StandardCharsets.UTF_8));
+
+        channel.publish("exchange", "key", null, line);
+        channel.waitForConfirms(1000);
+        assertEquals(-3L, (long)listener.confirmed.get(1));
+        assertEquals(2, dir.listFiles().length);
+        assertEquals("{\"n\":1}\n", new String(Files.readAllBytes(active.toPath()), StandardCharsets.UTF_8));
+        assertFalse(listener.lost);
+        transport.setDirectory(null, 0);
+    }
+
+    /**
+     * Test that rotated segments are compressed and that lines longer than the buffer are written whole.
+     *
+     * @throws Exception thrown
+     */
+    @Test
+    public void testSegmentsAreCompressed() throws Exception {
+        File dir = folder.newFolder("archive");
+        NdjsonSegmentWriter writer = new NdjsonSegmentWriter(dir, 1024, 0, Runnable::run);
+        StringBuilder large = new StringBuilder("\"");
+        for (int i = 0; i < 2 * 1024 * 1024; i++) {
+            large.append('x');
+        }
+        large.append('"');
+        byte[] line = large.toString().getBytes(StandardCharsets.UTF_8);
+        writer.append("exchange", "key", null, "{\"n\":1}".getBytes(StandardCharsets.UTF_8));
+        writer.append("exchange", "key", null, line);
+        writer.append("exchange", "key", null, "{\"n\":2}".getBytes(StandardCharsets.UTF_8));
+        writer.close();
+
+        File[] compressed = dir.listFiles((d, name) -> name.endsWith(NdjsonSegmentWriter.GZIP_SUFFIX));
+        assertEquals(2, compressed.length);
+        assertEquals(3, dir.listFiles().length);
+        Arrays.sort(compressed);
+        assertEquals("{\"n\":1}\n", gunzip(compressed[0]));
+        assertEquals(large + "\n", gunzip(compressed[1]));
+        File active = new File(dir, NdjsonSegmentWriter.ACTIVE_NAME);
+        assertEquals("{\"n\":2}\n", new String(Files.readAllBytes(active.toPath()), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads a gzip compressed file.
+     *
+     * @param file the file
+     * @return the uncompressed content
+     * @throws Exception thrown
+     */
+    private static String gunzip(File file) throws Exception {
+        try (InputStream in = new GZIPInputStream(new FileInputStream(file))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read = in.read(buffer);
+            while (read > 0) {
+                out.write(buffer, 0, read);
+                read = in.read(buffer);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Test that bodies that are not plain JSON are written Base64 encoded with their properties.
+     */
+    @Test
+    public void testBinaryBodyLine() {
+        byte[] body = {1, 2, 3};
+        AMQP.BasicProperties props = new AMQP.BasicProperties.Builder()
+                .contentType("application/cbor").contentEncoding("gzip").build();
+        JSONObject line = JSONObject.fromObject(new String(NdjsonSegmentWriter.toLine("exchange", "key", props, body),
+                StandardCharsets.UTF_8));
+        assertEquals("exchange", line.getString("exchange"));
+        assertEquals("key", line.getString("routing_key"));
+        assertEquals("application/cbor", line.getString("content_type"));
+        assertEquals("gzip", line.getString("content_encoding"));
+        assertArrayEquals(body, Base64.getDecoder().decode(line.getString("body_base64")));
+    }
+
+    /**
+     * Test that only a channel closed by the broker with a permanent reply code makes an exchange unavailable.
+     */
+    @Test
+    public void testPermanentChannelClose() {
+        assertTrue(AmqpTransport.isPermanent(channelClosed(AMQP.NOT_FOUND, false)));
+        assertTrue(AmqpTransport.isPermanent(channelClosed(AMQP.ACCESS_REFUSED, false)));
+        assertTrue(AmqpTransport.isPermanent(channelClosed(AMQP.PRECONDITION_FAILED, false)));
+        assertFalse(AmqpTransport.isPermanent(channelClosed(AMQP.INTERNAL_ERROR, false)));
+        assertFalse(AmqpTransport.isPermanent(channelClosed(AMQP.NOT_FOUND, true)));
+        assertFalse(AmqpTransport.isPermanent(new ShutdownSignalException(true, false,
+                new AMQP.Connection.Close.Builder().replyCode(AMQP.CONNECTION_FORCED).build(), null)));
+    }
+
+    /**
+     * Creates the exception of a channel closed by the broker.
+     *
+     * @param replyCode the reply code
+     * @param hardError true if the connection was closed
+     * @return the exception
+     */
+    private static ShutdownSignalException channelClosed(int replyCode, boolean hardError) {
+        return new ShutdownSignalException(hardError, false,
+                new AMQP.Channel.Close.Builder().replyCode(replyCode).replyText("closed").build(), null);
+    }
+}